@@ -0,0 +1,147 @@
+package game;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worlds and players for the benchmarks, built entirely in memory and in the
+ *  temporary directory so the suite runs without a server or network.
+ *
+ * Generated maps are a square-ish torus: every room has an exit in all four
+ *  directions (NORTH/SOUTH change row, EAST/WEST change column, wrapping at the
+ *  edges), so a player can walk forever in any direction.  Room 1 is the top left
+ *  corner, where new players start, facing NORTH.
+ */
+final class BenchWorld {
+    private BenchWorld() {
+    }
+
+    /**
+     * @param rooms Approximate number of rooms.
+     * @return Rooms per row of the generated map.
+     */
+    static int width(int rooms) {
+        return (int) Math.ceil(Math.sqrt(rooms));
+    }
+
+    /**
+     * Writes (or reuses) a generated map file.
+     * @param rooms Approximate number of rooms; rounded up to fill whole rows.
+     * @return The map file.
+     */
+    static File map(int rooms) {
+        int width = width(rooms);
+        int height = (rooms + width - 1) / width;
+        File file = new File(System.getProperty("java.io.tmpdir"), "game-bench-" + width + "x" + height + ".xml");
+        if(file.exists()) {
+            return file;
+        }
+        File partial = new File(file.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rooms>\n");
+            for(int row = 0; row < height; row++) {
+                for(int column = 0; column < width; column++) {
+                    out.write("    <room id = \"" + id(row, column, width) + "\">\n");
+                    out.write("        <title>Generated room " + row + "," + column + "</title>\n");
+                    out.write("        <description>A plain room in row " + row + " and column " + column
+                            + " of the benchmark world.  It looks much like every other room.</description>\n");
+                    out.write("        <exits>\n");
+                    exit(out, "NORTH", id((row + height - 1) % height, column, width));
+                    exit(out, "SOUTH", id((row + 1) % height, column, width));
+                    exit(out, "EAST", id(row, (column + 1) % width, width));
+                    exit(out, "WEST", id(row, (column + width - 1) % width, width));
+                    out.write("        </exits>\n    </room>\n");
+                }
+            }
+            out.write("</rooms>\n");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        partial.renameTo(file);
+        return file;
+    }
+
+    private static int id(int row, int column, int width) {
+        return row * width + column + 1;
+    }
+
+    private static void exit(Writer out, String direction, int link) throws IOException {
+        out.write("            <exit id = \"" + direction + "\">\n");
+        out.write("                <link>" + link + "</link>\n");
+        out.write("                <message>You walk " + direction.toLowerCase() + ".</message>\n");
+        out.write("            </exit>\n");
+    }
+
+    /**
+     * Creates a game core serving a generated map.
+     * @param rooms Approximate number of rooms.
+     * @return The game core.
+     */
+    static GameCore core(int rooms) {
+        System.setProperty("game.map", map(rooms).getPath());
+        System.clearProperty("game.world.image");
+        return new GameCore();
+    }
+
+    /**
+     * Joins a player and gives them an in-memory reply connection.
+     * @param core Game core.
+     * @param name Player name.
+     * @return The player.
+     */
+    static Player join(GameCore core, String name) {
+        Player player = core.joinGame(name);
+        core.setReplyWriter(name, new PrintWriter(new DiscardingWriter(), true), null);
+        return player;
+    }
+
+    /**
+     * Walks a player, who must be standing in room 1 facing NORTH, to the room at
+     *  the given row and column, and turns them back to face NORTH.
+     */
+    static void walkTo(GameCore core, String name, int row, int column) {
+        core.right(name);
+        if(column > 0) {
+            core.move(name, column);
+        }
+        core.right(name);
+        if(row > 0) {
+            core.move(name, row);
+        }
+        core.left(name);
+        core.left(name);
+    }
+
+    /**
+     * Reply connection that throws everything away, counting characters so the
+     *  writes cannot be optimized out.
+     */
+    static final class DiscardingWriter extends Writer {
+        volatile long written;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            this.written += length;
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            this.written += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
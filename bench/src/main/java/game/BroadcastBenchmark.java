@@ -0,0 +1,76 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Both broadcast overloads, and SAY, with a fixed number of players in the
+ *  speaker's room and everyone else spread over the rest of the map, away from the
+ *  first row and column so nobody walks through a crowd on the way.  The cost
+ *  should follow the occupants of the room, not the number of players online.
+ *  Every player has an in-memory reply connection, so delivery is included up to
+ *  the hand-off to the reply writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class BroadcastBenchmark {
+    private static final int ROOMS = 10000;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int online;
+
+    @Param({"1", "10", "100"})
+    public int occupants;
+
+    private GameCore core;
+    private Player speaker;
+    private Room room;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(ROOMS);
+        int width = BenchWorld.width(ROOMS);
+        for(int i = 0; i < this.online; i++) {
+            String name = "Player" + i;
+            Player player = BenchWorld.join(this.core, name);
+            if(i == 0) {
+                this.speaker = player;
+            }
+            if(i >= this.occupants) {
+                // Everyone else fills the map below the first row and right of the first column.
+                int spread = width - 1;
+                BenchWorld.walkTo(this.core, name, 1 + i % spread, 1 + (i / spread) % spread);
+            }
+        }
+        this.room = this.core.getMap().findRoom(this.speaker.getCurrentRoom());
+    }
+
+    @Benchmark
+    public void broadcastFromPlayer() {
+        this.core.broadcast(this.speaker, "Player0 waves.");
+    }
+
+    @Benchmark
+    public void broadcastToRoom() {
+        this.core.broadcast(this.room, "You see a student rush past and drop a Phone on the ground.");
+    }
+
+    @Benchmark
+    public String say() {
+        return this.core.say("Player0", "Hello, everyone.");
+    }
+}
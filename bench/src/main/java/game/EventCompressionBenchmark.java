@@ -0,0 +1,137 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compressing one event on a compressed event socket (EventCompressor), and the same
+ *  stream compressed without the preset dictionary.  The events are the mix a busy
+ *  room sends: turns, looks, talk, arrivals and the odd room view.  The compression
+ *  ratio is printed at the end of the run.  Over a run this long the two ratios are
+ *  the same: the dictionary only helps until the stream's own history takes over,
+ *  the first few hundred events of a connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class EventCompressionBenchmark {
+    /** Deflate level, 1 (fastest) to 9 (smallest). */
+    @Param({"1", "6"})
+    public int level;
+
+    private ByteBuffer[] events;
+    private int next;
+    private EventCompressor compressor;
+    private Deflater plain;
+    private byte[] output;
+    private long plainIn;
+    private long plainOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("game.eventcompression.level", Integer.toString(this.level));
+        Room room = new Room(1, "Clock in the Main Quad",
+                "You are standing in front of the George Mason University Clock.  A plaque on the clock says it was a gift from the Class of 1999.");
+        room.addExit(Direction.SOUTH, 3, "You walk south.");
+        room.addExit(Direction.EAST, 2, "You walk east.");
+        RoomOccupants occupants = new RoomOccupants();
+        Player viewer = new Player("Player0");
+        for(int i = 0; i < 10; i++) {
+            occupants.add(i == 0 ? viewer : new Player("Player" + i));
+        }
+        String view = room.toString(occupants, viewer);
+
+        this.events = new ByteBuffer[1000];
+        for(int i = 0; i < this.events.length; i++) {
+            String name = "Player" + (i * 7 % 10);
+            String event;
+            switch(i % 10) {
+                case 0:
+                case 1:
+                    event = name + " turns to the left.";
+                    break;
+                case 2:
+                    event = name + " turns to the right.";
+                    break;
+                case 3:
+                case 4:
+                    event = name + " takes a look around.";
+                    break;
+                case 5:
+                    event = name + " says, \"Anyone seen the " + (i % 3 == 0 ? "phone" : "textbook") + "?\"";
+                    break;
+                case 6:
+                    event = name + " just walked into the area.";
+                    break;
+                case 7:
+                    event = name + " has walked off to the EAST";
+                    break;
+                case 8:
+                    event = i % 50 == 8 ? view : "You see a student rush past and drop a Flower on the ground.";
+                    break;
+                default:
+                    event = name + " bends over to pick up a Flower that was on the ground.";
+            }
+            this.events[i] = StandardCharsets.UTF_8.encode(event + "\n");
+        }
+        this.compressor = new EventCompressor();
+        this.plain = new Deflater(this.level, true);
+        this.output = new byte[64 * 1024];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        if(this.compressor.getMessages() > 0) {
+            System.out.println("with dictionary:    " + EventCompressor.describe(this.compressor.getMessages(),
+                    this.compressor.getBytesIn(), this.compressor.getBytesOut(), this.compressor.getNanos()));
+        }
+        if(this.plainOut > 0) {
+            System.out.printf("without dictionary: %d bytes to %d (%.1f:1)%n", this.plainIn, this.plainOut,
+                    (double) this.plainIn / this.plainOut);
+        }
+        this.compressor.end();
+        this.plain.end();
+    }
+
+    private ByteBuffer nextEvent() {
+        ByteBuffer event = this.events[this.next].duplicate();
+        this.next = (this.next + 1) % this.events.length;
+        return event;
+    }
+
+    @Benchmark
+    public ByteBuffer compress() {
+        return this.compressor.compress(this.nextEvent());
+    }
+
+    @Benchmark
+    public int compressWithoutDictionary() {
+        ByteBuffer event = this.nextEvent();
+        byte[] input = Arrays.copyOfRange(event.array(), event.position(), event.limit());
+        this.plain.setInput(input);
+        int written = this.plain.deflate(this.output, 0, this.output.length, Deflater.SYNC_FLUSH);
+        this.plainIn += input.length;
+        this.plainOut += written;
+        return written;
+    }
+}
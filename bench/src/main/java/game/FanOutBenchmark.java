@@ -0,0 +1,49 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Preparing one broadcast for its recipients' connections: encoding an EVENT frame
+ *  for every recipient, as the reply writers used to, against encoding it once and
+ *  handing every recipient a view of the shared bytes.  Run with -prof gc; the
+ *  shared form should allocate the same per broadcast whatever the recipients,
+ *  bar one small buffer view each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class FanOutBenchmark {
+    private static final String MESSAGE = "You see a student rush past and drop a Newspaper on the ground.";
+
+    @Param({"1", "10", "100"})
+    public int recipients;
+
+    @Benchmark
+    public void encodeEach(Blackhole hole) {
+        for(int i = 0; i < this.recipients; i++) {
+            hole.consume(CommandProtocol.encodeResponse(CommandProtocol.EVENT_TAG, CommandProtocol.EVENT, MESSAGE));
+        }
+    }
+
+    @Benchmark
+    public void shared(Blackhole hole) {
+        OutboundMessage message = new OutboundMessage(MESSAGE);
+        for(int i = 0; i < this.recipients; i++) {
+            hole.consume(message.frame());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LEFT and a one-step MOVE with the world journaled and without.  Journaling a
+ *  change encodes one small record into a buffer that another thread flushes, so
+ *  it should add well under a microsecond to either command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class JournalBenchmark {
+    @Param({"false", "true"})
+    public boolean journal;
+
+    private GameCore core;
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        if(this.journal) {
+            this.directory = Files.createTempDirectory("journal").toFile();
+            System.setProperty("game.journal", this.directory.getPath());
+        }
+        this.core = BenchWorld.core(10000);
+        System.clearProperty("game.journal");
+        BenchWorld.join(this.core, "Walker");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(this.core.getJournal() != null) {
+            this.core.getJournal().close();
+            for(File file : this.directory.listFiles()) {
+                file.delete();
+            }
+            this.directory.delete();
+        }
+    }
+
+    @Benchmark
+    public String left() {
+        return this.core.left("Walker");
+    }
+
+    @Benchmark
+    public String move() {
+        return this.core.move("Walker", 1);
+    }
+}
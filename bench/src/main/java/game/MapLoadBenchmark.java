@@ -0,0 +1,62 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading the world: the streaming loader behind Map, the original DOM loader, and
+ *  opening a precompiled world image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dgame.log.level=OFF", "-Xmx2g"})
+public class MapLoadBenchmark {
+    @Param({"1000", "100000"})
+    public int rooms;
+
+    private File mapFile;
+    private File imageFile;
+    private List<File> sources;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.mapFile = BenchWorld.map(this.rooms);
+        this.sources = Collections.singletonList(this.mapFile);
+        this.imageFile = new File(this.mapFile.getPath().replace(".xml", ".world"));
+        WorldImage.compile(this.sources, this.imageFile);
+    }
+
+    @Benchmark
+    public Map loadMap() {
+        return new Map(this.mapFile.getPath());
+    }
+
+    @Benchmark
+    public List<Room> parseDom() throws IOException {
+        return WorldLoader.parseDom(this.mapFile);
+    }
+
+    @Benchmark
+    public Room openImage() throws IOException {
+        // Opening reads nothing but the header; look one room up so it is used.
+        Map map = new Map(this.mapFile.getPath(), this.imageFile.getPath());
+        return map.findRoom(1);
+    }
+}
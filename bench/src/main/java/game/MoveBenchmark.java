@@ -0,0 +1,51 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A multi-step MOVE on worlds of different sizes.  Each step looks rooms up by id,
+ *  moves the player between occupant lists and renders the room entered, so the
+ *  time per step should not grow with the size of the world.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class MoveBenchmark {
+    @Param({"1000", "100000"})
+    public int rooms;
+
+    @Param({"1", "10", "100"})
+    public int steps;
+
+    private GameCore core;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(this.rooms);
+        BenchWorld.join(this.core, "Walker");
+        // A few bystanders along the way, so arrivals and departures are broadcast.
+        for(int i = 0; i < 10; i++) {
+            BenchWorld.join(this.core, "Bystander" + i);
+            BenchWorld.walkTo(this.core, "Bystander" + i, i + 1, 0);
+        }
+    }
+
+    @Benchmark
+    public String move() {
+        return this.core.move("Walker", this.steps);
+    }
+}
@@ -0,0 +1,85 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same command mix run the way the servers run it, through CommandInterpreter,
+ *  against the shared-state core (0 partitions) and against the room-partitioned one.
+ *  Every thread plays one player who looks around, talks, turns and walks, so over
+ *  time players cross from one partition into another.  Sampled, so the output has
+ *  the latency percentiles as well as the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+@Threads(4)
+public class PartitionBenchmark {
+    private static final String[] MIX = {"LOOK", "SAY Hello there", "MOVE 3", "RIGHT", "LOOK", "MOVE 2", "PICKUP Phone", "LEFT"};
+
+    @Param({"0", "4"})
+    public int partitions;
+
+    private GameCore core;
+    private CommandInterpreter interpreter;
+    private AtomicInteger nextPlayer;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("game.partitions", Integer.toString(this.partitions));
+        this.core = BenchWorld.core(10000);
+        System.clearProperty("game.partitions");
+        this.interpreter = new CommandInterpreter(this.core);
+        this.nextPlayer = new AtomicInteger();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(this.core.getPartitions() != null) {
+            this.core.getPartitions().shutdown();
+        }
+    }
+
+    /**
+     * One player per thread, starting in rows spread across the world.
+     */
+    @State(Scope.Thread)
+    public static class Walker {
+        String name;
+        Player player;
+        int next;
+
+        @Setup
+        public void setUp(PartitionBenchmark shared) {
+            int number = shared.nextPlayer.incrementAndGet();
+            this.name = "Walker" + number;
+            this.player = BenchWorld.join(shared.core, this.name);
+            BenchWorld.walkTo(shared.core, this.name, number * 20, 0);
+        }
+    }
+
+    @Benchmark
+    public String command(Walker walker) {
+        String reply = this.interpreter.execute(walker.name, MIX[walker.next++ & (MIX.length - 1)]);
+        if((walker.next & 1023) == 0) {
+            walker.player.clearInventory();
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,72 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several players grabbing objects from the same room while another thread keeps
+ *  dropping new ones there, the way the spawner does.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class PickupBenchmark {
+    private GameCore core;
+    private Room room;
+    private AtomicInteger nextPlayer;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(100);
+        // Everyone starts in room 1.
+        this.room = this.core.getMap().findRoom(1);
+        this.nextPlayer = new AtomicInteger();
+    }
+
+    /**
+     * One picking player per thread.
+     */
+    @State(Scope.Thread)
+    public static class Picker {
+        String name;
+        Player player;
+
+        @Setup
+        public void setUp(PickupBenchmark shared) {
+            this.name = "Picker" + shared.nextPlayer.incrementAndGet();
+            this.player = BenchWorld.join(shared.core, this.name);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public String pickup(Picker picker) {
+        String reply = this.core.pickup(picker.name, "Phone");
+        // Keep the inventory from growing without bound over millions of pickups.
+        picker.player.clearInventory();
+        return reply;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void drop() {
+        this.room.addObject("Phone");
+    }
+}
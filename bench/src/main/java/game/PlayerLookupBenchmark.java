@@ -0,0 +1,55 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GameCore.findPlayer, which every command starts with, as the number of players
+ *  online grows.  Names are looked up in a different case than they joined with.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class PlayerLookupBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int players;
+
+    private GameCore core;
+    private String[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(100);
+        this.lookups = new String[this.players];
+        for(int i = 0; i < this.players; i++) {
+            this.core.joinGame("Player" + i);
+            this.lookups[i] = "PLAYER" + i;
+        }
+    }
+
+    @Benchmark
+    public Player findPlayer() {
+        int i = this.next;
+        this.next = (i + 1 == this.lookups.length) ? 0 : i + 1;
+        return this.core.findPlayer(this.lookups[i]);
+    }
+
+    @Benchmark
+    public Player findMissingPlayer() {
+        return this.core.findPlayer("Nobody");
+    }
+}
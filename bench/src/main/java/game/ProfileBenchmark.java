@@ -0,0 +1,67 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LEFT and a one-step MOVE with player profiles kept and without.  Saving a profile
+ *  only queues the player for the next group commit, so keeping profiles should add
+ *  next to nothing to either command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class ProfileBenchmark {
+    @Param({"false", "true"})
+    public boolean profiles;
+
+    private GameCore core;
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        if(this.profiles) {
+            this.directory = Files.createTempDirectory("profiles").toFile();
+            System.setProperty("game.profiles", this.directory.getPath());
+        }
+        this.core = BenchWorld.core(10000);
+        System.clearProperty("game.profiles");
+        BenchWorld.join(this.core, "Walker");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(this.core.getProfiles() != null) {
+            this.core.getProfiles().close();
+            new File(this.directory, "profiles.log").delete();
+            this.directory.delete();
+        }
+    }
+
+    @Benchmark
+    public String left() {
+        return this.core.left("Walker");
+    }
+
+    @Benchmark
+    public String move() {
+        return this.core.move("Walker", 1);
+    }
+}
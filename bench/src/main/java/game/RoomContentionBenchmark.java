@@ -0,0 +1,71 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every thread drops an object and picks it up again, over and over, either all in
+ *  one room or each in a room of its own.  Rooms are locked one by one, so with a
+ *  room per thread the throughput should grow with the number of threads (run with
+ *  -t 1, -t 2, -t 4 ... up to the number of cores), while in one shared room it
+ *  cannot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class RoomContentionBenchmark {
+    @Param({"shared", "own"})
+    public String rooms;
+
+    private GameCore core;
+    private AtomicInteger nextPlayer;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(10000);
+        this.nextPlayer = new AtomicInteger();
+    }
+
+    /**
+     * One player per thread, standing in room 1 or in a room of their own.
+     */
+    @State(Scope.Thread)
+    public static class Hand {
+        String name;
+        Player player;
+        Room room;
+
+        @Setup
+        public void setUp(RoomContentionBenchmark shared) {
+            int number = shared.nextPlayer.incrementAndGet();
+            this.name = "Hand" + number;
+            this.player = BenchWorld.join(shared.core, this.name);
+            if(shared.rooms.equals("own")) {
+                BenchWorld.walkTo(shared.core, this.name, number, 0);
+            }
+            this.room = shared.core.getMap().findRoom(this.player.getCurrentRoom());
+        }
+    }
+
+    @Benchmark
+    public String dropAndPickup(Hand hand) {
+        hand.room.addObject("Phone");
+        String reply = this.core.pickup(hand.name, "Phone");
+        hand.player.clearInventory();
+        return reply;
+    }
+}
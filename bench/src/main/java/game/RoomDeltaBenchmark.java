@@ -0,0 +1,84 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A LOOK answered by the server (GameCore.look, less the RMI call) against one
+ *  answered by the client from its RoomModel, and what keeping the model costs: the
+ *  server sending an object dropped and taken to everyone else in the room as
+ *  deltas, and the client applying a player coming and going.  The looking player
+ *  never takes deltas, so serverLook is the LOOK of a client without a model; with
+ *  deltas=false nobody does, and sendObjectDeltas shows what they add.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class RoomDeltaBenchmark {
+    @Param({"1", "10", "100"})
+    public int occupants;
+
+    @Param({"false", "true"})
+    public boolean deltas;
+
+    private GameCore core;
+    private Room room;
+    private Player viewer;
+    private RoomModel model;
+    private int item;
+    private int version;
+
+    @Setup
+    public void setUp() {
+        this.core = BenchWorld.core(100);
+        for(int i = 0; i < this.occupants; i++) {
+            BenchWorld.join(this.core, "Player" + i);
+            if(i > 0 && this.deltas) {
+                this.core.enableRoomDeltas("Player" + i);
+            }
+        }
+        this.room = this.core.getMap().findRoom(1);
+        this.item = ItemCatalog.id("Phone");
+
+        this.model = new RoomModel();
+        this.viewer = this.core.findPlayer("Player0");
+        this.model.apply(RoomDelta.room(0, this.room, new RoomOccupants(), this.viewer));
+    }
+
+    @Benchmark
+    public String serverLook() {
+        return this.core.look("Player0");
+    }
+
+    @Benchmark
+    public String localLook() {
+        return this.model.look();
+    }
+
+    @Benchmark
+    public String sendObjectDeltas() {
+        this.core.drop(this.room, this.item);
+        this.viewer.clearInventory();
+        return this.core.pickup("Player0", "Phone");
+    }
+
+    @Benchmark
+    public String applyAndLook() {
+        this.model.apply(RoomDelta.change(RoomDelta.ENTERED, 1, ++this.version, "Visitor"));
+        this.model.apply(RoomDelta.change(RoomDelta.LEFT, 1, ++this.version, "Visitor"));
+        return this.model.look();
+    }
+}
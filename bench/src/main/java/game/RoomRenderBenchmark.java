@@ -0,0 +1,75 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Room.toString, the LOOK text, for an unchanged room and right after its objects
+ *  or occupants change.  Run with -prof gc to see the allocation per look.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class RoomRenderBenchmark {
+    @Param({"1", "10", "100"})
+    public int occupants;
+
+    private Room room;
+    private RoomOccupants present;
+    private Player viewer;
+    private Player visitor;
+
+    @Setup
+    public void setUp() {
+        this.room = new Room(1, "Clock in the Main Quad",
+                "You are standing in front of the George Mason University Clock.  A plaque on the clock says it was a gift from the Class of 1999.");
+        this.room.addExit(Direction.NORTH, 0, "You try to walk north towards the library, but the sidewalk is closed due to construction.");
+        this.room.addExit(Direction.SOUTH, 3, "You walk around the grassy median and head south, past the Johnson Center.");
+        this.room.addExit(Direction.EAST, 2, "You walk around the fountains as you head towards the statue.");
+        this.room.addExit(Direction.WEST, 0, "You try to walk north towards the dorms, however, a large student rally is blocking your path.");
+        this.room.addObject("Flower");
+        this.room.addObject("Textbook");
+
+        this.present = new RoomOccupants();
+        for(int i = 0; i < this.occupants; i++) {
+            Player player = new Player("Player" + i);
+            this.present.add(player);
+            if(i == 0) {
+                this.viewer = player;
+            }
+        }
+        this.visitor = new Player("Visitor");
+    }
+
+    @Benchmark
+    public String look() {
+        return this.room.toString(this.present, this.viewer);
+    }
+
+    @Benchmark
+    public String lookAfterObjectChange() {
+        this.room.addObject("Phone");
+        this.room.removeObject("Phone");
+        return this.room.toString(this.present, this.viewer);
+    }
+
+    @Benchmark
+    public String lookAfterArrival() {
+        this.present.add(this.visitor);
+        this.present.remove(this.visitor);
+        return this.room.toString(this.present, this.viewer);
+    }
+}
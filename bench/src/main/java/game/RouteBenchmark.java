@@ -0,0 +1,65 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GOTO route lookups across the generated world, from one corner to the middle.
+ *  A lookup whose next-hop table is built follows the table and should cost time
+ *  in proportion to the route's length only; a lookup whose table is not built is
+ *  answered by a search between the two rooms, while the table is built in the
+ *  background.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgame.log.level=OFF")
+public class RouteBenchmark {
+    @Param({"1000", "100000"})
+    public int rooms;
+
+    private Router built;
+    private Router unbuilt;
+    private int from;
+    private int to;
+    private int other;
+
+    @Setup
+    public void setUp() {
+        Map map = new Map(BenchWorld.map(this.rooms).getPath());
+        this.built = new Router(map);
+        // Room for only one table, and lookups alternate between two destinations.
+        this.unbuilt = new Router(map, 0);
+        int width = BenchWorld.width(this.rooms);
+        this.from = 1;
+        this.to = map.getRoomIds()[(width / 2) * width + width / 2];
+        this.other = map.getRoomIds()[(width / 2) * width];
+    }
+
+    @Benchmark
+    public Direction[] tableBuilt() {
+        return this.built.route(this.from, this.to);
+    }
+
+    /**
+     * Two lookups, both of which miss their table (there is room for only one).
+     */
+    @Benchmark
+    public Direction[] tableMissing() {
+        Direction[] route = this.unbuilt.route(this.from, this.to);
+        this.unbuilt.route(this.from, this.other);
+        return route;
+    }
+}
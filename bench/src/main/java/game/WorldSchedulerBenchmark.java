@@ -0,0 +1,58 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduling and cancelling a world event while the wheel already holds many
+ *  pending ones.  Both should cost the same whatever the backlog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dgame.log.level=OFF", "-Xmx2g"})
+public class WorldSchedulerBenchmark {
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Param({"0", "1000000"})
+    public int backlog;
+
+    private WorldScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        this.scheduler = new WorldScheduler(10, 4096);
+        for(int i = 0; i < this.backlog; i++) {
+            this.scheduler.schedule(NOTHING, 1 + (i % 3600), TimeUnit.SECONDS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.scheduler.shutdown();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean scheduleAndCancel() {
+        return this.scheduler.schedule(NOTHING, 30, TimeUnit.SECONDS).cancel();
+    }
+}
@@ -0,0 +1,74 @@
+import java.rmi.Naming;
+
+/**
+ * Loopback comparison of individual RMI calls against the batch call.  Joins a
+ *  player, then runs the same LEFT/RIGHT/LOOK mix both ways and reports commands
+ *  per second for each.
+ *
+ * Run as java BatchBenchmark hostname [commands] [batchSize]
+ *  (see benchmarks.md for building the tools)
+ */
+public class BatchBenchmark {
+    private static final String[] MIX = {"LEFT", "LOOK", "RIGHT", "LOOK"};
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.out.println("[SHUTDOWN] .. Run as java BatchBenchmark hostname [commands] [batchSize]");
+            System.exit(-1);
+        }
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        GameObjectInterface game = (GameObjectInterface) Naming.lookup("rmi://" + args[0] + "/GameService");
+        String name = "bench" + System.nanoTime();
+        if(game.joinGame(name) == false) {
+            System.err.println("[ERROR] Could not join as " + name);
+            System.exit(-1);
+        }
+
+        try {
+            // Warm both paths up before measuring.
+            runIndividually(game, name, commands / 10);
+            runBatched(game, name, commands / 10, batchSize);
+
+            long start = System.nanoTime();
+            runIndividually(game, name, commands);
+            double individual = commands / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            runBatched(game, name, commands, batchSize);
+            double batched = commands / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("Individual calls:       %10.0f commands/s%n", individual);
+            System.out.printf("Batches of %-5d        %10.0f commands/s  (%.1fx)%n", batchSize, batched, batched / individual);
+        } finally {
+            game.leave(name);
+        }
+    }
+
+    private static void runIndividually(GameObjectInterface game, String name, int commands) throws Exception {
+        for(int i = 0; i < commands; i++) {
+            switch(MIX[i % MIX.length]) {
+                case "LEFT":
+                    game.left(name);
+                    break;
+                case "RIGHT":
+                    game.right(name);
+                    break;
+                default:
+                    game.look(name);
+                    break;
+            }
+        }
+    }
+
+    private static void runBatched(GameObjectInterface game, String name, int commands, int batchSize) throws Exception {
+        String[] batch = new String[batchSize];
+        for(int i = 0; i < batchSize; i++) {
+            batch[i] = MIX[i % MIX.length];
+        }
+        for(int sent = 0; sent < commands; sent += batchSize) {
+            game.batch(name, batch);
+        }
+    }
+}
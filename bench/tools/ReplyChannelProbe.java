@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Local probe for the reply channel on port 13500.  Joins the given number of
+ *  players over RMI, registers a reply socket for each one the same way
+ *  GameClient.ReplyRemote does, and reports how long the name/ACK handshake took.
+ *  The sockets are then held open, idle, until Enter is pressed.
+ *
+ * Run as java ReplyChannelProbe hostname connections
+ *  (raise the open file limit first, eg. ulimit -n 65536, for large counts;
+ *  see benchmarks.md for building the tools)
+ */
+public class ReplyChannelProbe {
+
+    public static void main(String[] args) throws IOException, NotBoundException {
+        if(args.length < 2) {
+            System.out.println("[SHUTDOWN] .. Run as java ReplyChannelProbe hostname connections");
+            System.exit(-1);
+        }
+        String host = args[0];
+        int count = Integer.parseInt(args[1]);
+
+        GameObjectInterface remoteGameInterface = (GameObjectInterface) Naming.lookup("rmi://" + host + "/GameService");
+        ArrayList<SocketChannel> channels = new ArrayList<>(count);
+        ArrayList<String> names = new ArrayList<>(count);
+        long[] latencies = new long[count];
+        ByteBuffer reply = ByteBuffer.allocate(64);
+
+        long started = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            String name = "probe" + i;
+            if(remoteGameInterface.joinGame(name) == false) {
+                System.err.println("[ERROR] Could not join as " + name + ", stopping at " + i + " connections.");
+                count = i;
+                break;
+            }
+            names.add(name);
+
+            long connectStart = System.nanoTime();
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, EventChannelServer.PORT));
+            channel.write(ByteBuffer.wrap((name + "\n").getBytes(StandardCharsets.UTF_8)));
+            reply.clear();
+            while(indexOf(reply, (byte) '\n') < 0) {
+                if(channel.read(reply) < 0) {
+                    throw new IOException("Server closed the connection during the handshake for " + name);
+                }
+            }
+            latencies[i] = System.nanoTime() - connectStart;
+            channels.add(channel);
+        }
+        long elapsed = System.nanoTime() - started;
+
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.println("Connections held:     " + channels.size());
+        System.out.println("Total setup time:     " + (elapsed / 1000000) + " ms (including RMI joins)");
+        if(count > 0) {
+            System.out.println("Handshake p50:        " + (sorted[(int) (count * 0.50)] / 1000) + " us");
+            System.out.println("Handshake p99:        " + (sorted[(int) (count * 0.99)] / 1000) + " us");
+            System.out.println("Handshake max:        " + (sorted[count - 1] / 1000) + " us");
+        }
+
+        System.out.println("Holding connections idle.  Press Enter to disconnect.");
+        System.in.read();
+        for(int i = 0; i < channels.size(); i++) {
+            remoteGameInterface.leave(names.get(i));
+            channels.get(i).close();
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        for(int i = 0; i < buffer.position(); i++) {
+            if(buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,464 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator.  Runs a swarm of bot players against a game server on
+ *  localhost the same way GameClient does: each bot joins over RMI, registers its
+ *  name on the port 13500 reply socket, and then issues a weighted mix of commands
+ *  with random think time in between.
+ *
+ * Reports the achieved command throughput, latency percentiles per command, and
+ *  event delivery lag.  The lag is measured with SAY: bots say a timestamp, and
+ *  every bot that hears it over its reply socket records how long it took to arrive.
+ *
+ * A run is described by a scenario file in java.util.Properties format (see the
+ *  scenarios directory); settings may also be given or overridden as key=value
+ *  arguments.  The same scenario and seed issue the same commands in the same order
+ *  for every bot.
+ *
+ * Run as java BotSwarm [scenario.properties] [key=value ...]
+ *
+ * Settings:
+ *  host=localhost       Server host.
+ *  sessions=100         Number of bots.
+ *  rampup=5             Seconds over which the bots join.
+ *  warmup=5             Seconds after the last join before measuring starts.
+ *  duration=30          Seconds measured.
+ *  think.min=500        Shortest pause between a bot's commands, in milliseconds.
+ *  think.max=1500       Longest pause between a bot's commands, in milliseconds.
+ *  mix=LOOK:40,SAY:20,MOVE:25,PICKUP:10,LEFT:5   Command weights (also RIGHT, INVENTORY).
+ *  threads=32           Threads making the blocking RMI calls.
+ *  seed=1               Random seed.
+ */
+public class BotSwarm {
+    private static final String[] COMMANDS = {"LOOK", "SAY", "MOVE", "PICKUP", "LEFT", "RIGHT", "INVENTORY"};
+    private static final String[] OBJECTS = {"Flower", "Textbook", "Phone", "Newspaper"};
+    private static final String LAG_MARK = "lag:";
+
+    private final String host;
+    private final int sessions;
+    private final long rampMillis;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final int thinkMin;
+    private final int thinkMax;
+    private final int[] mix;
+    private final int mixTotal;
+    private final long seed;
+
+    private final ScheduledExecutorService callers;
+    private final Histogram[] latency;
+    private final Histogram joinLatency;
+    private final Histogram eventLag;
+    private final LongAdder[] issued;
+    private final LongAdder errors;
+    private final LongAdder events;
+    private volatile boolean measuring;
+    private volatile boolean running;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Bot> registrations;
+    private GameObjectInterface game;
+
+    public BotSwarm(Properties scenario) throws IOException {
+        this.host = scenario.getProperty("host", "localhost");
+        this.sessions = Integer.parseInt(scenario.getProperty("sessions", "100"));
+        this.rampMillis = (long) (Double.parseDouble(scenario.getProperty("rampup", "5")) * 1000);
+        this.warmupMillis = (long) (Double.parseDouble(scenario.getProperty("warmup", "5")) * 1000);
+        this.durationMillis = (long) (Double.parseDouble(scenario.getProperty("duration", "30")) * 1000);
+        this.thinkMin = Integer.parseInt(scenario.getProperty("think.min", "500"));
+        this.thinkMax = Math.max(this.thinkMin, Integer.parseInt(scenario.getProperty("think.max", "1500")));
+        this.seed = Long.parseLong(scenario.getProperty("seed", "1"));
+
+        this.mix = new int[COMMANDS.length];
+        int total = 0;
+        for(String entry : scenario.getProperty("mix", "LOOK:40,SAY:20,MOVE:25,PICKUP:10,LEFT:5").split(",")) {
+            String[] parts = entry.trim().split(":");
+            int command = indexOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            if(command < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + entry);
+            }
+            this.mix[command] = Integer.parseInt(parts[1].trim());
+            total += this.mix[command];
+        }
+        if(total <= 0) {
+            throw new IllegalArgumentException("The command mix is empty.");
+        }
+        this.mixTotal = total;
+
+        this.callers = new ScheduledThreadPoolExecutor(Integer.parseInt(scenario.getProperty("threads", "32")), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread caller = new Thread(task, "bot-caller");
+                caller.setDaemon(true);
+                return caller;
+            }
+        });
+        this.latency = new Histogram[COMMANDS.length];
+        this.issued = new LongAdder[COMMANDS.length];
+        for(int i = 0; i < COMMANDS.length; i++) {
+            this.latency[i] = new Histogram();
+            this.issued[i] = new LongAdder();
+        }
+        this.joinLatency = new Histogram();
+        this.eventLag = new Histogram();
+        this.errors = new LongAdder();
+        this.events = new LongAdder();
+        this.selector = Selector.open();
+        this.registrations = new ConcurrentLinkedQueue<>();
+    }
+
+    private static int indexOf(String command) {
+        for(int i = 0; i < COMMANDS.length; i++) {
+            if(COMMANDS[i].equals(command)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * One simulated player.
+     */
+    private class Bot implements Runnable {
+        final String name;
+        final Random random;
+        SocketChannel replies;
+        final ByteBuffer input;
+
+        Bot(int number) {
+            this.name = "bot" + BotSwarm.this.seed + "x" + number;
+            this.random = new Random(BotSwarm.this.seed * 1000003L + number);
+            this.input = ByteBuffer.allocate(8192);
+        }
+
+        /**
+         * Joins the game and registers the reply socket, then starts issuing commands.
+         */
+        void join() {
+            long start = System.nanoTime();
+            try {
+                if(BotSwarm.this.game.joinGame(this.name) == false) {
+                    System.err.println("[ERROR] " + this.name + " could not join; the name is taken.");
+                    BotSwarm.this.errors.increment();
+                    return;
+                }
+                this.replies = SocketChannel.open(new InetSocketAddress(BotSwarm.this.host, EventChannelServer.PORT));
+                this.replies.write(ByteBuffer.wrap((this.name + "\n").getBytes(StandardCharsets.UTF_8)));
+                BotSwarm.this.joinLatency.record(System.nanoTime() - start);
+                // The ACK and everything after it is read by the event thread.
+                this.replies.configureBlocking(false);
+                BotSwarm.this.registrations.add(this);
+                BotSwarm.this.selector.wakeup();
+                this.schedule();
+            } catch (IOException ex) {
+                System.err.println("[ERROR] " + this.name + " could not join: " + ex);
+                BotSwarm.this.errors.increment();
+            }
+        }
+
+        void schedule() {
+            if(BotSwarm.this.running) {
+                int think = BotSwarm.this.thinkMin + this.random.nextInt(BotSwarm.this.thinkMax - BotSwarm.this.thinkMin + 1);
+                BotSwarm.this.callers.schedule(this, think, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            if(BotSwarm.this.running == false) {
+                return;
+            }
+            int command = this.pick();
+            long start = System.nanoTime();
+            try {
+                String reply = this.issue(command, start);
+                if(reply == null) {
+                    BotSwarm.this.errors.increment();
+                }
+            } catch (RemoteException | RuntimeException ex) {
+                // Counted, and the bot carries on; an escaping exception would quietly
+                //  stop the bot for the rest of the run.
+                BotSwarm.this.errors.increment();
+            }
+            if(BotSwarm.this.measuring) {
+                BotSwarm.this.latency[command].record(System.nanoTime() - start);
+                BotSwarm.this.issued[command].increment();
+            }
+            this.schedule();
+        }
+
+        private int pick() {
+            int roll = this.random.nextInt(BotSwarm.this.mixTotal);
+            for(int i = 0; i < COMMANDS.length; i++) {
+                roll -= BotSwarm.this.mix[i];
+                if(roll < 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        private String issue(int command, long now) throws RemoteException {
+            GameObjectInterface game = BotSwarm.this.game;
+            switch(COMMANDS[command]) {
+                case "SAY":
+                    return game.say(this.name, LAG_MARK + now);
+                case "MOVE":
+                    return game.move(this.name, 1);
+                case "PICKUP":
+                    return game.pickup(this.name, OBJECTS[this.random.nextInt(OBJECTS.length)]);
+                case "LEFT":
+                    return game.left(this.name);
+                case "RIGHT":
+                    return game.right(this.name);
+                case "INVENTORY":
+                    return game.inventory(this.name);
+                default:
+                    return game.look(this.name);
+            }
+        }
+
+        void leave() {
+            try {
+                BotSwarm.this.game.leave(this.name);
+            } catch (RemoteException ex) {
+                // The server is going away as well; nothing to clean up.
+            }
+            if(this.replies != null) {
+                try {
+                    this.replies.close();
+                } catch (IOException ex) {
+                    // Already closed.
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every bot's reply socket on one thread and measures SAY delivery lag.
+     */
+    private void readEvents() {
+        byte[] mark = LAG_MARK.getBytes(StandardCharsets.UTF_8);
+        while(this.running) {
+            try {
+                this.selector.select(100);
+                Bot bot;
+                while((bot = this.registrations.poll()) != null) {
+                    bot.replies.register(this.selector, SelectionKey.OP_READ, bot);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    bot = (Bot) key.attachment();
+                    long arrived = System.nanoTime();
+                    int read;
+                    try {
+                        read = bot.replies.read(bot.input);
+                    } catch (IOException ex) {
+                        read = -1;
+                    }
+                    if(read < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    this.scanLines(bot.input, mark, arrived);
+                }
+            } catch (IOException ex) {
+                System.err.println("[ERROR] Event reader failed: " + ex);
+                return;
+            }
+        }
+    }
+
+    private void scanLines(ByteBuffer input, byte[] mark, long arrived) {
+        int start = 0;
+        int end = input.position();
+        byte[] bytes = input.array();
+        for(int i = 0; i < end; i++) {
+            if(bytes[i] != '\n') {
+                continue;
+            }
+            this.events.increment();
+            int at = find(bytes, start, i, mark);
+            if(at >= 0 && this.measuring) {
+                long sent = 0;
+                int digit = at + mark.length;
+                while(digit < i && bytes[digit] >= '0' && bytes[digit] <= '9') {
+                    sent = sent * 10 + (bytes[digit++] - '0');
+                }
+                this.eventLag.record(arrived - sent);
+            }
+            start = i + 1;
+        }
+        if(start == 0 && end == input.capacity()) {
+            // A line longer than the buffer, such as a big room description; skip it.
+            input.clear();
+            return;
+        }
+        input.position(start);
+        input.limit(end);
+        input.compact();
+    }
+
+    private static int find(byte[] bytes, int from, int to, byte[] mark) {
+        for(int i = from; i <= to - mark.length; i++) {
+            int j = 0;
+            while(j < mark.length && bytes[i + j] == mark[j]) {
+                j++;
+            }
+            if(j == mark.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the scenario and prints the report.
+     */
+    public void run() throws Exception {
+        this.game = (GameObjectInterface) Naming.lookup("rmi://" + this.host + "/GameService");
+        this.running = true;
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BotSwarm.this.readEvents();
+            }
+        }, "bot-events");
+        reader.setDaemon(true);
+        reader.start();
+
+        System.out.println("[STARTUP] .. Joining " + this.sessions + " bots over " + (this.rampMillis / 1000.0) + " s");
+        ArrayList<Bot> bots = new ArrayList<>(this.sessions);
+        long rampStart = System.nanoTime();
+        for(int i = 0; i < this.sessions; i++) {
+            Bot bot = new Bot(i);
+            bots.add(bot);
+            long due = rampStart + this.rampMillis * 1000000L * i / Math.max(1, this.sessions);
+            long wait = due - System.nanoTime();
+            if(wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            bot.join();
+        }
+        System.out.println("[RUN] .. All bots joined, warming up for " + (this.warmupMillis / 1000.0) + " s");
+        Thread.sleep(this.warmupMillis);
+
+        long eventsBefore = this.events.sum();
+        long errorsBefore = this.errors.sum();
+        this.measuring = true;
+        long measureStart = System.nanoTime();
+        long measureEnd = measureStart + this.durationMillis * 1000000L;
+        long lastCount = 0;
+        long lastTime = measureStart;
+        while(System.nanoTime() < measureEnd) {
+            Thread.sleep(Math.min(5000, Math.max(1, (measureEnd - System.nanoTime()) / 1000000L)));
+            long count = this.totalIssued();
+            long now = System.nanoTime();
+            System.out.printf(Locale.ROOT, "[RUN] .. %5.0f s  %8d commands  %8.0f commands/s%n",
+                    (now - measureStart) / 1e9, count, (count - lastCount) / ((now - lastTime) / 1e9));
+            lastCount = count;
+            lastTime = now;
+        }
+        this.measuring = false;
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        long eventCount = this.events.sum() - eventsBefore;
+        long errorCount = this.errors.sum() - errorsBefore;
+
+        this.running = false;
+        this.callers.shutdown();
+        this.callers.awaitTermination(10, TimeUnit.SECONDS);
+        for(Bot bot : bots) {
+            bot.leave();
+        }
+        this.report(seconds, eventCount, errorCount);
+    }
+
+    private long totalIssued() {
+        long total = 0;
+        for(LongAdder count : this.issued) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    private void report(double seconds, long eventCount, long errorCount) {
+        long total = this.totalIssued();
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Bots:        %d (seed %d, think %d-%d ms)%n", this.sessions, this.seed, this.thinkMin, this.thinkMax);
+        System.out.printf(Locale.ROOT, "Measured:    %.1f s%n", seconds);
+        System.out.printf(Locale.ROOT, "Throughput:  %.0f commands/s (%d commands, %d errors)%n", total / seconds, total, errorCount);
+        System.out.printf(Locale.ROOT, "Events:      %.0f event lines/s received%n", eventCount / seconds);
+        System.out.printf(Locale.ROOT, "Join:        p50 %s  p99 %s  max %s%n",
+                millis(this.joinLatency.getPercentile(0.50)), millis(this.joinLatency.getPercentile(0.99)), millis(this.joinLatency.getMax()));
+        System.out.println();
+        System.out.println("Command        count      p50      p90      p99     p999      max   (ms)");
+        for(int i = 0; i < COMMANDS.length; i++) {
+            if(this.issued[i].sum() > 0) {
+                this.printRow(COMMANDS[i], this.latency[i]);
+            }
+        }
+        this.printRow("event lag", this.eventLag);
+    }
+
+    private void printRow(String label, Histogram histogram) {
+        System.out.printf(Locale.ROOT, "%-10s %9d %8s %8s %8s %8s %8s%n", label, histogram.getCount(),
+                millis(histogram.getPercentile(0.50)), millis(histogram.getPercentile(0.90)),
+                millis(histogram.getPercentile(0.99)), millis(histogram.getPercentile(0.999)), millis(histogram.getMax()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties scenario = new Properties();
+        for(String arg : args) {
+            int equals = arg.indexOf('=');
+            if(equals > 0) {
+                scenario.setProperty(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+            }
+            else if(new File(arg).isFile()) {
+                Properties file = new Properties();
+                try (InputStream in = new FileInputStream(arg)) {
+                    file.load(in);
+                }
+                // Settings on the command line win over the scenario file, whatever the order.
+                for(String key : file.stringPropertyNames()) {
+                    if(scenario.containsKey(key) == false) {
+                        scenario.setProperty(key, file.getProperty(key));
+                    }
+                }
+            }
+            else {
+                System.out.println("[SHUTDOWN] .. Run as java BotSwarm [scenario.properties] [key=value ...]");
+                System.exit(-1);
+            }
+        }
+        new BotSwarm(scenario).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * One non-blocking client connection owned by a SelectorServer.
+ *  Any thread may queue outbound bytes with send(); the owning selector thread
+ *  writes them out as the socket becomes writable, so callers never block on a
+ *  slow client.
+ */
+public class ChannelConnection {
+    private static final int INITIAL_INPUT = 256;
+    private static final int MAX_INPUT = 64 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    private final SelectorServer server;
+    private final SocketChannel channel;
+    private final long openedAt;
+    private final ArrayDeque<ByteBuffer> outbound;
+    private long outboundBytes;
+    private boolean writePending;
+    private boolean closed;
+    private volatile boolean closeWhenFlushed;
+    private SelectorServer.SelectorLoop loop;
+    private SelectionKey key;
+    private ByteBuffer input;
+    private volatile Object attachment;
+    private volatile Runnable drainListener;
+
+    ChannelConnection(SelectorServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+        this.openedAt = System.nanoTime();
+        this.outbound = new ArrayDeque<>();
+        this.input = ByteBuffer.allocate(INITIAL_INPUT);
+    }
+
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * @return System.nanoTime() at the moment the connection was accepted.
+     */
+    public long getOpenedAt() {
+        return this.openedAt;
+    }
+
+    /**
+     * Protocol state kept by the server for this connection.
+     * @return Whatever was last attached, or null.
+     */
+    public Object getAttachment() {
+        return this.attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Sets a callback run on the selector thread whenever the outbound queue has
+     *  been completely written out to the socket.
+     * @param drainListener Callback, or null for none.
+     */
+    public void setDrainListener(Runnable drainListener) {
+        this.drainListener = drainListener;
+    }
+
+    /**
+     * Bytes received but not yet consumed, in write mode.  Only touch this from onRead.
+     * @return The input buffer.
+     */
+    public ByteBuffer getInput() {
+        return this.input;
+    }
+
+    /**
+     * @return Number of bytes queued but not yet written to the socket.
+     */
+    public synchronized long getOutboundBytes() {
+        return this.outboundBytes;
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Queues bytes for delivery.  Never blocks; the buffer must not be modified afterwards.
+     * @param data Bytes to send.
+     * @return false if the connection has already been closed.
+     */
+    public boolean send(ByteBuffer data) {
+        SelectorServer.SelectorLoop wake = null;
+        synchronized(this) {
+            if(this.closed || this.closeWhenFlushed) {
+                return false;
+            }
+            this.outbound.add(data);
+            this.outboundBytes += data.remaining();
+            if(this.writePending == false && this.loop != null) {
+                this.writePending = true;
+                wake = this.loop;
+            }
+        }
+        if(wake != null) {
+            wake.requestWrite(this);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the connection.  Safe to call more than once and from any thread.
+     */
+    public void close() {
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.outbound.clear();
+            this.outboundBytes = 0;
+        }
+        if(this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            // Nothing more can be done with a socket that will not close.
+        }
+        this.server.closed(this);
+    }
+
+    /**
+     * Closes the connection once everything already queued has been written.
+     */
+    public void shutdown() {
+        synchronized(this) {
+            if(this.closed || this.closeWhenFlushed) {
+                return;
+            }
+            this.closeWhenFlushed = true;
+            if(this.outbound.isEmpty() == false) {
+                // The selector thread closes the connection when the queue runs dry.
+                return;
+            }
+        }
+        this.close();
+    }
+
+    // ----- Selector thread only ------------
+
+    synchronized void attach(SelectorServer.SelectorLoop loop, SelectionKey key) {
+        this.loop = loop;
+        this.key = key;
+        if(this.closed) {
+            key.cancel();
+        }
+        else if(this.outbound.isEmpty() == false) {
+            this.writePending = true;
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    synchronized void enableWrite() {
+        if(this.closed == false && this.key.isValid()) {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    int read() throws IOException {
+        if(this.input.hasRemaining() == false) {
+            if(this.input.capacity() >= MAX_INPUT) {
+                throw new IOException("Input from client exceeded " + MAX_INPUT + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(MAX_INPUT, this.input.capacity() * 2));
+            this.input.flip();
+            larger.put(this.input);
+            this.input = larger;
+        }
+        return this.channel.read(this.input);
+    }
+
+    void flush() throws IOException {
+        Runnable listener = this.drainListener;
+        if(this.writeOut()) {
+            if(this.closeWhenFlushed) {
+                this.close();
+            }
+            else if(listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    private synchronized boolean writeOut() throws IOException {
+        if(this.closed) {
+            return false;
+        }
+        if(this.outbound.isEmpty() == false) {
+            ByteBuffer[] pending = new ByteBuffer[Math.min(this.outbound.size(), MAX_GATHER)];
+            Iterator<ByteBuffer> queued = this.outbound.iterator();
+            for(int i = 0; i < pending.length; i++) {
+                pending[i] = queued.next();
+            }
+            long written = this.channel.write(pending);
+            this.outboundBytes -= written;
+            this.server.wrote(written);
+            while(this.outbound.isEmpty() == false && this.outbound.peek().hasRemaining() == false) {
+                this.outbound.poll();
+            }
+        }
+        if(this.outbound.isEmpty()) {
+            this.writePending = false;
+            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Character stream over a ChannelConnection.  Text is collected until flush(), then
+ *  encoded as UTF-8 and queued on the connection in one piece.  Wrapped in an
+ *  autoflushing PrintWriter this behaves like the socket writers handed to players,
+ *  except that println() never blocks on the client.
+ *
+ * Outbound messages skip the character stream: send() queues the message's shared
+ *  encoding on the connection as it is.
+ *
+ * After startCompression() everything written goes through the connection's
+ *  EventCompressor instead.
+ */
+public class ChannelWriter extends Writer {
+    private final ChannelConnection connection;
+    private final StringBuilder pending;
+    // Guarded by lock; null until compression starts.
+    private EventCompressor compressor;
+
+    public ChannelWriter(ChannelConnection connection) {
+        this.connection = connection;
+        this.pending = new StringBuilder();
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+        this.pending.append(buffer, offset, length);
+    }
+
+    @Override
+    public void write(String text, int offset, int length) {
+        this.pending.append(text, offset, offset + length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(this.pending.length() == 0) {
+            return;
+        }
+        ByteBuffer bytes = this.compress(this.encode(this.pending));
+        this.pending.setLength(0);
+        if(this.connection.send(bytes) == false) {
+            throw new IOException("Connection has been closed.");
+        }
+    }
+
+    /**
+     * Turns one flushed chunk of text into the bytes queued on the connection.
+     * @param text Text written since the last flush.
+     * @return Bytes to send.
+     */
+    protected ByteBuffer encode(CharSequence text) {
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+    }
+
+    /**
+     * Sends one outbound message as a line, as println(message) would, but queuing
+     *  the message's shared bytes instead of encoding it again.
+     * @param message Message to send.
+     * @throws IOException if the connection has been closed.
+     */
+    public void send(OutboundMessage message) throws IOException {
+        // The lock a PrintWriter over this writer takes, so text printed at the same
+        //  time is not split around the message.
+        synchronized(this.lock) {
+            this.flush();
+            if(this.connection.send(this.compress(this.encode(message))) == false) {
+                throw new IOException("Connection has been closed.");
+            }
+        }
+    }
+
+    /**
+     * Compresses everything written from now on.  The start line goes out first,
+     *  uncompressed, so the client knows where the compressed stream begins.
+     * @param compressor Compressor for this connection.
+     * @param startLine Line marking the start, without a line ending.
+     * @throws IOException if the connection has been closed.
+     */
+    public void startCompression(EventCompressor compressor, String startLine) throws IOException {
+        synchronized(this.lock) {
+            if(this.compressor != null) {
+                return;
+            }
+            this.flush();
+            if(this.connection.send(this.encode(startLine + System.lineSeparator())) == false) {
+                throw new IOException("Connection has been closed.");
+            }
+            this.compressor = compressor;
+        }
+    }
+
+    /**
+     * @return The connection's compressor, or null if it is not compressed.
+     */
+    public EventCompressor getCompressor() {
+        synchronized(this.lock) {
+            return this.compressor;
+        }
+    }
+
+    // Called with the lock held.
+    private ByteBuffer compress(ByteBuffer bytes) {
+        return this.compressor == null ? bytes : this.compressor.compress(bytes);
+    }
+
+    /**
+     * Picks the encoding of an outbound message that goes on the connection.
+     * @param message Message being sent.
+     * @return Bytes to send; a view of the message's shared buffer.
+     */
+    protected ByteBuffer encode(OutboundMessage message) {
+        return message.line();
+    }
+
+    /**
+     * @return Connection written to.
+     */
+    public ChannelConnection getConnection() {
+        return this.connection;
+    }
+
+    @Override
+    public void close() {
+        synchronized(this.lock) {
+            try {
+                this.flush();
+            } catch (IOException ex) {
+                // Already closed, nothing left to deliver.
+            }
+        }
+        this.connection.shutdown();
+    }
+}
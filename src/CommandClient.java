@@ -0,0 +1,250 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Client side of the single-socket game protocol (see CommandProtocol).
+ *  submit() sends a command without waiting, so any number of commands can be in
+ *  flight at once; the GameObjectInterface methods are blocking conveniences on
+ *  top of it so GameClient can use either transport.  The connection is bound to
+ *  one player by joinGame(), so the name arguments of the other methods are ignored.
+ */
+public class CommandClient implements GameObjectInterface {
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final DataInputStream input;
+    private final Consumer<String> events;
+    private final AtomicInteger nextTag;
+    private final ConcurrentHashMap<Integer, CompletableFuture<String>> inFlight;
+
+    /**
+     * Thrown through a request's future when the server answers with an ERROR frame.
+     */
+    public static class CommandError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public CommandError(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Connects to a CommandServer.
+     * @param host Server host name.
+     * @param port Server port.
+     * @param events Receives every asynchronous event, and null once when the server closes the connection.
+     * @throws IOException if the connection cannot be made.
+     */
+    public CommandClient(String host, int port, Consumer<String> events) throws IOException {
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+        this.output = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+        this.input = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.events = events;
+        this.nextTag = new AtomicInteger(CommandProtocol.EVENT_TAG);
+        this.inFlight = new ConcurrentHashMap<>();
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CommandClient.this.readResponses();
+            }
+        }, "command-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a command line without waiting for the reply.
+     * @param line Command line, eg. "MOVE 3".
+     * @return Future completed with the reply text, or failed with CommandError.
+     * @throws IOException if the request cannot be written.
+     */
+    public Future<String> submit(String line) throws IOException {
+        int tag = this.nextTag.incrementAndGet();
+        if(tag == CommandProtocol.EVENT_TAG) {
+            tag = this.nextTag.incrementAndGet();
+        }
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        this.inFlight.put(tag, reply);
+        ByteBuffer frame = CommandProtocol.encodeRequest(tag, line);
+        synchronized(this.output) {
+            this.output.write(frame.array(), 0, frame.limit());
+            this.output.flush();
+        }
+        return reply;
+    }
+
+    /**
+     * Sends a command line and waits for the reply.
+     * @param line Command line.
+     * @return Reply text, or the server's error message.
+     * @throws RemoteException if the connection fails.
+     */
+    public String call(String line) throws RemoteException {
+        try {
+            return this.submit(line).get();
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof CommandError) {
+                return ex.getCause().getMessage();
+            }
+            throw new RemoteException("Command failed: " + line, ex.getCause());
+        } catch (IOException ex) {
+            throw new RemoteException("Could not send command: " + line, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for: " + line, ex);
+        }
+    }
+
+    public void close() throws IOException {
+        this.socket.close();
+    }
+
+    private void readResponses() {
+        try {
+            while(true) {
+                int length = this.input.readInt();
+                int tag = this.input.readInt();
+                byte kind = this.input.readByte();
+                byte[] body = new byte[length - 5];
+                this.input.readFully(body);
+                String text = new String(body, StandardCharsets.UTF_8);
+
+                if(kind == CommandProtocol.EVENT) {
+                    this.events.accept(text);
+                    continue;
+                }
+                CompletableFuture<String> reply = this.inFlight.remove(tag);
+                if(reply != null) {
+                    if(kind == CommandProtocol.ERROR) {
+                        reply.completeExceptionally(new CommandError(text));
+                    }
+                    else {
+                        reply.complete(text);
+                    }
+                }
+            }
+        } catch (EOFException ex) {
+            // Server closed the connection.
+        } catch (IOException ex) {
+            // Connection failed; treated the same as a close.
+        }
+        for(CompletableFuture<String> reply : this.inFlight.values()) {
+            reply.completeExceptionally(new IOException("The connection to the server was closed."));
+        }
+        this.inFlight.clear();
+        this.events.accept(null);
+    }
+
+    // ----- GameObjectInterface ------------
+
+    @Override
+    public boolean joinGame(String name) throws RemoteException {
+        try {
+            this.submit("JOIN " + name).get();
+            return true;
+        } catch (ExecutionException ex) {
+            return false;
+        } catch (IOException ex) {
+            throw new RemoteException("Could not send JOIN", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while joining", ex);
+        }
+    }
+
+    @Override
+    public String look(String name) throws RemoteException {
+        return this.call("LOOK");
+    }
+
+    @Override
+    public String left(String name) throws RemoteException {
+        return this.call("LEFT");
+    }
+
+    @Override
+    public String right(String name) throws RemoteException {
+        return this.call("RIGHT");
+    }
+
+    @Override
+    public String say(String name, String message) throws RemoteException {
+        return this.call("SAY " + message);
+    }
+
+    @Override
+    public String move(String name, int distance) throws RemoteException {
+        return this.call("MOVE " + distance);
+    }
+
+    @Override
+    public String goTo(String name, String destination) throws RemoteException {
+        return this.call("GOTO " + destination);
+    }
+
+    @Override
+    public String pickup(String name, String object) throws RemoteException {
+        return this.call("PICKUP " + object);
+    }
+
+    @Override
+    public String inventory(String name) throws RemoteException {
+        return this.call("INVENTORY");
+    }
+
+    /**
+     * Pipelines every command before waiting for the first reply.
+     */
+    @Override
+    public String[] batch(String name, String[] commands) throws RemoteException {
+        ArrayList<Future<String>> sent = new ArrayList<>(commands.length);
+        try {
+            for(String command : commands) {
+                sent.add(this.submit(command));
+            }
+        } catch (IOException ex) {
+            throw new RemoteException("Could not send batch", ex);
+        }
+        String[] replies = new String[commands.length];
+        for(int i = 0; i < replies.length; i++) {
+            try {
+                replies[i] = sent.get(i).get();
+            } catch (ExecutionException ex) {
+                if(ex.getCause() instanceof CommandError == false) {
+                    throw new RemoteException("Batch failed", ex.getCause());
+                }
+                replies[i] = ex.getCause().getMessage();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while waiting for batch", ex);
+            }
+        }
+        return replies;
+    }
+
+    @Override
+    public String stats(String name, String key) throws RemoteException {
+        return this.call("STATS " + key);
+    }
+
+    @Override
+    public void leave(String name) throws RemoteException {
+        this.call("QUIT");
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+
+/**
+ * Server-side parser for text commands, using the same syntax players type into
+ *  GameClient (LOOK, LEFT, RIGHT, SAY message, MOVE distance, GOTO room,
+ *  PICKUP object, INVENTORY, and STATS key for administrators).  Lets transports other than RMI
+ *  dispatch straight into GameCore.
+ */
+public class CommandInterpreter {
+    private final GameCore core;
+
+    public CommandInterpreter(GameCore core) {
+        this.core = core;
+    }
+
+    /**
+     * Runs a single command line on behalf of a player, on the room partition that
+     *  owns the player's room if the world is partitioned.
+     * @param name Name of the player issuing the command.
+     * @param input Command line, eg. "MOVE 3".
+     * @return Reply for the player, or null if no such player is in the game.
+     * @throws IllegalArgumentException if the command is unknown or malformed.
+     */
+    public String execute(final String name, final String input) {
+        return this.core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return CommandInterpreter.this.run(name, input);
+            }
+        });
+    }
+
+    private String run(String name, String input) {
+        // First, tokenize the raw input.
+        StringTokenizer commandTokens = new StringTokenizer(input);
+        ArrayList<String> tokens = new ArrayList<>();
+        while(commandTokens.hasMoreTokens() == true) {
+            tokens.add(commandTokens.nextToken());
+        }
+
+        if(tokens.isEmpty()) {
+            throw new IllegalArgumentException("The command had no input.");
+        }
+
+        switch(tokens.remove(0).toUpperCase()) {
+            case "LOOK":
+                return core.look(name);
+            case "LEFT":
+                return core.left(name);
+            case "RIGHT":
+                return core.right(name);
+            case "SAY":
+                if(tokens.isEmpty()) {
+                    throw new IllegalArgumentException("You need to say something in order to SAY.");
+                }
+                return core.say(name, String.join(" ", tokens));
+            case "MOVE":
+                if(tokens.isEmpty()) {
+                    throw new IllegalArgumentException("You need to provide a distance in order to move.");
+                }
+                int distance;
+                try {
+                    distance = Integer.parseInt(tokens.remove(0));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("The distance to move must be a number.");
+                }
+                // A distance under 1 is answered by GameCore, as it is for a single MOVE call.
+                return core.move(name, distance);
+            case "GOTO":
+                if(tokens.isEmpty()) {
+                    throw new IllegalArgumentException("You need to say where you want to go.");
+                }
+                return core.goTo(name, String.join(" ", tokens));
+            case "PICKUP":
+                if(tokens.isEmpty()) {
+                    throw new IllegalArgumentException("You need to provide an object to pickup.");
+                }
+                return core.pickup(name, tokens.remove(0));
+            case "INVENTORY":
+                return core.inventory(name);
+            case "STATS":
+                return core.stats(name, tokens.isEmpty() ? null : tokens.remove(0));
+            default:
+                throw new IllegalArgumentException("Unknown command: " + input.trim());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format for the single-socket, non-RMI game protocol.
+ *
+ * Every frame is [int length][int tag][body], where length counts the tag and body.
+ *  - Client to server, the body is a UTF-8 command line: "JOIN name", "QUIT" or
+ *    any command CommandInterpreter understands.
+ *  - Server to client, the body is [byte kind][UTF-8 text].  REPLY and ERROR carry
+ *    the tag of the request they answer; EVENT frames use tag 0 and carry the
+ *    asynchronous messages that the RMI implementation sends over port 13500.
+ * Clients pick their own (non-zero) tags and may have many requests in flight.
+ *  Requests from one connection are executed in the order they were sent.
+ */
+public final class CommandProtocol {
+    public static final int DEFAULT_PORT = 13501;
+    public static final int EVENT_TAG = 0;
+
+    public static final byte REPLY = 0;
+    public static final byte EVENT = 1;
+    public static final byte ERROR = 2;
+
+    private CommandProtocol() {
+    }
+
+    /**
+     * Encodes a client request frame.
+     * @param tag Tag the reply will carry.
+     * @param line Command line.
+     * @return Frame ready to write.
+     */
+    public static ByteBuffer encodeRequest(int tag, String line) {
+        byte[] body = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(8 + body.length);
+        frame.putInt(4 + body.length).putInt(tag).put(body);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes a server response or event frame.
+     * @param tag Tag of the request being answered, or EVENT_TAG.
+     * @param kind REPLY, EVENT or ERROR.
+     * @param text Text of the message.
+     * @return Frame ready to write.
+     */
+    public static ByteBuffer encodeResponse(int tag, byte kind, String text) {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(9 + body.length);
+        frame.putInt(5 + body.length).putInt(tag).put(kind).put(body);
+        frame.flip();
+        return frame;
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Non-RMI game server.  Each client holds one TCP connection that carries tagged,
+ *  pipelined command requests and, on the same socket, the asynchronous events the
+ *  RMI implementation sends over port 13500.  See CommandProtocol for the framing.
+ *
+ * Requests are decoded on the selector threads and run on a pool of worker threads,
+ *  in order per connection, against the same GameCore the RMI server uses.
+ */
+public class CommandServer extends SelectorServer {
+    // Largest request body accepted from a client.
+    private static final int MAX_FRAME = 16 * 1024;
+
+    private final GameCore core;
+    private final CommandInterpreter interpreter;
+    private final ExecutorService workers;
+
+    /**
+     * @param core Game core the commands run against.
+     * @param port Port to listen on.
+     * @param selectorThreads Number of selector threads sharing the connections.
+     * @param workerThreads Number of threads executing commands.
+     */
+    public CommandServer(GameCore core, int port, int selectorThreads, int workerThreads) {
+        super(port, selectorThreads);
+        this.core = core;
+        this.interpreter = new CommandInterpreter(core);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread worker = new Thread(task, "command-worker");
+                worker.setDaemon(true);
+                return worker;
+            }
+        });
+    }
+
+    @Override
+    protected void onRead(ChannelConnection connection) {
+        Session session = (Session) connection.getAttachment();
+        if(session == null) {
+            session = new Session(connection);
+            connection.setAttachment(session);
+        }
+
+        ByteBuffer input = connection.getInput();
+        input.flip();
+        while(input.remaining() >= 4) {
+            int length = input.getInt(input.position());
+            if(length < 4 || length > MAX_FRAME + 4) {
+                GameLog.warn("Malformed command frame of length " + length + ", severing the connection");
+                connection.close();
+                return;
+            }
+            if(input.remaining() < 4 + length) {
+                break;
+            }
+            input.getInt();
+            int tag = input.getInt();
+            String line = new String(input.array(), input.position(), length - 4, StandardCharsets.UTF_8);
+            input.position(input.position() + length - 4);
+            session.submit(new Request(tag, line));
+        }
+        input.compact();
+    }
+
+    @Override
+    protected void onClose(ChannelConnection connection) {
+        Session session = (Session) connection.getAttachment();
+        if(session != null) {
+            // A dropped connection counts as leaving the game.
+            session.submit(new Request(CommandProtocol.EVENT_TAG, null));
+        }
+    }
+
+    /**
+     * One decoded request.  A null line marks the end of the connection.
+     */
+    private static class Request {
+        final int tag;
+        final String line;
+
+        Request(int tag, String line) {
+            this.tag = tag;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Per-connection command state.  Requests queue up here and are run one at a
+     *  time, in arrival order, by whichever worker thread picks the session up.
+     */
+    private class Session implements Runnable {
+        private final ChannelConnection connection;
+        private final ArrayDeque<Request> pending;
+        private boolean scheduled;
+        private String playerName;
+        // The player this session joined as; leaving removes only this one.
+        private Player player;
+
+        Session(ChannelConnection connection) {
+            this.connection = connection;
+            this.pending = new ArrayDeque<>();
+        }
+
+        synchronized void submit(Request request) {
+            this.pending.add(request);
+            if(this.scheduled == false) {
+                this.scheduled = true;
+                CommandServer.this.workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Request request;
+            while(true) {
+                synchronized(this) {
+                    request = this.pending.poll();
+                    if(request == null) {
+                        this.scheduled = false;
+                        return;
+                    }
+                }
+                this.execute(request.tag, request.line);
+            }
+        }
+
+        private void execute(int tag, String line) {
+            if(line == null) {
+                this.leave();
+                return;
+            }
+
+            String trimmed = line.trim();
+            int space = trimmed.indexOf(' ');
+            String command = (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase();
+            try {
+                switch(command) {
+                    case "JOIN":
+                        this.join(tag, space < 0 ? "" : trimmed.substring(space + 1).trim());
+                        break;
+                    case "QUIT":
+                        this.reply(tag, CommandProtocol.REPLY, "Goodbye.");
+                        this.leave();
+                        this.connection.shutdown();
+                        break;
+                    default:
+                        if(this.playerName == null) {
+                            this.reply(tag, CommandProtocol.ERROR, "You must JOIN the game first.");
+                            break;
+                        }
+                        String result = CommandServer.this.interpreter.execute(this.playerName, line);
+                        if(result == null) {
+                            this.reply(tag, CommandProtocol.ERROR, "You are no longer in the game.");
+                        }
+                        else {
+                            this.reply(tag, CommandProtocol.REPLY, result);
+                        }
+                        break;
+                }
+            } catch (IllegalArgumentException ex) {
+                this.reply(tag, CommandProtocol.ERROR, ex.getMessage());
+            }
+        }
+
+        private void join(int tag, String name) {
+            if(this.playerName != null) {
+                this.reply(tag, CommandProtocol.ERROR, "You are already in the game as " + this.playerName + ".");
+                return;
+            }
+            if(name.isEmpty()) {
+                this.reply(tag, CommandProtocol.ERROR, "You need to provide a name in order to JOIN.");
+                return;
+            }
+            Player joined = CommandServer.this.core.joinGame(name);
+            if(joined == null) {
+                this.reply(tag, CommandProtocol.ERROR, "Someone else is already logged in with that name.");
+                return;
+            }
+            this.playerName = name;
+            this.player = joined;
+
+            // Events for this player travel on this same connection, as EVENT frames.
+            ChannelWriter channel = new ChannelWriter(this.connection) {
+                @Override
+                protected ByteBuffer encode(CharSequence text) {
+                    return CommandProtocol.encodeResponse(CommandProtocol.EVENT_TAG, CommandProtocol.EVENT, stripNewline(text));
+                }
+                
+                @Override
+                protected ByteBuffer encode(OutboundMessage message) {
+                    return message.frame();
+                }
+            };
+            CommandServer.this.core.setReplyWriter(name, new PrintWriter(channel, true), channel);
+            this.reply(tag, CommandProtocol.REPLY, "Welcome, " + name + ".");
+        }
+
+        private void leave() {
+            if(this.player != null) {
+                Player left = CommandServer.this.core.leave(this.player);
+                if(left != null) {
+                    left.closeReplies();
+                }
+                this.playerName = null;
+                this.player = null;
+            }
+        }
+
+        private void reply(int tag, byte kind, String text) {
+            this.connection.send(CommandProtocol.encodeResponse(tag, kind, text));
+        }
+    }
+
+    private static String stripNewline(CharSequence text) {
+        int end = text.length();
+        while(end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return text.subSequence(0, end).toString();
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous reply channel for the RMI implementation (port 13500).
+ *  A client opens a socket, sends its player name on one line and waits for "ACK".
+ *  From then on the socket only carries events the client did not ask for
+ *  (ie. other players talking).  All connections share a few selector threads.
+ *
+ * The ACK also offers, tab separated, what a client may take up by sending its name
+ *  back on a line of its own: compression of the event stream (EventCompressor.CAPABILITY,
+ *  unless game.eventcompression is false) and room deltas (RoomDelta.CAPABILITY, unless
+ *  game.roomdeltas is false).  Clients that do not know about them simply ignore the
+ *  rest of the ACK line.
+ */
+public class EventChannelServer extends SelectorServer {
+    public static final int PORT = 13500;
+
+    private final GameObject remoteObject;
+    private final boolean compression;
+    private final boolean roomDeltas;
+    private final ByteBuffer ack;
+    // Compressors of the open connections, and the totals of those since closed.
+    private final Set<EventCompressor> compressors;
+    private final AtomicLong closedMessages;
+    private final AtomicLong closedBytesIn;
+    private final AtomicLong closedBytesOut;
+    private final AtomicLong closedNanos;
+    private final AtomicLong handshakes;
+    private final AtomicLong handshakeNanos;
+    private final AtomicLong maxHandshakeNanos;
+
+    /**
+     * @param remoteObject Remote game object players are registered with.
+     * @param selectorThreads Number of selector threads sharing the connections.
+     */
+    public EventChannelServer(GameObject remoteObject, int selectorThreads) {
+        super(PORT, selectorThreads);
+        this.remoteObject = remoteObject;
+        this.compression = Boolean.parseBoolean(System.getProperty("game.eventcompression", "true"));
+        this.roomDeltas = Boolean.parseBoolean(System.getProperty("game.roomdeltas", "true"));
+        // Room deltas are offered last: the first clients to take them only looked at
+        //  the end of the line.
+        this.ack = ByteBuffer.wrap(("ACK" + (this.compression ? "\t" + EventCompressor.CAPABILITY : "")
+                + (this.roomDeltas ? "\t" + RoomDelta.CAPABILITY : "")
+                + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        this.compressors = ConcurrentHashMap.newKeySet();
+        this.closedMessages = new AtomicLong();
+        this.closedBytesIn = new AtomicLong();
+        this.closedBytesOut = new AtomicLong();
+        this.closedNanos = new AtomicLong();
+        this.handshakes = new AtomicLong();
+        this.handshakeNanos = new AtomicLong();
+        this.maxHandshakeNanos = new AtomicLong();
+    }
+
+    /**
+     * A connection whose player has been named.
+     */
+    private static final class Registration {
+        final String playerName;
+        final ChannelWriter channel;
+
+        Registration(String playerName, ChannelWriter channel) {
+            this.playerName = playerName;
+            this.channel = channel;
+        }
+    }
+
+    @Override
+    protected void onRead(ChannelConnection connection) {
+        ByteBuffer input = connection.getInput();
+        Registration registered = (Registration) connection.getAttachment();
+        if(registered != null) {
+            this.readCapabilities(registered, input);
+            return;
+        }
+
+        // Wait until the whole name line has arrived.
+        String playerName = readLine(input);
+        if(playerName == null) {
+            return;
+        }
+        ChannelWriter channel = new ChannelWriter(connection);
+        Registration registration = new Registration(playerName, channel);
+        connection.setAttachment(registration);
+
+        // Acknowledge receipt.
+        GameLog.event(LogLevel.DEBUG, "Reply connection opened", playerName, GameLog.NO_ROOM, null);
+        connection.send(this.ack.duplicate());
+        this.recordHandshake(System.nanoTime() - connection.getOpenedAt());
+
+        // Attach this socket to the player managed by the remote object.
+        PrintWriter remoteWriter = new PrintWriter(channel, true);
+        if(this.remoteObject.setReplyWriter(playerName, remoteWriter, channel) == false) {
+            GameLog.event(LogLevel.WARN, "Non-registered player attempted a reply connection, severing", playerName, GameLog.NO_ROOM, null);
+            connection.close();
+            return;
+        }
+
+        GameLog.event(LogLevel.INFO, "Reply connection registered", playerName, GameLog.NO_ROOM, null);
+        // A client that already knows the server may have sent its capabilities right
+        //  behind its name; take them up before the first look goes out.
+        this.readCapabilities(registration, input);
+        // And give the player their first look at the area they are in.
+        this.remoteObject.sendLook(playerName);
+    }
+
+    /**
+     * After its name the client only sends the capabilities it takes up; anything
+     *  else is ignored.
+     * @param registered The connection's player.
+     * @param input Input buffer, in write mode.
+     */
+    private void readCapabilities(Registration registered, ByteBuffer input) {
+        String line;
+        while((line = readLine(input)) != null) {
+            if(this.compression && line.trim().equals(EventCompressor.CAPABILITY)) {
+                this.startCompression(registered);
+            }
+            else if(this.roomDeltas && line.trim().equals(RoomDelta.CAPABILITY)) {
+                this.remoteObject.enableRoomDeltas(registered.playerName);
+            }
+        }
+        if(input.hasRemaining() == false) {
+            input.clear();
+        }
+    }
+
+    private void startCompression(Registration registered) {
+        if(registered.channel.getCompressor() != null) {
+            return;
+        }
+        EventCompressor compressor = new EventCompressor();
+        try {
+            registered.channel.startCompression(compressor, EventCompressor.START);
+            this.compressors.add(compressor);
+        } catch (IOException ex) {
+            compressor.end();
+        }
+    }
+
+    @Override
+    protected void onClose(ChannelConnection connection) {
+        Registration registered = (Registration) connection.getAttachment();
+        EventCompressor compressor = registered == null ? null : registered.channel.getCompressor();
+        if(compressor == null || this.compressors.remove(compressor) == false) {
+            return;
+        }
+        compressor.end();
+        this.closedMessages.addAndGet(compressor.getMessages());
+        this.closedBytesIn.addAndGet(compressor.getBytesIn());
+        this.closedBytesOut.addAndGet(compressor.getBytesOut());
+        this.closedNanos.addAndGet(compressor.getNanos());
+        GameLog.event(LogLevel.INFO, "Compressed event stream closed: " + EventCompressor.describe(compressor.getMessages(),
+                compressor.getBytesIn(), compressor.getBytesOut(), compressor.getNanos()),
+                registered.playerName, GameLog.NO_ROOM, null);
+    }
+
+    /**
+     * @return Compression of the event streams so far, open and closed, or null if
+     *  compression is not offered.
+     */
+    @Override
+    public String report() {
+        if(this.compression == false) {
+            return null;
+        }
+        long messages = this.closedMessages.get();
+        long bytesIn = this.closedBytesIn.get();
+        long bytesOut = this.closedBytesOut.get();
+        long nanos = this.closedNanos.get();
+        for(EventCompressor compressor : this.compressors) {
+            messages += compressor.getMessages();
+            bytesIn += compressor.getBytesIn();
+            bytesOut += compressor.getBytesOut();
+            nanos += compressor.getNanos();
+        }
+        return "Event compression: " + this.compressors.size() + " streams open, "
+                + EventCompressor.describe(messages, bytesIn, bytesOut, nanos);
+    }
+
+    /**
+     * Takes one line off the front of the input.
+     * @param input Input buffer, in write mode.
+     * @return The line without its line ending, or null if no whole line has arrived.
+     */
+    private static String readLine(ByteBuffer input) {
+        for(int i = 0; i < input.position(); i++) {
+            if(input.get(i) == '\n') {
+                int length = (i > 0 && input.get(i - 1) == '\r') ? i - 1 : i;
+                String line = new String(input.array(), 0, length, StandardCharsets.UTF_8);
+                input.flip();
+                input.position(i + 1);
+                input.compact();
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private void recordHandshake(long nanos) {
+        this.handshakes.incrementAndGet();
+        this.handshakeNanos.addAndGet(nanos);
+        long max = this.maxHandshakeNanos.get();
+        while(nanos > max && this.maxHandshakeNanos.compareAndSet(max, nanos) == false) {
+            max = this.maxHandshakeNanos.get();
+        }
+    }
+
+    /**
+     * @return Number of name/ACK handshakes completed since startup.
+     */
+    public long getHandshakeCount() {
+        return this.handshakes.get();
+    }
+
+    /**
+     * @return Mean time from accept to ACK, in microseconds.
+     */
+    public double getMeanHandshakeMicros() {
+        long count = this.handshakes.get();
+        return count == 0 ? 0.0 : this.handshakeNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return Longest time from accept to ACK, in microseconds.
+     */
+    public double getMaxHandshakeMicros() {
+        return this.maxHandshakeNanos.get() / 1000.0;
+    }
+}
@@ -0,0 +1,166 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of one event socket.  Events in a busy room repeat themselves ("X turns
+ *  to the left.", "X takes a look around.", room views), so the stream compresses
+ *  well, and better still when the compressor starts out knowing the game's messages:
+ *  both ends load DICTIONARY as a preset dictionary.
+ *
+ * A client is offered compression in the ACK (see EventChannelServer) and asks for it
+ *  by sending CAPABILITY on a line of its own.  The server answers with the line START
+ *  and everything after it is one raw DEFLATE stream.  The stream is flushed after
+ *  every message (Deflater.SYNC_FLUSH), so the client can decode each message as soon
+ *  as it arrives.
+ *
+ * Each connection has its own compressor: compressed bytes depend on everything sent
+ *  before them on that connection, so unlike plain messages they cannot be shared
+ *  between recipients.
+ */
+public class EventCompressor {
+    /** Offered after the ACK, and sent back by clients that want compression. */
+    public static final String CAPABILITY = "DEFLATE";
+    /** Last plain line on the socket; the compressed stream starts right after it. */
+    public static final String START = "\u0002" + CAPABILITY;
+
+    // Deflate prefers nearby matches, so the most common messages go last.
+    private static final byte[] DICTIONARY = String.join("",
+            " has arrived.\n",
+            "You see ", " heading off to class.\n",
+            " looking through their pockets.\n",
+            " bends over to pick up something, but doesn't seem to find what they were looking for.\n",
+            " bends over to pick up a ", " that was on the ground.\n",
+            "You see a student rush past and drop a ", " on the ground.\n",
+            " passes through, heading NORTH.\n", " passes through, heading SOUTH.\n",
+            " passes through, heading EAST.\n", " passes through, heading WEST.\n",
+            " has walked off to the NORTH\n", " has walked off to the SOUTH\n",
+            " has walked off to the EAST\n", " has walked off to the WEST\n",
+            " messages were skipped because you fell behind.]\n",
+            ".-------------------------\n| ",
+            "\n-------------------------\n",
+            "\n...................\nObjects in the area: None.\nPlayers in the area: ",
+            "\nYou see paths in these directions: NORTH SOUTH EAST WEST \n...................\n",
+            "You are facing: NORTH\nYou are facing: SOUTH\nYou are facing: EAST\nYou are facing: WEST\n",
+            " just walked into the area.\n",
+            " says, \"",
+            " turns to the right.\n",
+            " turns to the left.\n",
+            " takes a look around.\n").getBytes(StandardCharsets.UTF_8);
+
+    private static final int LEVEL = Integer.getInteger("game.eventcompression.level", Deflater.BEST_SPEED);
+
+    private final Deflater deflater;
+    private byte[] input;
+    private byte[] output;
+    private long messages;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+    private boolean ended;
+
+    public EventCompressor() {
+        this.deflater = new Deflater(LEVEL, true);
+        this.deflater.setDictionary(DICTIONARY);
+        this.input = new byte[256];
+        this.output = new byte[256];
+    }
+
+    /**
+     * @return An inflater for the client end, loaded with the same dictionary.
+     */
+    public static Inflater inflater() {
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(DICTIONARY);
+        return inflater;
+    }
+
+    /**
+     * Compresses the next message on the connection, flushed so that it can be
+     *  decoded without waiting for the next one.
+     * @param plain Bytes of the message; consumed.
+     * @return The compressed bytes.
+     */
+    public synchronized ByteBuffer compress(ByteBuffer plain) {
+        if(this.ended) {
+            // The connection has closed; nothing more goes out on it.
+            return ByteBuffer.allocate(0);
+        }
+        long start = System.nanoTime();
+        int length = plain.remaining();
+        if(this.input.length < length) {
+            this.input = new byte[Math.max(length, this.input.length * 2)];
+        }
+        plain.get(this.input, 0, length);
+        this.deflater.setInput(this.input, 0, length);
+        int written = 0;
+        while(true) {
+            written += this.deflater.deflate(this.output, written, this.output.length - written, Deflater.SYNC_FLUSH);
+            // A full output buffer may mean there is more to come.
+            if(written < this.output.length) {
+                break;
+            }
+            this.output = Arrays.copyOf(this.output, this.output.length * 2);
+        }
+        ByteBuffer compressed = ByteBuffer.wrap(Arrays.copyOf(this.output, written));
+        this.messages++;
+        this.bytesIn += length;
+        this.bytesOut += written;
+        this.nanos += System.nanoTime() - start;
+        return compressed;
+    }
+
+    /**
+     * Frees the compressor's native memory, once the connection has closed.
+     */
+    public synchronized void end() {
+        this.ended = true;
+        this.deflater.end();
+    }
+
+    /**
+     * @return Number of messages compressed.
+     */
+    public synchronized long getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return Bytes before compression.
+     */
+    public synchronized long getBytesIn() {
+        return this.bytesIn;
+    }
+
+    /**
+     * @return Bytes after compression.
+     */
+    public synchronized long getBytesOut() {
+        return this.bytesOut;
+    }
+
+    /**
+     * @return Time spent compressing, in nanoseconds.
+     */
+    public synchronized long getNanos() {
+        return this.nanos;
+    }
+
+    /**
+     * Describes compression over some messages, eg. "1200 messages, 96000 bytes to
+     *  12000 (8.0:1), 1.9us each".
+     * @param messages Messages compressed.
+     * @param bytesIn Bytes before compression.
+     * @param bytesOut Bytes after compression.
+     * @param nanos Time spent compressing.
+     * @return One line of text.
+     */
+    public static String describe(long messages, long bytesIn, long bytesOut, long nanos) {
+        return String.format(Locale.ROOT, "%d messages, %d bytes to %d (%.1f:1), %.1fus each",
+                messages, bytesIn, bytesOut, bytesOut == 0 ? 0.0 : (double) bytesIn / bytesOut,
+                messages == 0 ? 0.0 : nanos / 1000.0 / messages);
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the event socket a line at a time, plain at first and decompressed once
+ *  inflate() is called (see EventCompressor).  A BufferedReader would not do: it reads
+ *  ahead past the line where compression starts, and over a decompressing stream it
+ *  waits for more input even when a whole line has already arrived.
+ */
+public class EventStreamReader {
+    private InputStream in;
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    /**
+     * @param in Socket input.
+     */
+    public EventStreamReader(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[8192];
+    }
+
+    /**
+     * Reads one line of UTF-8 text.
+     * @return The line without its line ending, or null at the end of the stream.
+     * @throws IOException if the socket fails or the compressed stream is corrupt.
+     */
+    public String readLine() throws IOException {
+        while(true) {
+            for(int i = this.start; i < this.end; i++) {
+                if(this.buffer[i] == '\n') {
+                    int length = (i > this.start && this.buffer[i - 1] == '\r') ? i - 1 - this.start : i - this.start;
+                    String line = new String(this.buffer, this.start, length, StandardCharsets.UTF_8);
+                    this.start = i + 1;
+                    return line;
+                }
+            }
+            if(this.start > 0) {
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+                this.end -= this.start;
+                this.start = 0;
+            }
+            if(this.end == this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            }
+            // Returns as soon as anything at all has arrived, or been decompressed.
+            int read = this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+            if(read < 0) {
+                return null;
+            }
+            this.end += read;
+        }
+    }
+
+    /**
+     * Decompresses everything after the line last read, including whatever has
+     *  already been read past it.
+     * @param inflater Inflater for the stream.
+     */
+    public void inflate(Inflater inflater) {
+        InputStream early = new ByteArrayInputStream(Arrays.copyOfRange(this.buffer, this.start, this.end));
+        this.in = new InflaterInputStream(new SequenceInputStream(early, this.in), inflater);
+        this.start = 0;
+        this.end = 0;
+    }
+}
@@ -12,7 +12,12 @@ import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,10 +40,27 @@ public class GameClient {
     // Members related to the player in the game.
     protected String playerName;
     
+    // Commands collected in batch mode, null when not batching.
+    private ArrayList<String> batchCommands;
+    
+    // Our copy of the room we stand in, when the server sends room deltas; and a latch
+    //  released once the event socket is set up (and the first copy has arrived).
+    private final RoomModel roomModel = new RoomModel();
+    private final CountDownLatch replyReady = new CountDownLatch(1);
+    
     /** 
-     * Main class for running the game client.
+     * Main class for running the game client over RMI.
      */
     public GameClient(String host) {
+        this(host, false);
+    }
+    
+    /** 
+     * Main class for running the game client.
+     * @param host Server host name.
+     * @param direct true to use the single-socket command protocol instead of RMI.
+     */
+    public GameClient(String host, boolean direct) {
         this.runGame = true;
         boolean nameSat = false;
         
@@ -55,8 +77,11 @@ public class GameClient {
         System.out.println("  LEFT          - Turns your player left 90 degrees.");
         System.out.println("  RIGHT         - Turns your player right 90 degrees.");
         System.out.println("  MOVE distance - Tries to walk forward <distance> times.");
+        System.out.println("  GOTO room     - Walks the shortest way to the room with that name.");
         System.out.println("  PICKUP obect  - Tries to pick up an object in the same area.");
         System.out.println("  INVENTORY     - Shows you what objects you have collected.");
+        System.out.println("  STATS key     - Shows the server statistics, given the administrator key.");
+        System.out.println("  BATCH         - Collects the commands that follow until END, then sends them all at once.");
         System.out.println("  QUIT          - Quits the game.");
         System.out.println();
         
@@ -67,10 +92,26 @@ public class GameClient {
         String keyboardStatement;
 
         try {
-            // Establish RMI connection with the server
-            System.setSecurityManager(new SecurityManager());
-            String strName = "rmi://"+host+"/GameService";
-            remoteGameInterface = (GameObjectInterface) Naming.lookup(strName);
+            if(direct) {
+                // Connect over the single-socket command protocol.  Events not initiated by
+                //  the player arrive on the same connection, so no reply socket is needed.
+                remoteGameInterface = new CommandClient(host, Integer.getInteger("game.command.port", CommandProtocol.DEFAULT_PORT), new Consumer<String>() {
+                    @Override
+                    public void accept(String message) {
+                        if(message == null) {
+                            System.err.println("The remote server has closed its connection!  Shutting down.");
+                            System.exit(-1);
+                        }
+                        System.out.println(message);
+                    }
+                });
+            }
+            else {
+                // Establish RMI connection with the server
+                System.setSecurityManager(new SecurityManager());
+                String strName = "rmi://"+host+"/GameService";
+                remoteGameInterface = (GameObjectInterface) Naming.lookup(strName);
+            }
 
             // Start by remotely executing the joinGame method.  
             //   Lets the player choose a name and checks it with the server.  If the name is
@@ -99,9 +140,21 @@ public class GameClient {
 
             // Player has joined, now start up the remote socket.
             this.runListener = true;
-            remoteOutputThread = new Thread(new GameClient.ReplyRemote(host));
-            remoteOutputThread.setDaemon(true);
-            remoteOutputThread.start();
+            if(direct) {
+                // Events already share the command connection; just take a first look around.
+                System.out.println(remoteGameInterface.look(this.playerName));
+            }
+            else {
+                remoteOutputThread = new Thread(new GameClient.ReplyRemote(host));
+                remoteOutputThread.setDaemon(true);
+                remoteOutputThread.start();
+                // Commands are only counted against the room copy once it exists.
+                try {
+                    this.replyReady.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
 
             // Collect input for the game.
             while(runGame) {
@@ -121,7 +174,11 @@ public class GameClient {
             System.err.println("[CRITICAL ERROR] There was a severe error with the RMI mechanism.");
             System.err.println("[CRITICAL ERROR] Code: " + re);
             System.exit(-1);
-        }        
+        } catch (IOException ex) {
+            System.err.println("[FAILURE] The connection has been refused.");
+            System.err.println("          As this communication is critical, terminating the process.");
+            System.exit(-1);
+        }
     }
     
     /** 
@@ -131,6 +188,17 @@ public class GameClient {
     private void parseInput(String input) {
         boolean reply;
         
+        // In batch mode, lines are only collected until END sends them in one call.
+        if(this.batchCommands != null) {
+            if(input.trim().equalsIgnoreCase("END")) {
+                sendBatch();
+            }
+            else if(input.trim().isEmpty() == false) {
+                this.batchCommands.add(input.trim());
+            }
+            return;
+        }
+        
         // First, tokenize the raw input.
         StringTokenizer commandTokens = new StringTokenizer(input);
         ArrayList<String> tokens = new ArrayList<>();
@@ -149,12 +217,20 @@ public class GameClient {
             switch(tokens.remove(0).toUpperCase()) {
 
                 case "LOOK":
-                    System.out.println(remoteGameInterface.look(this.playerName));
+                    // Answered from our own copy of the room when it is up to date.
+                    String view = this.roomModel.look();
+                    if(view == null) {
+                        this.roomModel.expectFence();
+                        view = remoteGameInterface.look(this.playerName);
+                    }
+                    System.out.println(view);
                     break;
                 case "LEFT":
+                    this.roomModel.expectFence();
                     System.out.println(remoteGameInterface.left(this.playerName));
                     break;
                 case "RIGHT":
+                    this.roomModel.expectFence();
                     System.out.println(remoteGameInterface.right(this.playerName));
                     break;
                 case "SAY":
@@ -176,7 +252,18 @@ public class GameClient {
                         System.err.println("You need to provide a distance in order to move.");
                     }
                     else {
-                        System.out.println(remoteGameInterface.move(this.playerName, Integer.parseInt(tokens.remove(0))));
+                        int distance = Integer.parseInt(tokens.remove(0));
+                        this.roomModel.expectFence();
+                        System.out.println(remoteGameInterface.move(this.playerName, distance));
+                    }
+                    break;
+                case "GOTO":
+                    if(tokens.isEmpty()) {
+                        System.err.println("You need to say where you want to go.");
+                    }
+                    else {
+                        this.roomModel.expectFence();
+                        System.out.println(remoteGameInterface.goTo(this.playerName, String.join(" ", tokens)));
                     }
                     break;
                 case "PICKUP":
@@ -190,24 +277,60 @@ public class GameClient {
                 case "INVENTORY":
                     System.out.println(remoteGameInterface.inventory(this.playerName));
                     break;                                                            
+                case "STATS":
+                    if(tokens.isEmpty()) {
+                        System.err.println("You need to give the administrator key to see the statistics.");
+                    }
+                    else {
+                        System.out.println(remoteGameInterface.stats(this.playerName, tokens.remove(0)));
+                    }
+                    break;
+                case "BATCH":
+                    this.batchCommands = new ArrayList<>();
+                    System.out.println("Collecting commands.  Type END to send them all at once.");
+                    break;
                 case "QUIT":
                     remoteGameInterface.leave(this.playerName);
                     runListener = false;
                     break;
             }
         } catch (RemoteException ex) {
+            this.roomModel.lost();
+            Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Sends the commands collected in batch mode as one request and prints every reply.
+     */
+    private void sendBatch() {
+        String[] commands = this.batchCommands.toArray(new String[this.batchCommands.size()]);
+        this.batchCommands = null;
+        if(commands.length == 0) {
+            System.out.println("The batch had no commands.");
+            return;
+        }
+        try {
+            // The whole batch answers with one fence.
+            this.roomModel.expectFence();
+            for(String reply : remoteGameInterface.batch(this.playerName, commands)) {
+                System.out.println(reply);
+            }
+        } catch (RemoteException ex) {
+            this.roomModel.lost();
             Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
     
     public static void main(String[] args) {
 		if(args.length < 1) {
-			System.out.println("[SHUTDOWN] .. This program requires one argument. Run as java -Djava.security.policy=game.policy GameClient hostname");
+			System.out.println("[SHUTDOWN] .. This program requires one argument. Run as java -Djava.security.policy=game.policy GameClient hostname [direct]");
 			System.exit(-1);
 		}
 		
         System.out.println("[STARTUP] Game Client Now Starting...");
-        new GameClient(args[0]);
+        // The optional second argument selects the single-socket protocol instead of RMI.
+        new GameClient(args[0], args.length > 1 && args[1].equalsIgnoreCase("direct"));
     }
 
     /**
@@ -232,14 +355,27 @@ public class GameClient {
                 // Get stream reader and writer. 
                 //  Writer is only used once, to register this socket with a player.
                 //  Otherwise, this is read only to receive non-locally generated event notifications.
-                BufferedReader remoteReader = new BufferedReader(new InputStreamReader(remoteMessageSocket.getInputStream()));
+                EventStreamReader remoteReader = new EventStreamReader(remoteMessageSocket.getInputStream());
                 PrintWriter remoteWriter = new PrintWriter(remoteMessageSocket.getOutputStream(), true);
                 
-                // Register the socket with the player.
+                // Register the socket with the player, and take up what the server offers:
+                //  compression (unless game.eventcompression is false) and room deltas.
                 remoteWriter.println(GameClient.this.playerName);
-                remoteReader.readLine();
+                String ack = remoteReader.readLine();
+                List<String> offered = ack == null ? Collections.<String>emptyList() : Arrays.asList(ack.split("\t"));
+                if(offered.contains(EventCompressor.CAPABILITY)
+                        && Boolean.parseBoolean(System.getProperty("game.eventcompression", "true"))) {
+                    remoteWriter.println(EventCompressor.CAPABILITY);
+                }
+                if(offered.contains(RoomDelta.CAPABILITY)) {
+                    remoteWriter.println(RoomDelta.CAPABILITY);
+                }
+                else {
+                    replyReady.countDown();
+                }
 
-                // As long as this program is running, print all messages directly to output.
+                // As long as this program is running, print all messages directly to output,
+                //  except room deltas, which go into our copy of the room.
                 String message;
                 while(runListener == true) {
                     message = remoteReader.readLine();
@@ -247,16 +383,30 @@ public class GameClient {
                         System.err.println("The remote server has closed its connection!  Shutting down.");
                         System.exit(-1);
                     }
-                    System.out.println(message);
+                    if(message.equals(EventCompressor.START)) {
+                        remoteReader.inflate(EventCompressor.inflater());
+                    }
+                    else if(RoomDelta.isDelta(message)) {
+                        String view = roomModel.apply(message);
+                        if(view != null) {
+                            System.out.println(view);
+                        }
+                        replyReady.countDown();
+                    }
+                    else {
+                        System.out.println(message);
+                    }
                 }                
             
                 // Close the socket
                 remoteMessageSocket.close();
             } catch(ConnectException ex) {
+                replyReady.countDown();
                 System.err.println("[FAILURE] The connection has been refused.");
                 System.err.println("          As this communication is critical, terminating the process.");
                 System.exit(-1);
             } catch (IOException ex) {
+                replyReady.countDown();
                 Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
             }            
         }
@@ -1,17 +1,49 @@
 
 
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
  * @author Kevin
  */
 public class GameCore implements GameCoreInterface {
+    // Longest list of rooms passed through that a walk summary spells out.
+    private static final int MAX_PATH_ENTRIES = 8;
+    
     private final PlayerList playerList;
     private final Map map;
+    private final Router router;
+    private final WorldPartitions partitions;
+    private final OccupancyIndex occupancy;
+    // Players whose clients keep their own copy of the room from room deltas.
+    private final AtomicInteger roomDeltaClients;
+    private final WorldScheduler scheduler;
+    private final ProfileStore profiles;
+    private final WorldJournal journal;
+    private final GameMetrics metrics;
+    // Key that unlocks STATS, or null if the statistics are only served over JMX.
+    private final byte[] adminKey;
+    
+    // Threads that drain each player's outbound message queue, and how those queues behave.
+    private final ExecutorService replyWriters;
+    private final int outboundDepth;
+    private final SlowConsumerPolicy slowConsumerPolicy;
     
     /**
      * Creates a new GameCoreObject.  Namely, creates the map for the rooms in the game,
@@ -24,32 +56,110 @@ public class GameCore implements GameCoreInterface {
         // Generate the game map.
         map = new Map();
         
+        // Shortest routes between rooms, for GOTO.
+        long routesStart = System.nanoTime();
+        router = new Router(map);
+        System.err.println("[STARTUP] .. " + router.report() + ", built in "
+                + ((System.nanoTime() - routesStart) / 1000000) + " ms");
+        
+        // Optionally split the world by room across single-threaded partitions.
+        int partitionCount = Integer.getInteger("game.partitions", 0);
+        partitions = partitionCount > 0 ? new WorldPartitions(map, partitionCount) : null;
+        if(partitions != null) {
+            System.err.println("[STARTUP] .. Running commands on " + partitions.size() + " room partitions");
+        }
+        
         playerList = new PlayerList();
         
-        Thread objectThread = new Thread(new Runnable() {
+        occupancy = new OccupancyIndex();
+        
+        // Clients that asked for room deltas hear who comes and goes.
+        roomDeltaClients = new AtomicInteger();
+        occupancy.setListener(new OccupancyIndex.Listener() {
             @Override
-            public void run() {
-                Random rand = new Random();
-                Room room;
-                String object;
-                String[] objects = {"Flower", "Textbook", "Phone", "Newspaper"};
-                while(true) {
-                    try {
-                        Thread.sleep(rand.nextInt(60000));
-                        object = objects[rand.nextInt(objects.length)];
-                        room = map.randomRoom();
-                        room.addObject(object);
-                        
-                        GameCore.this.broadcast(room, "You see a student rush past and drop a " + object + " on the ground.");
-
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(GameObject.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
+            public void entered(Player player, int roomId, int version) {
+                GameCore.this.sendRoomDelta(roomId, player, RoomDelta.ENTERED, version, player.getName());
+            }
+            
+            @Override
+            public void left(Player player, int roomId, int version) {
+                GameCore.this.sendRoomDelta(roomId, player, RoomDelta.LEFT, version, player.getName());
             }
         });
-        objectThread.setDaemon(true);
-        objectThread.start();
+        
+        // Timed world events (spawns, respawns, timeouts) all run on one scheduler.
+        scheduler = new WorldScheduler();
+        
+        // Player profiles are kept across sessions only if game.profiles names a directory.
+        String profileDirectory = System.getProperty("game.profiles");
+        ProfileStore store = null;
+        if(profileDirectory != null) {
+            try {
+                store = new ProfileStore(new File(profileDirectory));
+                System.err.println("[STARTUP] .. " + store.report());
+            } catch (IOException ex) {
+                GameLog.error("Could not open the player profiles in " + profileDirectory + "; profiles will not be kept", ex);
+            }
+        }
+        profiles = store;
+        
+        // Changes to the world are journaled only if game.journal names a directory.
+        String journalDirectory = System.getProperty("game.journal");
+        WorldJournal opened = null;
+        if(journalDirectory != null) {
+            try {
+                opened = new WorldJournal(new File(journalDirectory));
+                int restored = opened.restoreRooms(map);
+                System.err.println("[STARTUP] .. " + opened.report() + ", " + restored + " objects put back");
+            } catch (IOException ex) {
+                GameLog.error("Could not open the world journal in " + journalDirectory + "; changes will not be journaled", ex);
+            }
+        }
+        journal = opened;
+        
+        metrics = new GameMetrics(playerList, scheduler, router, partitions, profiles, journal);
+        
+        // Joining proves nothing about who a player is, so STATS asks for the key set in
+        //  game.admin.key.  Without one the statistics are only served over JMX.
+        String key = System.getProperty("game.admin.key", "");
+        adminKey = key.isEmpty() ? null : key.getBytes(StandardCharsets.UTF_8);
+        
+        // Asynchronous messages are written out by a few dedicated threads, so a client
+        //  that stops reading never stalls the thread running someone else's command.
+        outboundDepth = Integer.getInteger("game.outbound.depth", 256);
+        slowConsumerPolicy = SlowConsumerPolicy.fromProperty("game.outbound.policy", SlowConsumerPolicy.COALESCE);
+        replyWriters = Executors.newFixedThreadPool(Integer.getInteger("game.outbound.writers", 2), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread writer = new Thread(task, "reply-writer");
+                writer.setDaemon(true);
+                return writer;
+            }
+        });
+        
+        // The object spawner is the first world event: every so often, up to a minute
+        //  apart, a student drops something in a random room.  Setting game.spawner to
+        //  false leaves it out, so that only what players do changes the world.
+        if(Boolean.parseBoolean(System.getProperty("game.spawner", "true"))) {
+            final Random rand = new Random();
+            scheduler.schedule(new Runnable() {
+                private final int[] objects = {ItemCatalog.id("Flower"), ItemCatalog.id("Textbook"),
+                        ItemCatalog.id("Phone"), ItemCatalog.id("Newspaper")};
+                
+                @Override
+                public void run() {
+                    final int object = this.objects[rand.nextInt(this.objects.length)];
+                    final Room room = map.randomRoom();
+                    GameCore.this.inRoom(room.getId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            GameCore.this.drop(room, object);
+                        }
+                    });
+                    GameCore.this.scheduler.schedule(this, rand.nextInt(60000), TimeUnit.MILLISECONDS);
+                }
+            }, rand.nextInt(60000), TimeUnit.MILLISECONDS);
+        }
     }
     
     /**
@@ -59,11 +169,16 @@ public class GameCore implements GameCoreInterface {
      */   
     @Override
     public void broadcast(Player player, String message) {
-        for(Player otherPlayer : this.playerList) {
-            if(otherPlayer != player && otherPlayer.getCurrentRoom() == player.getCurrentRoom()) {
-                otherPlayer.getReplyWriter().println(message);
+        // Encoded once, however many are listening.
+        OutboundMessage shared = new OutboundMessage(RoomDelta.plain(message));
+        int recipients = 0;
+        for(Player otherPlayer : this.occupancy.getOccupants(player.getCurrentRoom())) {
+            if(otherPlayer != player) {
+                otherPlayer.sendMessage(shared);
+                recipients++;
             }
         }
+        this.metrics.recordFanOut(recipients);
     }
   
     /**
@@ -73,13 +188,132 @@ public class GameCore implements GameCoreInterface {
      */   
     @Override
     public void broadcast(Room room, String message) {
-        for(Player player : this.playerList) {
-            if(player.getCurrentRoom() == room.getId()) {
-                player.getReplyWriter().println(message);
+        OutboundMessage shared = new OutboundMessage(RoomDelta.plain(message));
+        int recipients = 0;
+        for(Player player : this.occupancy.getOccupants(room.getId())) {
+            player.sendMessage(shared);
+            recipients++;
+        }
+        this.metrics.recordFanOut(recipients);
+    }
+    
+    /**
+     * Sends a player the LOOK of their area through their outbound queue, like any
+     *  other event.  With room partitions the LOOK is queued to the partition that owns
+     *  the room, so the caller (a selector thread serving many sockets) never waits on
+     *  a busy partition.
+     * @param name Name of the player.
+     */
+    public void sendLook(final String name) {
+        final Player player = this.playerList.findPlayer(name);
+        if(player == null) {
+            return;
+        }
+        Runnable look = new Runnable() {
+            @Override
+            public void run() {
+                // Handed over to another partition since this was queued: follow them.
+                if(GameCore.this.partitions != null && GameCore.this.partitions.owns(player.getCurrentRoom()) == false) {
+                    GameCore.this.partitions.execute(player.getCurrentRoom(), this);
+                    return;
+                }
+                String view = GameCore.this.look(name);
+                if(view != null) {
+                    player.sendMessage(view);
+                }
+            }
+        };
+        if(this.partitions != null) {
+            synchronized(player) {
+                this.partitions.execute(player.getCurrentRoom(), look);
+            }
+        }
+        else {
+            look.run();
+        }
+    }
+    
+    /**
+     * Runs a player's command where it belongs.  With room partitions it runs on the
+     *  partition that owns the player's room, and the caller waits for it; otherwise
+     *  it runs straight away on the calling thread.
+     * @param name Name of the player issuing the command.
+     * @param command The command.
+     * @return What the command returned.
+     */
+    public String dispatch(String name, Callable<String> command) {
+        Player player = this.partitions == null ? null : this.playerList.findPlayer(name);
+        if(player != null) {
+            return this.inPlayersRoom(player, command);
+        }
+        try {
+            return command.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * Runs work on the partition that owns a player's room and waits for it; straight
+     *  away when the world is not partitioned.  Work is queued under the player's lock,
+     *  as a hand-off is, so work that sees the room the player walked into queues up
+     *  behind their arrival.  Work queued before a walk that runs ahead of it finds the
+     *  player gone to another partition when its turn comes, and follows them there.
+     * @param player Player the work is for.
+     * @param work Work to run.
+     * @return What the work returned.
+     */
+    private <T> T inPlayersRoom(final Player player, final Callable<T> work) {
+        if(this.partitions == null) {
+            try {
+                return work.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        final boolean[] moved = new boolean[1];
+        Callable<T> owned = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                moved[0] = GameCore.this.partitions.owns(player.getCurrentRoom()) == false;
+                return moved[0] ? null : work.call();
+            }
+        };
+        while(true) {
+            int room;
+            FutureTask<T> queued = null;
+            synchronized(player) {
+                room = player.getCurrentRoom();
+                if(this.partitions.owns(room) == false) {
+                    queued = this.partitions.submit(room, owned);
+                }
+            }
+            T result = queued != null ? this.partitions.await(room, queued) : this.partitions.call(room, owned);
+            if(moved[0] == false) {
+                return result;
             }
         }
     }
     
+    /**
+     * Runs work on a room: queued to the partition owning the room when the world is
+     *  partitioned, otherwise straight away.
+     * @param roomId Id of the room the work is about.
+     * @param task Work to run.
+     */
+    private void inRoom(int roomId, Runnable task) {
+        if(this.partitions != null && this.partitions.owns(roomId) == false) {
+            this.partitions.execute(roomId, task);
+        }
+        else {
+            task.run();
+        }
+    }
+    
     /**
      * Returns the player with the given name or null if no such player.
      * @param name Name of the player to find.
@@ -87,12 +321,32 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public Player findPlayer(String name) {
-        for(Player player : this.playerList) {
-            if(player.getName().equalsIgnoreCase(name)) {
-                return player;
-            }
+        return this.playerList.findPlayer(name);
+    }
+    
+    /**
+     * Links an asynchronous event message connection to a player.  Messages to the player
+     *  are queued and written out by the reply writer threads.
+     * @param name Player to link the reply connection with.
+     * @param writer PrintWriter to use for asynchronous messages.
+     * @param transport Non-blocking connection writer under the writer, or null if there is none.
+     * @return true if player is found, false otherwise.
+     */
+    public boolean setReplyWriter(final String name, PrintWriter writer, ChannelWriter transport) {
+        final Player player = this.playerList.findPlayer(name);
+        if(player == null || writer == null) {
+            return false;
         }
-        return null;
+        player.setReplyWriter(writer);
+        player.setReplyQueue(new OutboundQueue(writer, transport, this.replyWriters, this.outboundDepth, this.slowConsumerPolicy, new Runnable() {
+            @Override
+            public void run() {
+                // The client stopped reading and has been cut off; take them out of the world.
+                GameLog.event(LogLevel.WARN, "Disconnected a client that fell too far behind", name, GameLog.NO_ROOM, null);
+                GameCore.this.leave(player);
+            }
+        }));
+        return true;
     }
     
     /**
@@ -105,22 +359,69 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public Player joinGame(String name) {
-        // Check to see if the player of that name is already in game.
-        Player newPlayer;
-        if(this.playerList.findPlayer(name) == null) {
-            // New player, add them to the list and return true.
-            newPlayer = new Player(name);
-            this.playerList.addPlayer(newPlayer);
-            
-            // New player starts in a room.  Send a message to everyone else in that room,
-            //  that the player has arrived.
-            this.broadcast(newPlayer, newPlayer.getName() + " has arrived.");
-            return newPlayer;
+        long start = System.nanoTime();
+        try {
+            // A name goes out in every message about its player; one holding line breaks
+            //  or other control characters could pass for something the server sent.
+            if(isValidName(name) == false) {
+                return null;
+            }
+            // Add the player unless someone of that name is already in game.  The check
+            //  and the insert are a single atomic step, so two racing joins cannot both win.
+            Player newPlayer = new Player(name);
+            // A player cut off by a crash resumes from the journal, which is the more
+            //  recent; anyone else from their stored profile.
+            if(this.journal != null && this.journal.resume(newPlayer)) {
+                // As with a profile, a room no longer on the map leaves them in the starting room.
+                if(this.map.peekRoom(newPlayer.getCurrentRoom()) == null) {
+                    newPlayer.setCurrentRoom(1);
+                }
+            }
+            else {
+                this.restoreProfile(newPlayer);
+            }
+            if(this.playerList.addPlayer(newPlayer)) {
+                if(this.journal != null) {
+                    this.journal.join(newPlayer);
+                }
+                final Player joined = newPlayer;
+                this.inPlayersRoom(joined, new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        GameCore.this.occupancy.add(joined);
+                        GameLog.event(LogLevel.INFO, "Joined the game", joined.getName(), joined.getCurrentRoom(), "JOIN");
+                        
+                        // New player starts in a room.  Send a message to everyone else in that room,
+                        //  that the player has arrived.
+                        GameCore.this.broadcast(joined, joined.getName() + " has arrived.");
+                        return null;
+                    }
+                });
+                return newPlayer;
+            }
+            // A player of that name already exists.
+            return null;
+        } finally {
+            this.metrics.record(GameMetrics.Command.JOIN, start);
         }
-        // A player of that name already exists.
-        return null;
     }
    
+    /**
+     * @param name Name a player asked to join under.
+     * @return true if it holds no control characters.
+     */
+    private static boolean isValidName(String name) {
+        if(name == null) {
+            return false;
+        }
+        for(int i = 0; i < name.length(); i++) {
+            if(Character.isISOControl(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Returns a look at the area of the specified player.
      * @param playerName Player Name
@@ -128,21 +429,32 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public String look(String playerName) {
-        Player player = playerList.findPlayer(playerName);
+        long start = System.nanoTime();
+        try {
+            Player player = playerList.findPlayer(playerName);
 
-        if(player != null) {        
-            // Find the room the player is in.
-            Room room = this.map.findRoom(player.getCurrentRoom());
+            if(player != null) {        
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "LOOK");
+                // Find the room the player is in.
+                Room room = this.map.findRoom(player.getCurrentRoom());
 
-            // Send a message to all other players in the room that this player is looking around.
-            this.broadcast(player, player.getName() + " takes a look around.");
+                // Send a message to all other players in the room that this player is looking around.
+                this.broadcast(player, player.getName() + " takes a look around.");
 
-            // Return a string representation of the room state.
-            return room.toString(this.playerList, player);
-        }
-        // No such player exists
-        else {
-            return null;
+                // Return a string representation of the room state.  A client keeping its
+                //  own copy only asks when the copy is out of date, so it gets a fresh one.
+                String view = room.toString(this.occupancy.getOccupants(room.getId()), player);
+                if(player.isBatching() == false) {
+                    this.showRoom(player, room, RoomDelta.FENCE);
+                }
+                return view;
+            }
+            // No such player exists
+            else {
+                return null;
+            }
+        } finally {
+            this.metrics.record(GameMetrics.Command.LOOK, start);
         }
     }        
    
@@ -153,19 +465,31 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public String left(String name) {
-        Player player = this.playerList.findPlayer(name);
-        if(player != null) {
-            // Compel the player to turn left 90 degrees.
-            player.turnLeft();
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player != null) {
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "LEFT");
+                // Compel the player to turn left 90 degrees.
+                player.turnLeft();
+                this.saveProfile(player);
+                if(this.journal != null) {
+                    this.journal.turn(player);
+                }
             
-            // Send a message to every other player in the room that the player has turned left.
-            this.broadcast(player, player.getName() + " turns to the left.");
+                this.confirm(player);
             
-            // Return a string back to the calling function with an update.
-            return "You turn to the left to face " + player.getCurrentDirection();
-        }
-        else {
-            return null;
+                // Send a message to every other player in the room that the player has turned left.
+                this.broadcast(player, player.getName() + " turns to the left.");
+            
+                // Return a string back to the calling function with an update.
+                return "You turn to the left to face " + player.getCurrentDirection();
+            }
+            else {
+                return null;
+            }
+        } finally {
+            this.metrics.record(GameMetrics.Command.LEFT, start);
         }
     }
     
@@ -176,19 +500,31 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public String right(String name) {
-        Player player = this.playerList.findPlayer(name);
-        if(player != null) {
-            // Compel the player to turn left 90 degrees.
-            player.turnRight();
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player != null) {
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "RIGHT");
+                // Compel the player to turn left 90 degrees.
+                player.turnRight();
+                this.saveProfile(player);
+                if(this.journal != null) {
+                    this.journal.turn(player);
+                }
             
-            // Send a message to every other player in the room that the player has turned right.
-            this.broadcast(player, player.getName() + " turns to the right.");
+                this.confirm(player);
             
-            // Return a string back to the calling function with an update.
-            return "You turn to the right to face " + player.getCurrentDirection();
-        }
-        else {
-            return null;
+                // Send a message to every other player in the room that the player has turned right.
+                this.broadcast(player, player.getName() + " turns to the right.");
+            
+                // Return a string back to the calling function with an update.
+                return "You turn to the right to face " + player.getCurrentDirection();
+            }
+            else {
+                return null;
+            }
+        } finally {
+            this.metrics.record(GameMetrics.Command.RIGHT, start);
         }
     }    
     
@@ -200,44 +536,81 @@ public class GameCore implements GameCoreInterface {
      */
     @Override
     public String say(String name, String message) {
-        Player player = this.playerList.findPlayer(name);
-        if(player != null) {
-            this.broadcast(player, player.getName() + " says, \"" + message + "\"");
-            return "You say, \"" + message + "\"";
-        }
-        else {
-            return null;
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player != null) {
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "SAY");
+                this.broadcast(player, player.getName() + " says, \"" + message + "\"");
+                return "You say, \"" + message + "\"";
+            }
+            else {
+                return null;
+            }
+        } finally {
+            this.metrics.record(GameMetrics.Command.SAY, start);
         }
     }  
     
     /**
      * Attempts to walk forward < distance > times.  If unable to make it all the way,
      *  a message will be returned.  Will display LOOK on any partial success.
+     *
+     * The whole path is worked out against the map before the player goes anywhere,
+     *  then the player is moved once (see travel).
      * @param name Name of the player to move
      * @param distance Number of rooms to move forward through.
-     * @return Message showing success.
+     * @return Message showing success, or why the player did not move; null if no
+     *  such player.
      */
     public String move(String name, int distance) {
-        Player player = this.playerList.findPlayer(name);
-        if(player == null || distance <= 0) {
-            return null;
-        }
-        Room room;
-        while(distance-- != 0) {
-            room = map.findRoom(player.getCurrentRoom());
-            if(room.canExit(player.getDirection())) {
-                this.broadcast(player, player.getName() + " has walked off to the " + player.getCurrentDirection());
-                player.getReplyWriter().println(room.exitMessage(player.getDirection()));
-                player.setCurrentRoom(room.getLink(player.getDirection()));
-                this.broadcast(player, player.getName() + " just walked into the area.");
-                player.getReplyWriter().println(this.map.findRoom(player.getCurrentRoom()).toString(playerList, player));
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player == null) {
+                return null;
             }
-            else {
-                player.getReplyWriter().println(room.exitMessage(player.getDirection()));
+            if(distance <= 0) {
+                this.confirm(player);
+                return "The distance to move must be at least 1.";
+            }
+            GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "MOVE");
+            Direction direction = player.getDirection();
+            Room from = this.map.findRoom(player.getCurrentRoom());
+
+            // Resolve the path.  The map does not change once loaded, so nothing can
+            //  block it between here and the move below.
+            ArrayList<Room> path = new ArrayList<>(Math.min(distance, 64));
+            Room room = from;
+            while(path.size() < distance && room.canExit(direction)) {
+                room = this.map.findRoom(room.getLink(direction));
+                path.add(room);
+            }
+            boolean blocked = path.size() < distance;
+            if(path.isEmpty()) {
+                player.sendMessage(exitMessage(from, direction));
+                this.confirm(player);
                 return "You grumble a little and stop moving.";
             }
+
+            Direction[] directions = new Direction[path.size()];
+            Arrays.fill(directions, direction);
+            this.travel(player, from, path, directions, blocked ? exitMessage(room, direction) : null);
+            return blocked ? "You grumble a little and stop moving." : "You stop moving and begin to stand around again.";
+        } finally {
+            this.metrics.record(GameMetrics.Command.MOVE, start);
         }
-        return "You stop moving and begin to stand around again.";
+    }
+    
+    /**
+     * @param room Room being left.
+     * @param direction Direction of the exit.
+     * @return What the player is told taking (or trying to take) the exit.  Maps
+     *  may leave out exits that go nowhere, and those get a plain refusal.
+     */
+    private static String exitMessage(Room room, Direction direction) {
+        String message = room.exitMessage(direction);
+        return message != null ? message : "You cannot go " + direction.name() + " from here.";
     }
     
     /**
@@ -247,22 +620,40 @@ public class GameCore implements GameCoreInterface {
      * @return Message showing success. 
      */    
     public String pickup(String name, String target) {
-        Player player = this.playerList.findPlayer(name);
-        if(player != null) {
-            Room room = map.findRoom(player.getCurrentRoom());
-            String object = room.removeObject(target);
-            if(object != null) {
-                player.addObjectToInventory(object);
-                this.broadcast(player, player.getName() + " bends over to pick up a " + target + " that was on the ground.");
-                return "You bend over and pick up a " + target + ".";
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player != null) {
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "PICKUP");
+                Room room = map.findRoom(player.getCurrentRoom());
+                int item;
+                // Journaled under the room's lock, so the journal sees takes and drops
+                //  in a room in the order they happened.
+                synchronized(room) {
+                    item = room.takeObject(target);
+                    if(item >= 0) {
+                        player.addObjectToInventory(item);
+                        if(this.journal != null) {
+                            this.journal.take(player, room.getId(), ItemCatalog.name(item));
+                        }
+                        this.sendRoomDelta(room.getId(), null, RoomDelta.TAKEN, room.getObjectsVersion(), ItemCatalog.name(item));
+                    }
+                }
+                if(item >= 0) {
+                    this.saveProfile(player);
+                    this.broadcast(player, player.getName() + " bends over to pick up a " + target + " that was on the ground.");
+                    return "You bend over and pick up a " + target + ".";
+                }
+                else {
+                    this.broadcast(player, player.getName() + " bends over to pick up something, but doesn't seem to find what they were looking for.");
+                    return "You look around for a " + target + ", but can't find one.";
+                }
             }
             else {
-                this.broadcast(player, player.getName() + " bends over to pick up something, but doesn't seem to find what they were looking for.");
-                return "You look around for a " + target + ", but can't find one.";
+                return null;
             }
-        }
-        else {
-            return null;
+        } finally {
+            this.metrics.record(GameMetrics.Command.PICKUP, start);
         }
     }       
     
@@ -273,13 +664,19 @@ public class GameCore implements GameCoreInterface {
      */    
     @Override
     public String inventory(String name) {
-        Player player = this.playerList.findPlayer(name);
-        if(player != null) {
-            this.broadcast(player, "You see " + player.getName() + " looking through their pockets.");
-            return "You look through your pockets and see" + player.viewInventory();
-        }
-        else {
-            return null;
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player != null) {
+                GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "INVENTORY");
+                this.broadcast(player, "You see " + player.getName() + " looking through their pockets.");
+                return "You look through your pockets and see" + player.viewInventory();
+            }
+            else {
+                return null;
+            }
+        } finally {
+            this.metrics.record(GameMetrics.Command.INVENTORY, start);
         }
     }    
 
@@ -290,12 +687,473 @@ public class GameCore implements GameCoreInterface {
      */    
     @Override
     public Player leave(String name) {
-        Player player = this.playerList.findPlayer(name);
+        long start = System.nanoTime();
+        try {
+            return this.left(this.playerList.removePlayer(name));
+        } finally {
+            this.metrics.record(GameMetrics.Command.LEAVE, start);
+        }
+    }
+
+    /**
+     * Leaves the game, if the player is still the one online under their name.  Used
+     *  by connections, which may close after their player has been replaced by a
+     *  new one of the same name.
+     * @param player Player to leave, as returned by joinGame.
+     * @return The player, or null if they had already left.
+     */
+    @Override
+    public Player leave(Player player) {
+        long start = System.nanoTime();
+        try {
+            return this.left(this.playerList.removePlayer(player) ? player : null);
+        } finally {
+            this.metrics.record(GameMetrics.Command.LEAVE, start);
+        }
+    }
+
+    /**
+     * Takes a player who has just been removed from the player list out of the world.
+     * @param player Player removed, or null if nobody was.
+     * @return The player.
+     */
+    private Player left(final Player player) {
         if(player != null) {
-            this.broadcast(player, "You see " + player.getName() + " heading off to class.");
-            this.playerList.removePlayer(name);
-            return player;
+            this.inPlayersRoom(player, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    GameLog.event(LogLevel.INFO, "Left the game", player.getName(), player.getCurrentRoom(), "QUIT");
+                    GameCore.this.broadcast(player, "You see " + player.getName() + " heading off to class.");
+                    synchronized(player) {
+                        GameCore.this.occupancy.remove(player);
+                    }
+                    return null;
+                }
+            });
+            if(player.wantsRoomDeltas()) {
+                this.roomDeltaClients.decrementAndGet();
+            }
+            this.saveProfile(player);
+            if(this.journal != null) {
+                this.journal.leave(player);
+            }
         }
-        return null;
+        return player;
     }       
+    
+    /**
+     * Returns the server statistics to a player who gives the administrator key, the
+     *  game.admin.key system property.  If no key is set nobody is given them here;
+     *  they are still served over JMX.
+     * @param name Name of the player asking.
+     * @param key Key the player gave.
+     * @return Statistics report, a refusal, or null if no such player.
+     */
+    public String stats(String name, String key) {
+        Player player = this.playerList.findPlayer(name);
+        if(player == null) {
+            return null;
+        }
+        // Compared in constant time, so the key cannot be guessed a character at a time.
+        if(this.adminKey == null || key == null
+                || MessageDigest.isEqual(this.adminKey, key.getBytes(StandardCharsets.UTF_8)) == false) {
+            return "You do not have permission to view the server statistics.";
+        }
+        return this.metrics.report();
+    }
+    
+    /**
+     * @return The world this game core is played in.
+     */
+    public Map getMap() {
+        return this.map;
+    }
+    
+    /**
+     * @return Scheduler running the timed events of this world.
+     */
+    public WorldScheduler getScheduler() {
+        return this.scheduler;
+    }
+    
+    /**
+     * @return Room partitions running the commands, or null if commands run on the
+     *  threads that receive them.
+     */
+    public WorldPartitions getPartitions() {
+        return this.partitions;
+    }
+    
+    /**
+     * @return Store keeping player profiles between sessions, or null if they are not kept.
+     */
+    public ProfileStore getProfiles() {
+        return this.profiles;
+    }
+    
+    /**
+     * @return Journal of the changes to this world, or null if changes are not journaled.
+     */
+    public WorldJournal getJournal() {
+        return this.journal;
+    }
+    
+    /**
+     * @return Statistics of this game core.
+     */
+    public GameMetrics getMetrics() {
+        return this.metrics;
+    }
+    
+    /**
+     * Walks a player to a room along the shortest way there.  The player arrives
+     *  facing the way they last walked.
+     * @param name Name of the player to move
+     * @param destination Id or title of the room to walk to.
+     * @return Message showing success.
+     */
+    public String goTo(String name, String destination) {
+        long start = System.nanoTime();
+        try {
+            Player player = this.playerList.findPlayer(name);
+            if(player == null) {
+                return null;
+            }
+            GameLog.event(LogLevel.DEBUG, "Command", player.getName(), player.getCurrentRoom(), "GOTO");
+            int target = this.router.resolve(destination);
+            if(target < 0) {
+                this.confirm(player);
+                return "You have never heard of " + destination.trim() + ".";
+            }
+            Direction[] directions = this.router.route(player.getCurrentRoom(), target);
+            if(directions == null) {
+                this.confirm(player);
+                return "You cannot see any way to get there from here.";
+            }
+            if(directions.length == 0) {
+                this.confirm(player);
+                return "You are already there.";
+            }
+            Room from = this.map.findRoom(player.getCurrentRoom());
+            ArrayList<Room> path = new ArrayList<>(directions.length);
+            Room room = from;
+            for(Direction direction : directions) {
+                room = this.map.findRoom(room.getLink(direction));
+                path.add(room);
+            }
+            this.travel(player, from, path, directions, null);
+            return "You stop moving and begin to stand around again.";
+        } finally {
+            this.metrics.record(GameMetrics.Command.GOTO, start);
+        }
+    }
+    
+    /**
+     * Moves a player along a path that is known to be open, in one go.  The room left
+     *  behind hears the departure, the room reached hears the arrival, and rooms along
+     *  the way only hear the player pass through if someone is there to hear it.  The
+     *  player gets the first exit message, a summary of the rooms passed through and a
+     *  single LOOK at the end.
+     * @param player Player walking.
+     * @param from Room the player is leaving.
+     * @param path Rooms entered, in order.
+     * @param directions Direction of each step.
+     * @param stopped Message telling the player why they stopped short, or null.
+     */
+    private void travel(Player player, Room from, List<Room> path, Direction[] directions, String stopped) {
+        Room room = path.get(path.size() - 1);
+        this.broadcast(player, player.getName() + " has walked off to the " + directions[0].name());
+        for(int i = 0; i < path.size() - 1; i++) {
+            this.broadcast(path.get(i), player.getName() + " passes through, heading " + directions[i + 1].name() + ".");
+        }
+        player.setDirection(directions[directions.length - 1]);
+        player.sendMessage(exitMessage(from, directions[0]));
+        if(path.size() > 1) {
+            player.sendMessage(describePath(path, directions));
+        }
+        if(stopped != null) {
+            player.sendMessage(stopped);
+        }
+
+        if(this.partitions == null || this.partitions.owns(room.getId())) {
+            this.setCurrentRoom(player, room.getId());
+            this.saveProfile(player);
+            if(this.journal != null) {
+                this.journal.walk(player);
+            }
+            this.arrive(player, room);
+            return;
+        }
+        // The destination belongs to another partition.  Take the player out of this
+        //  one and hand them over; their next command is routed to the new partition
+        //  and queues up behind the arrival.
+        final Player walker = player;
+        final Room destination = room;
+        Runnable arrival = new Runnable() {
+            @Override
+            public void run() {
+                synchronized(walker) {
+                    // Unless they quit while being handed over.
+                    if(GameCore.this.playerList.findPlayer(walker.getName()) != walker
+                            || walker.getCurrentRoom() != destination.getId()) {
+                        return;
+                    }
+                    GameCore.this.occupancy.add(walker);
+                }
+                // Recorded here, so the walk is in the profile and the journal before
+                //  anything the player does next in this partition.
+                GameCore.this.saveProfile(walker);
+                if(GameCore.this.journal != null) {
+                    GameCore.this.journal.walk(walker);
+                }
+                GameCore.this.arrive(walker, destination);
+            }
+        };
+        // The new room and the hand-off change together under the player's lock, where
+        //  commands read the room to queue on (see inPlayersRoom).
+        synchronized(player) {
+            if(this.occupancy.depart(player, player.getCurrentRoom()) == false) {
+                return;
+            }
+            player.setCurrentRoom(room.getId());
+            this.partitions.handOff(room.getId(), arrival);
+        }
+    }
+    
+    /**
+     * The second half of a walk, in the room reached: tells the room and shows it to
+     *  the player.
+     * @param player Player who walked in.
+     * @param room Room reached.
+     */
+    private void arrive(Player player, Room room) {
+        this.broadcast(player, player.getName() + " just walked into the area.");
+        if(player.wantsRoomDeltas()) {
+            // The client renders the LOOK itself from its new copy of the room.
+            this.showRoom(player, room, player.isBatching() ? RoomDelta.SHOW : RoomDelta.SHOW | RoomDelta.FENCE);
+        }
+        else {
+            player.sendMessage(room.toString(this.occupancy.getOccupants(room.getId()), player));
+        }
+    }
+    
+    /**
+     * Summarises a walk for the player who made it, folding runs of rooms that share
+     *  a title into one entry (eg. "Long Corridor x4") and naming at most
+     *  MAX_PATH_ENTRIES entries before counting the rest.
+     * @param path Rooms entered, in order.
+     * @param directions Direction of each step.
+     * @return One line naming the rooms passed through.
+     */
+    private static String describePath(List<Room> path, Direction[] directions) {
+        StringBuilder summary = new StringBuilder("You walk ").append(path.size()).append(" rooms");
+        boolean straight = true;
+        for(Direction direction : directions) {
+            straight &= direction == directions[0];
+        }
+        if(straight) {
+            summary.append(" to the ").append(directions[0].name());
+        }
+        summary.append(", passing through ");
+        int i = 0;
+        int entries = 0;
+        while(i < path.size() - 1) {
+            if(entries == MAX_PATH_ENTRIES) {
+                summary.append(" and ").append(path.size() - 1 - i).append(" more,");
+                break;
+            }
+            String title = path.get(i).getTitle();
+            int run = 1;
+            while(i + run < path.size() - 1 && path.get(i + run).getTitle().equals(title)) {
+                run++;
+            }
+            if(i > 0) {
+                summary.append(", ");
+            }
+            summary.append(title);
+            if(run > 1) {
+                summary.append(" x").append(run);
+            }
+            i += run;
+            entries++;
+        }
+        return summary.append(" and arrive at ").append(path.get(path.size() - 1).getTitle()).append(".").toString();
+    }
+    
+    /**
+     * Starts sending a player room deltas (see RoomDelta), beginning with the whole
+     *  room they stand in.
+     * @param name Name of the player whose client asked for them.
+     * @return true if the player is found, false otherwise.
+     */
+    public boolean enableRoomDeltas(String name) {
+        Player player = this.playerList.findPlayer(name);
+        if(player == null) {
+            return false;
+        }
+        if(player.wantsRoomDeltas() == false) {
+            player.setRoomDeltas(true);
+            this.roomDeltaClients.incrementAndGet();
+        }
+        this.showRoom(player, this.map.findRoom(player.getCurrentRoom()), 0);
+        return true;
+    }
+    
+    /**
+     * Marks the start of a BATCH.  Until endBatch(), the player's commands do not
+     *  answer with room delta fences.
+     * @param name Name of the player sending the batch.
+     */
+    public void beginBatch(String name) {
+        Player player = this.playerList.findPlayer(name);
+        if(player != null) {
+            player.setBatching(true);
+        }
+    }
+    
+    /**
+     * Marks the end of a BATCH, answering it with a single fence: the whole room as
+     *  it now stands.  Runs where the player's commands run, so it comes after
+     *  anything the batch started.
+     * @param name Name of the player who sent the batch.
+     */
+    public void endBatch(final String name) {
+        this.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                Player player = GameCore.this.playerList.findPlayer(name);
+                if(player != null && player.isBatching()) {
+                    player.setBatching(false);
+                    GameCore.this.showRoom(player, GameCore.this.map.findRoom(player.getCurrentRoom()), RoomDelta.FENCE);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * @return Number of players whose clients take room deltas.
+     */
+    public int getRoomDeltaClients() {
+        return this.roomDeltaClients.get();
+    }
+    
+    /**
+     * Sends a change to a room to everyone there who takes room deltas.  The delta is
+     *  only built if someone does, and then once for all of them.
+     * @param roomId Id of the room.
+     * @param except Player not to tell (the one who came or went), or null.
+     * @param type Type of the change (see RoomDelta).
+     * @param version Version of the room's occupants or objects after the change.
+     * @param value Name of the player or the object.
+     */
+    private void sendRoomDelta(int roomId, Player except, char type, int version, String value) {
+        if(this.roomDeltaClients.get() == 0) {
+            return;
+        }
+        OutboundMessage shared = null;
+        for(Player player : this.occupancy.getOccupants(roomId)) {
+            if(player != except && player.wantsRoomDeltas()) {
+                if(shared == null) {
+                    shared = new OutboundMessage(RoomDelta.change(type, roomId, version, value));
+                }
+                player.sendMessage(shared);
+            }
+        }
+    }
+    
+    /**
+     * Sends a player taking room deltas the whole room they stand in.
+     * @param player Player to send it to.
+     * @param room Room the player stands in.
+     * @param flags RoomDelta.SHOW and/or RoomDelta.FENCE.
+     */
+    private void showRoom(Player player, Room room, int flags) {
+        if(player.wantsRoomDeltas()) {
+            player.sendMessage(new OutboundMessage(RoomDelta.room(flags, room, this.occupancy.getOccupants(room.getId()), player)));
+        }
+    }
+    
+    /**
+     * Answers a player's LEFT, RIGHT, MOVE or GOTO that did not take them anywhere
+     *  with the room delta fence their client waits for.
+     * @param player Player who sent the command.
+     */
+    private void confirm(Player player) {
+        if(player.wantsRoomDeltas() && player.isBatching() == false) {
+            player.sendMessage(new OutboundMessage(RoomDelta.facing(player.getDirection())));
+        }
+    }
+    
+    /**
+     * Drops an object in a room, as the spawner does, and tells everyone there.
+     * @param room Room to drop it in.
+     * @param item Item id of the object.
+     * @return true if it was dropped, false if the room was already full.
+     */
+    public boolean drop(Room room, int item) {
+        String object = ItemCatalog.name(item);
+        boolean dropped;
+        synchronized(room) {
+            dropped = room.addObject(item);
+            if(dropped) {
+                if(this.journal != null) {
+                    this.journal.drop(room.getId(), object);
+                }
+                this.sendRoomDelta(room.getId(), null, RoomDelta.DROPPED, room.getObjectsVersion(), object);
+            }
+        }
+        if(GameLog.isEnabled(LogLevel.DEBUG)) {
+            GameLog.event(LogLevel.DEBUG, "Spawned a " + object, null, room.getId(), null);
+        }
+        
+        this.broadcast(room, "You see a student rush past and drop a " + object + " on the ground.");
+        return dropped;
+    }
+    
+    /**
+     * Puts a joining player back where they were when they last left, facing the same
+     *  way and carrying the same things, if profiles are kept and they have one.  A
+     *  room that is no longer on the map leaves them in the starting room.
+     * @param player Player joining, not yet in the game.
+     */
+    private void restoreProfile(Player player) {
+        if(this.profiles == null) {
+            return;
+        }
+        try {
+            if(this.profiles.restore(player) && this.map.peekRoom(player.getCurrentRoom()) == null) {
+                player.setCurrentRoom(1);
+            }
+        } catch (IOException ex) {
+            GameLog.error("Could not read the profile of " + player.getName(), ex);
+            player.setCurrentRoom(1);
+        }
+    }
+    
+    /**
+     * Asks for a player's profile to be saved.  Returns straight away; the profile
+     *  is written with the store's next group commit.
+     * @param player Player whose room, facing or inventory changed.
+     */
+    private void saveProfile(Player player) {
+        if(this.profiles != null) {
+            this.profiles.save(player);
+        }
+    }
+    
+    /**
+     * Moves a player into another room, keeping the occupancy index in step.  Two
+     *  moves of the same player (eg. from two connections) are done one after the
+     *  other, so the player never ends up listed in two rooms.
+     * @param player Player to relocate.
+     * @param room Id of the room the player is now standing in.
+     */
+    private void setCurrentRoom(Player player, int room) {
+        synchronized(player) {
+            int previousRoom = player.getCurrentRoom();
+            player.setCurrentRoom(room);
+            this.occupancy.move(player, previousRoom, room);
+        }
+    }
 }
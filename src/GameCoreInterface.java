@@ -35,6 +35,7 @@ public interface GameCoreInterface {
      *  to open a socket for message events not initiated by the player (ie. other player actions)
      * @param name
      * @return Player that is added, null if player name is already registered to someone else
+     *  or holds control characters
      */
     public Player joinGame(String name);
     
@@ -80,4 +81,11 @@ public interface GameCoreInterface {
      * @return Player that was just removed.
      */    
     public Player leave(String name);    
+
+    /**
+     * Leaves the game, if the player is still the one online under their name.
+     * @param player Player to leave, as returned by joinGame.
+     * @return The player, or null if they had already left.
+     */
+    public Player leave(Player player);
 }
@@ -0,0 +1,307 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous server log.
+ *
+ * Logging threads only check the level and drop an entry into a lock-free ring
+ *  buffer; the entry is formatted and written by a single background thread, so a
+ *  command thread never waits on the disk or on another thread's log call.  If the
+ *  ring is full the entry is counted and discarded rather than blocking the game.
+ *
+ * Entries carry the player, room and command they concern as separate fields.  Check
+ *  isEnabled() before building an expensive message; when the level is off, a log
+ *  call costs one comparison against a constant.
+ *
+ * Configured with system properties:
+ *  game.log.level   - DEBUG, INFO, WARN, ERROR or OFF (INFO)
+ *  game.log.file    - log file (game-server.log); rotated to .1, .2, ... when full
+ *  game.log.size    - bytes per file before rotating (10 MB)
+ *  game.log.files   - rotated files kept (5)
+ *  game.log.buffer  - ring buffer slots, rounded up to a power of two (8192)
+ * WARN and ERROR entries are copied to stderr as well.
+ */
+public class GameLog {
+    public static final int NO_ROOM = Integer.MIN_VALUE;
+
+    private static final int THRESHOLD = LogLevel.fromProperty("game.log.level", LogLevel.INFO).ordinal();
+
+    private static final GameLog LOG = new GameLog(
+            new File(System.getProperty("game.log.file", "game-server.log")),
+            Long.getLong("game.log.size", 10L * 1024 * 1024),
+            Integer.getInteger("game.log.files", 5),
+            Integer.getInteger("game.log.buffer", 8192));
+
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    // Multi-producer, single-consumer ring.  Producers claim a sequence number by CAS on
+    //  tail and then publish their entry into its slot; the drainer empties slots in
+    //  sequence order and advances head.  A null slot has been claimed but not yet published.
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final AtomicLong tail;
+    private volatile long head;
+    private final AtomicLong discarded;
+    // Set while the drainer is parked on an empty ring, so the next entry wakes it.
+    private volatile boolean sleeping;
+
+    private final Thread drainer;
+    private Writer output;
+    private long written;
+
+    /**
+     * One log entry, as handed from a logging thread to the drainer.
+     */
+    private static final class Entry {
+        final long time;
+        final LogLevel level;
+        final String thread;
+        final String message;
+        final String player;
+        final int room;
+        final String command;
+        final Throwable error;
+
+        Entry(LogLevel level, String message, String player, int room, String command, Throwable error) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.thread = Thread.currentThread().getName();
+            this.message = message;
+            this.player = player;
+            this.room = room;
+            this.command = command;
+            this.error = error;
+        }
+    }
+
+    private GameLog(File file, long maxBytes, int maxFiles, int slots) {
+        this.file = file;
+        this.maxBytes = Math.max(4096, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        int capacity = Integer.highestOneBit(Math.max(16, slots) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+        this.discarded = new AtomicLong();
+
+        this.drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                GameLog.this.drain();
+            }
+        }, "log-writer");
+        this.drainer.setDaemon(true);
+        if(THRESHOLD < LogLevel.OFF.ordinal()) {
+            this.drainer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    GameLog.this.flushOnExit();
+                }
+            }, "log-flush"));
+        }
+    }
+
+    /**
+     * @param level Level to check.
+     * @return true if entries of that level are being logged.
+     */
+    public static boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= THRESHOLD;
+    }
+
+    public static void debug(String message) {
+        log(LogLevel.DEBUG, message, null, NO_ROOM, null, null);
+    }
+
+    public static void info(String message) {
+        log(LogLevel.INFO, message, null, NO_ROOM, null, null);
+    }
+
+    public static void warn(String message) {
+        log(LogLevel.WARN, message, null, NO_ROOM, null, null);
+    }
+
+    public static void error(String message, Throwable error) {
+        log(LogLevel.ERROR, message, null, NO_ROOM, null, error);
+    }
+
+    /**
+     * Logs an entry about something a player did.
+     * @param level Level of the entry.
+     * @param message What happened.
+     * @param player Name of the player concerned, or null.
+     * @param room Id of the room concerned, or NO_ROOM.
+     * @param command Command being run, or null.
+     */
+    public static void event(LogLevel level, String message, String player, int room, String command) {
+        log(level, message, player, room, command, null);
+    }
+
+    /**
+     * Logs an entry.  Returns immediately; the entry is written out in the background.
+     * @param level Level of the entry.
+     * @param message What happened.
+     * @param player Name of the player concerned, or null.
+     * @param room Id of the room concerned, or NO_ROOM.
+     * @param command Command being run, or null.
+     * @param error Exception to include with its stack trace, or null.
+     */
+    public static void log(LogLevel level, String message, String player, int room, String command, Throwable error) {
+        if(level.ordinal() < THRESHOLD) {
+            return;
+        }
+        LOG.publish(new Entry(level, message, player, room, command, error));
+    }
+
+    /**
+     * @return Number of entries thrown away because the ring buffer was full.
+     */
+    public static long getDiscarded() {
+        return LOG.discarded.get();
+    }
+
+    private void publish(Entry entry) {
+        long sequence;
+        while(true) {
+            sequence = this.tail.get();
+            if(sequence - this.head > this.mask) {
+                this.discarded.incrementAndGet();
+                return;
+            }
+            if(this.tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        this.ring.set((int) sequence & this.mask, entry);
+        // The slot is published before sleeping is read, and the drainer sets sleeping
+        //  before it looks at the slot again, so one of the two always sees the other.
+        if(this.sleeping) {
+            LockSupport.unpark(this.drainer);
+        }
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long reportedDiscards = 0;
+        while(true) {
+            int batch = 0;
+            Entry entry;
+            while((entry = this.ring.get((int) this.head & this.mask)) != null) {
+                this.ring.set((int) this.head & this.mask, null);
+                this.head++;
+                this.write(entry, line);
+                batch++;
+            }
+            long discards = this.discarded.get();
+            if(discards != reportedDiscards) {
+                this.write(new Entry(LogLevel.WARN, (discards - reportedDiscards) + " log entries were discarded, the log buffer was full",
+                        null, NO_ROOM, null, null), line);
+                reportedDiscards = discards;
+                batch++;
+            }
+            if(batch == 0) {
+                this.flush();
+                // Nothing to do until the next entry: park until publish wakes us.
+                this.sleeping = true;
+                if(this.ring.get((int) this.head & this.mask) == null && this.discarded.get() == reportedDiscards) {
+                    LockSupport.park(this);
+                }
+                this.sleeping = false;
+            }
+        }
+    }
+
+    private void write(Entry entry, StringBuilder line) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.time)).append(' ');
+        line.append(entry.level.name());
+        for(int pad = entry.level.name().length(); pad < 6; pad++) {
+            line.append(' ');
+        }
+        line.append('[').append(entry.thread).append("] ").append(entry.message);
+        if(entry.player != null) {
+            line.append(" player=").append(entry.player);
+        }
+        if(entry.room != NO_ROOM) {
+            line.append(" room=").append(entry.room);
+        }
+        if(entry.command != null) {
+            line.append(" command=").append(entry.command);
+        }
+        line.append('\n');
+        if(entry.error != null) {
+            StringWriter trace = new StringWriter();
+            entry.error.printStackTrace(new PrintWriter(trace));
+            line.append(trace);
+        }
+
+        if(entry.level.ordinal() >= LogLevel.WARN.ordinal()) {
+            System.err.print(line);
+        }
+        try {
+            if(this.output == null || this.written + line.length() > this.maxBytes) {
+                this.rotate();
+            }
+            this.output.append(line);
+            this.written += line.length();
+        } catch (IOException ex) {
+            // Nowhere left to log to but stderr.
+            if(entry.level.ordinal() < LogLevel.WARN.ordinal()) {
+                System.err.print(line);
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        if(this.output != null) {
+            this.output.close();
+            this.output = null;
+            for(int i = this.maxFiles - 1; i >= 1; i--) {
+                File older = new File(this.file.getPath() + "." + i);
+                if(older.exists()) {
+                    File renamed = new File(this.file.getPath() + "." + (i + 1));
+                    renamed.delete();
+                    older.renameTo(renamed);
+                }
+            }
+            File first = new File(this.file.getPath() + ".1");
+            first.delete();
+            this.file.renameTo(first);
+        }
+        this.written = this.file.length();
+        this.output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void flush() {
+        if(this.output != null) {
+            try {
+                this.output.flush();
+            } catch (IOException ex) {
+                // Reported with the next entry that fails to write.
+            }
+        }
+    }
+
+    private void flushOnExit() {
+        // Give the drainer a moment to catch up with whatever was logged last.
+        long deadline = System.nanoTime() + 500000000L;
+        while(this.head != this.tail.get() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1000000L);
+        }
+        LockSupport.parkNanos(5000000L);
+    }
+}
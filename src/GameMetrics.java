@@ -0,0 +1,221 @@
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live statistics of a game core: latency histograms and counts for every command,
+ *  broadcast fan-out, players online and bytes sent.  Recording a sample is lock-free
+ *  and does not allocate, so it stays on in production.  Exposed over JMX (see
+ *  GameMetricsMBean) and to administrators through the STATS command.
+ */
+public class GameMetrics implements GameMetricsMBean {
+    /**
+     * Commands that are timed.
+     */
+    public enum Command {
+        JOIN, LOOK, LEFT, RIGHT, SAY, MOVE, GOTO, PICKUP, INVENTORY, LEAVE
+    }
+
+    private final PlayerList players;
+    private final WorldScheduler scheduler;
+    private final Router router;
+    private final WorldPartitions partitions;
+    private final ProfileStore profiles;
+    private final WorldJournal journal;
+    private final Histogram[] latency;
+    private final Histogram fanOut;
+    private final CopyOnWriteArrayList<SelectorServer> transports;
+    private volatile long startedAt;
+
+    /**
+     * @param players Players of the game, counted for the online figure.
+     * @param scheduler Scheduler of the world's timed events.
+     * @param router Router answering GOTO.
+     * @param partitions Room partitions running the commands, or null if there are none.
+     * @param profiles Store keeping player profiles, or null if they are not kept.
+     * @param journal Journal of the changes to the world, or null if there is none.
+     */
+    public GameMetrics(PlayerList players, WorldScheduler scheduler, Router router, WorldPartitions partitions,
+            ProfileStore profiles, WorldJournal journal) {
+        this.players = players;
+        this.scheduler = scheduler;
+        this.router = router;
+        this.partitions = partitions;
+        this.profiles = profiles;
+        this.journal = journal;
+        this.latency = new Histogram[Command.values().length];
+        for(int i = 0; i < this.latency.length; i++) {
+            this.latency[i] = new Histogram();
+        }
+        this.fanOut = new Histogram();
+        this.transports = new CopyOnWriteArrayList<>();
+        this.startedAt = System.nanoTime();
+    }
+
+    /**
+     * Records that a command finished.
+     * @param command Command that ran.
+     * @param startNanos System.nanoTime() when it started.
+     */
+    public void record(Command command, long startNanos) {
+        this.latency[command.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one broadcast.
+     * @param recipients Number of players the message was sent to.
+     */
+    public void recordFanOut(int recipients) {
+        this.fanOut.record(recipients);
+    }
+
+    /**
+     * Counts the bytes a socket server writes towards the outbound byte total.
+     * @param transport Server whose connections carry game traffic.
+     */
+    public void addTransport(SelectorServer transport) {
+        this.transports.add(transport);
+    }
+
+    @Override
+    public int getPlayersOnline() {
+        return this.players.size();
+    }
+
+    @Override
+    public long getUptimeSeconds() {
+        return (System.nanoTime() - this.startedAt) / 1000000000L;
+    }
+
+    @Override
+    public long getOutboundBytes() {
+        long bytes = 0;
+        for(SelectorServer transport : this.transports) {
+            bytes += transport.getBytesWritten();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getBroadcasts() {
+        return this.fanOut.getCount();
+    }
+
+    @Override
+    public double getMeanFanOut() {
+        return this.fanOut.getMean();
+    }
+
+    @Override
+    public long getMaxFanOut() {
+        return this.fanOut.getMax();
+    }
+
+    @Override
+    public long getScheduledEvents() {
+        return this.scheduler.getBacklog();
+    }
+
+    @Override
+    public double getSchedulerLatenessMicros(double percentile) {
+        return this.scheduler.getLateness().getPercentile(percentile / 100.0) / 1000.0;
+    }
+
+    @Override
+    public int getRouteTablesBuilt() {
+        return this.router.getTablesBuilt();
+    }
+
+    @Override
+    public long getPartitionHandOffs() {
+        return this.partitions == null ? 0 : this.partitions.getHandOffs();
+    }
+
+    @Override
+    public int getProfilesStored() {
+        return this.profiles == null ? 0 : this.profiles.size();
+    }
+
+    @Override
+    public double getProfileWriteAmplification() {
+        return this.profiles == null ? 0 : this.profiles.getWriteAmplification();
+    }
+
+    @Override
+    public long getJournalEvents() {
+        return this.journal == null ? 0 : this.journal.getEvents();
+    }
+
+    @Override
+    public long getRouteMemoryBytes() {
+        return this.router.getTableBytes() + this.router.getGraphBytes();
+    }
+
+    @Override
+    public String[] getCommandStats() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - this.startedAt) / 1e9);
+        String[] lines = new String[this.latency.length];
+        for(Command command : Command.values()) {
+            Histogram histogram = this.latency[command.ordinal()];
+            lines[command.ordinal()] = String.format(Locale.ROOT,
+                    "%-9s count=%d rate=%.1f/s p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                    command.name(), histogram.getCount(), histogram.getCount() / seconds,
+                    histogram.getPercentile(0.50) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+                    histogram.getPercentile(0.999) / 1000.0, histogram.getMax() / 1000.0);
+        }
+        return lines;
+    }
+
+    @Override
+    public long getCommandCount(String command) {
+        return this.latency[Command.valueOf(command.trim().toUpperCase(Locale.ROOT)).ordinal()].getCount();
+    }
+
+    @Override
+    public double getLatencyMicros(String command, double percentile) {
+        Histogram histogram = this.latency[Command.valueOf(command.trim().toUpperCase(Locale.ROOT)).ordinal()];
+        return histogram.getPercentile(percentile / 100.0) / 1000.0;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Players online: ").append(this.getPlayersOnline())
+                .append(", up ").append(this.getUptimeSeconds()).append(" s")
+                .append(", ").append(this.getOutboundBytes()).append(" bytes sent\n");
+        report.append(String.format(Locale.ROOT, "Broadcasts: %d, fan-out mean %.2f p99 %d max %d\n",
+                this.getBroadcasts(), this.getMeanFanOut(), this.fanOut.getPercentile(0.99), this.getMaxFanOut()));
+        Histogram lateness = this.scheduler.getLateness();
+        report.append(String.format(Locale.ROOT, "World events: %d scheduled, %d run, lateness p50 %.1fms p99 %.1fms max %.1fms\n",
+                this.getScheduledEvents(), lateness.getCount(), lateness.getPercentile(0.50) / 1e6,
+                lateness.getPercentile(0.99) / 1e6, lateness.getMax() / 1e6));
+        report.append(this.router.report()).append("\n");
+        if(this.partitions != null) {
+            report.append(this.partitions.report()).append("\n");
+        }
+        if(this.profiles != null) {
+            report.append(this.profiles.report()).append("\n");
+        }
+        if(this.journal != null) {
+            report.append(this.journal.report()).append("\n");
+        }
+        for(SelectorServer transport : this.transports) {
+            String line = transport.report();
+            if(line != null) {
+                report.append(line).append("\n");
+            }
+        }
+        for(String line : this.getCommandStats()) {
+            report.append(line).append('\n');
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for(Histogram histogram : this.latency) {
+            histogram.reset();
+        }
+        this.fanOut.reset();
+        this.startedAt = System.nanoTime();
+    }
+}
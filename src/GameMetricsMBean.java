@@ -0,0 +1,107 @@
+/**
+ * Management interface of GameMetrics, as seen in JConsole or any other JMX client
+ *  under the name GameServer:type=GameMetrics.
+ */
+public interface GameMetricsMBean {
+    /**
+     * @return Number of players currently in the game.
+     */
+    public int getPlayersOnline();
+
+    /**
+     * @return Seconds since the counters were started or last reset.
+     */
+    public long getUptimeSeconds();
+
+    /**
+     * @return Bytes written to clients over the game's sockets since startup.
+     */
+    public long getOutboundBytes();
+
+    /**
+     * @return Number of room broadcasts sent.
+     */
+    public long getBroadcasts();
+
+    /**
+     * @return Mean number of players reached by one broadcast.
+     */
+    public double getMeanFanOut();
+
+    /**
+     * @return Largest number of players reached by one broadcast.
+     */
+    public long getMaxFanOut();
+
+    /**
+     * @return Number of timed world events waiting to run.
+     */
+    public long getScheduledEvents();
+
+    /**
+     * @param percentile Percentile between 0 and 100, eg. 99.
+     * @return How late timed world events ran at that percentile, in microseconds.
+     */
+    public double getSchedulerLatenessMicros(double percentile);
+
+    /**
+     * @return Number of destinations whose GOTO next-hop table is built.
+     */
+    public int getRouteTablesBuilt();
+
+    /**
+     * @return Bytes taken by the GOTO routing tables and the room graph behind them.
+     */
+    public long getRouteMemoryBytes();
+
+    /**
+     * @return Number of walks handed over from one room partition to another, 0 when
+     *  the world is not partitioned.
+     */
+    public long getPartitionHandOffs();
+
+    /**
+     * @return Number of player profiles stored, 0 when profiles are not kept.
+     */
+    public int getProfilesStored();
+
+    /**
+     * @return Bytes written to the profile log per byte of profile changes saved, 0
+     *  when profiles are not kept.
+     */
+    public double getProfileWriteAmplification();
+
+    /**
+     * @return Number of changes to the world journaled since the server started, 0
+     *  when there is no journal.
+     */
+    public long getJournalEvents();
+
+    /**
+     * @return One line per command with its count, rate and latency percentiles.
+     */
+    public String[] getCommandStats();
+
+    /**
+     * @param command Command name, eg. "LOOK".
+     * @return Number of times the command has run.
+     */
+    public long getCommandCount(String command);
+
+    /**
+     * @param command Command name, eg. "LOOK".
+     * @param percentile Percentile between 0 and 100, eg. 99.9.
+     * @return Latency of the command at that percentile, in microseconds.
+     */
+    public double getLatencyMicros(String command, double percentile);
+
+    /**
+     * @return Every statistic as readable text.
+     */
+    public String report();
+
+    /**
+     * Starts every counter except the byte count over from zero.
+     */
+    public void reset();
+}
@@ -4,6 +4,7 @@
 import java.io.PrintWriter;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.Callable;
 
 /**
  *
@@ -11,6 +12,7 @@ import java.rmi.server.UnicastRemoteObject;
  */
 public class GameObject extends UnicastRemoteObject implements GameObjectInterface {
     private final GameCore core;
+    private final CommandInterpreter interpreter;
     
     /**
      * Creates a new GameObject.  Namely, creates the map for the rooms in the game,
@@ -18,9 +20,20 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     public GameObject() throws RemoteException {
+        this(new GameCore());
+    }
+    
+    /**
+     * Creates a new GameObject that serves an existing game core, so the RMI and
+     *  non-RMI servers can share one world.
+     * @param core Game core to serve.
+     * @throws RemoteException 
+     */
+    public GameObject(GameCore core) throws RemoteException {
         super();
         
-        core = new GameCore();
+        this.core = core;
+        this.interpreter = new CommandInterpreter(core);
     }
 
     /**
@@ -30,13 +43,37 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @return true if player is found, false otherwise.
      */
     public boolean setReplyWriter(String playerName, PrintWriter writer) {
-        Player player = core.findPlayer(playerName);
-        if(player != null && writer != null) {
-            player.setReplyWriter(writer);
-            return true;
-        }
-        return false;
+        return core.setReplyWriter(playerName, writer, null);
+    }    
+    
+    /**
+     * Links an asynchronous event message connection to a player.
+     * @param playerName Player to link the reply socket with.
+     * @param writer PrintWriter to use for asynchronous messages.
+     * @param transport Non-blocking connection writer the writer writes to.
+     * @return true if player is found, false otherwise.
+     */
+    public boolean setReplyWriter(String playerName, PrintWriter writer, ChannelWriter transport) {
+        return core.setReplyWriter(playerName, writer, transport);
     }    
+    
+    /**
+     * Starts sending a player room deltas on their reply connection (see RoomDelta).
+     * @param playerName Player whose client asked for them.
+     * @return true if player is found, false otherwise.
+     */
+    public boolean enableRoomDeltas(String playerName) {
+        return core.enableRoomDeltas(playerName);
+    }
+    
+    /**
+     * Gives a player the LOOK of their area on their reply connection, without
+     *  waiting for it.
+     * @param playerName Player whose reply connection has just been registered.
+     */
+    public void sendLook(String playerName) {
+        core.sendLook(playerName);
+    }
   
     
     /**
@@ -61,8 +98,13 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     @Override
-    public String look(String playerName) throws RemoteException {
-        return core.look(playerName);
+    public String look(final String playerName) throws RemoteException {
+        return core.dispatch(playerName, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.look(playerName);
+            }
+        });
     }        
      
     /**
@@ -72,8 +114,13 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     @Override
-    public String left(String name) throws RemoteException {
-        return core.left(name);
+    public String left(final String name) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.left(name);
+            }
+        });
     }
        
     /**
@@ -83,8 +130,13 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     @Override
-    public String right(String name) throws RemoteException {
-        return core.right(name);
+    public String right(final String name) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.right(name);
+            }
+        });
     }    
        
     /**
@@ -95,8 +147,13 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     @Override
-    public String say(String name, String message) throws RemoteException {
-        return core.say(name, message);
+    public String say(final String name, final String message) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.say(name, message);
+            }
+        });
     }
       
     /**
@@ -108,8 +165,30 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */
     @Override
-    public String move(String name, int distance) throws RemoteException {
-        return core.move(name, distance);
+    public String move(final String name, final int distance) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.move(name, distance);
+            }
+        });
+    }
+
+    /**
+     * Walks the player to a room along the shortest way there.
+     * @param name Name of the player to move
+     * @param destination Id or title of the room to walk to.
+     * @return Message showing success.
+     * @throws RemoteException 
+     */
+    @Override
+    public String goTo(final String name, final String destination) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.goTo(name, destination);
+            }
+        });
     }
       
     /**
@@ -120,8 +199,13 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */    
     @Override
-    public String pickup(String name, String target) throws RemoteException {
-        return core.pickup(name, target);
+    public String pickup(final String name, final String target) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.pickup(name, target);
+            }
+        });
     }    
     
     /**
@@ -131,10 +215,52 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
      * @throws RemoteException 
      */    
     @Override
-    public String inventory(String name) throws RemoteException {
-        return core.inventory(name);
+    public String inventory(final String name) throws RemoteException {
+        return core.dispatch(name, new Callable<String>() {
+            @Override
+            public String call() {
+                return core.inventory(name);
+            }
+        });
     }    
     
+    /**
+     * Runs an ordered list of commands for one player in a single call.
+     * @param name Name of the player issuing the commands
+     * @param commands Commands to run, in order.
+     * @return One reply per command, in the same order.
+     * @throws RemoteException 
+     */
+    @Override
+    public String[] batch(String name, String[] commands) throws RemoteException {
+        String[] replies = new String[commands.length];
+        core.beginBatch(name);
+        try {
+            for(int i = 0; i < commands.length; i++) {
+                try {
+                    replies[i] = interpreter.execute(name, commands[i]);
+                } catch (IllegalArgumentException ex) {
+                    replies[i] = ex.getMessage();
+                }
+            }
+        } finally {
+            core.endBatch(name);
+        }
+        return replies;
+    }
+    
+    /**
+     * Returns the server statistics, if the player gives the administrator key.
+     * @param name Name of the player asking
+     * @param key Administrator key
+     * @return Statistics report, or a refusal.
+     * @throws RemoteException 
+     */
+    @Override
+    public String stats(String name, String key) throws RemoteException {
+        return core.stats(name, key);
+    }
+    
      /**
      * Leaves the game.
      * @param name Name of the player to leave
@@ -144,7 +270,7 @@ public class GameObject extends UnicastRemoteObject implements GameObjectInterfa
     public void leave(String name) throws RemoteException {
         Player player = core.leave(name);
         if(player != null) {
-            player.getReplyWriter().close();
+            player.closeReplies();
         }
     }    
 }
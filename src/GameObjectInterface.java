@@ -58,11 +58,20 @@ public interface GameObjectInterface extends Remote {
      *  a message will be returned.  Will display LOOK on any partial success.
      * @param name Name of the player to move
      * @param distance Number of rooms to move forward through.
-     * @return Message showing success.
+     * @return Message showing success, or why the player did not move.
      * @throws RemoteException 
      */
     public String move(String name, int distance) throws RemoteException;
 
+    /**
+     * Walks the player to a room along the shortest way there.
+     * @param name Name of the player to move
+     * @param destination Id or title of the room to walk to.
+     * @return Message showing success.
+     * @throws RemoteException 
+     */
+    public String goTo(String name, String destination) throws RemoteException;
+
     /**
      * Attempts to pick up an object < object >. Will return a message on any success or failure.
      * @param name Name of the player to pickup an object
@@ -80,6 +89,29 @@ public interface GameObjectInterface extends Remote {
      */    
     public String inventory(String name) throws RemoteException;   
     
+    /**
+     * Runs an ordered list of commands for one player in a single call.  Each command
+     *  uses the same syntax as the client (eg. "LEFT", "MOVE 2", "PICKUP Flower") and has
+     *  exactly the same effect as the matching individual call, in order.
+     * @param name Name of the player issuing the commands
+     * @param commands Commands to run, in order.
+     * @return One reply per command, in the same order.  A reply is null if the player
+     *  was not in the game when that command ran.
+     * @throws RemoteException 
+     */
+    public String[] batch(String name, String[] commands) throws RemoteException;
+    
+    /**
+     * Returns the server statistics: players online, per-command latency percentiles
+     *  and rates, broadcast fan-out and bytes sent.  Only for administrators, who
+     *  prove it with the key the server was started with.
+     * @param name Name of the player asking
+     * @param key Administrator key
+     * @return Statistics report, or a refusal if the key is wrong.
+     * @throws RemoteException 
+     */
+    public String stats(String name, String key) throws RemoteException;
+    
      /**
      * Leaves the game.
      * @param name Name of the player to leave
@@ -1,14 +1,11 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  *
@@ -19,11 +16,13 @@ public class GameServer {
     // Remote object for RMI
     private GameObject remoteObject;
     
-    // Members to control and run the asynchronous reply thread for the RMI implementation.
-    protected ServerSocket remoteListener;
+    // Members to control and run the asynchronous reply channel for the RMI implementation.
+    protected EventChannelServer replyServer;
     private Thread remoteOutputThread;
     
 // ----- NON-RMI RELATED MEMBERS ------------    
+    // Single-socket, pipelined command server sharing the same game core.
+    protected CommandServer commandServer;
     private Thread gameThread;
     
     /**
@@ -33,24 +32,41 @@ public class GameServer {
      */
     public GameServer(String host) throws RemoteException {           
 	   try {
-			// Step 1: Create the remote listener thread.  This thread is used
+			// Step 1: Create the remote object and register it for RMI
+			//  a) Create the security manager.
+			System.setSecurityManager(new SecurityManager());
+			//  b) Create the game core and the RMI remote object serving it.
+			GameCore core = new GameCore();
+			remoteObject = new GameObject(core);
+			// Step 2: Create the remote listener.  This socket server is used
 			//          for asynchronous replies from the game for events the 
 			//          client has not generated. (ie. other players talking)
-			remoteOutputThread = new Thread(new ReplyRemote(host));
+			//          Every connection shares a handful of selector threads.
+			replyServer = new EventChannelServer(remoteObject, Integer.getInteger("game.reply.selectors", 2));
+			remoteOutputThread = new Thread(replyServer, "EventChannelServer-accept");
 			remoteOutputThread.setDaemon(true);
 			remoteOutputThread.start();
-			// Step 2: Create the remote object and register it for RMI
-			//  a) Create the security manager.
-			System.setSecurityManager(new SecurityManager());
-			//  b) Create the RMI remote object.
-			remoteObject = new GameObject();
-			//  c) Bind the remote object to the rmi service (rmiregistry must be running)
+			// Step 3: Create the non-RMI command server.  Clients that use it send their
+			//          commands and receive their events over a single socket.
+			commandServer = new CommandServer(core, Integer.getInteger("game.command.port", CommandProtocol.DEFAULT_PORT),
+					Integer.getInteger("game.command.selectors", 2),
+					Integer.getInteger("game.command.workers", Runtime.getRuntime().availableProcessors()));
+			gameThread = new Thread(commandServer, "CommandServer-accept");
+			gameThread.setDaemon(true);
+			gameThread.start();
+			// Step 4: Publish the server statistics over JMX.
+			core.getMetrics().addTransport(replyServer);
+			core.getMetrics().addTransport(commandServer);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(core.getMetrics(), new ObjectName("GameServer:type=GameMetrics"));
+			// Step 5: Bind the remote object to the rmi service (rmiregistry must be running)
 			Naming.rebind("rmi://"+host+"/GameService", remoteObject);
 			System.err.println("[RUN] Game Server is now running and accepting connections.");
 		} catch(RemoteException re) {
 			Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, re);
 		} catch (MalformedURLException ex) {
 			Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
+		} catch (JMException ex) {
+			Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
 		}
 	}
     
@@ -67,70 +83,4 @@ public class GameServer {
             Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
-    
-    /**
-     * Inner class to handle remote message input to this program.  
-     *  - Runs as a separate thread.  Interrupt it to kill it.
-     *  - Spawns multiple threads, one for each remote connection.
-     */
-    public class ReplyRemote implements Runnable {
-		private String host;
-		
-		public ReplyRemote(String host) {
-			this.host = host;
-		}
-		
-        @Override
-        public void run() {
-            try {
-                // This thread is interruptable, which will allow it to clean up before
-                //  being joined.
-                System.err.println("[STARTUP] .. New socket opened on port 13500");
-                remoteListener = new ServerSocket(13500);
-                while(true) {
-                    try {
-                        final Socket remoteMessageSocket = remoteListener.accept();
-                        System.err.println("[SOCKET] .. Received new connection");
-                        
-                        // Anonymous to handle connections.
-                        Thread remoteConnectionThread = new Thread(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    // Get the socket input and output streams.
-                                    BufferedReader remoteReader = new BufferedReader(new InputStreamReader(remoteMessageSocket.getInputStream()));
-                                    PrintWriter remoteWriter = new PrintWriter(remoteMessageSocket.getOutputStream(), true);
-                                    
-                                    // Read message from the input buffer and acknowledge receipt.
-                                    String playerName = remoteReader.readLine();
-                                    System.err.println("[SOCKET] .. Connection for a player " + playerName);
-                                    remoteWriter.println("ACK");
-
-                                    // Attach this socket to the player managed by the remote object.
-                                    if(GameServer.this.remoteObject.setReplyWriter(playerName, remoteWriter) == false) {
-                                        System.err.println("[ERROR] Non-registered player attempted connection.  Severing.");
-                                        remoteMessageSocket.close();
-                                    }
-                                    
-                                    System.err.println("[SOCKET] .. " + playerName + " has registered their socket.");
-                                    // And give the player their first look at the area they are in.
-                                    remoteWriter.println(GameServer.this.remoteObject.look(playerName));
-                                } catch (IOException ex) {
-                                    Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
-                                }
-                            }
-                        });
-                        
-                        // Start the connection-specific socket thread.
-                        remoteConnectionThread.setDaemon(true);
-                        remoteConnectionThread.start();
-                    } catch (IOException ex) {
-                        Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-    }
 }
@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values, such as latencies in nanoseconds
+ *  or broadcast recipient counts.  Any number of threads may record at once; a
+ *  sample is a couple of atomic increments and never allocates.
+ *
+ * Values below 16 are counted exactly.  Above that each power of two is split into
+ *  16 buckets, so a reported percentile is within 1/16 (about 6%) of the true value.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records one sample.
+     * @param value Sample; negative values are counted as 0.
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        long highest = this.max.get();
+        while(value > highest && this.max.compareAndSet(highest, value) == false) {
+            highest = this.max.get();
+        }
+    }
+
+    /**
+     * @return Number of samples recorded.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return Mean of the samples, or 0 if there are none.
+     */
+    public double getMean() {
+        long samples = this.count.sum();
+        return samples == 0 ? 0.0 : (double) this.sum.sum() / samples;
+    }
+
+    /**
+     * @return Largest sample recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns the value below which the given fraction of samples fall.
+     * @param fraction Fraction between 0 and 1, eg. 0.99 for the 99th percentile.
+     * @return The percentile, or 0 if there are no samples.
+     */
+    public long getPercentile(double fraction) {
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            total += this.counts.get(i);
+        }
+        if(total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if(seen >= rank) {
+                return Math.min(highestIn(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Forgets every sample.  Samples recorded during a reset may be partly kept.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    private static int bucketOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestIn(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every kind of object in the world, numbered.  Rooms and inventories hold the
+ *  numbers in plain int arrays instead of lists of strings, and the names are kept
+ *  once, here.
+ *
+ * Names are matched the way players type them, ignoring case: each item also
+ *  belongs to a group of items whose names differ only in case, and "pickup phone"
+ *  looks up that group once and then compares numbers.
+ *
+ * Items are added the first time their name is seen and never removed.  Looking a
+ *  name up or an item's name up never locks.
+ */
+public final class ItemCatalog {
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Integer> GROUPS = new ConcurrentHashMap<>();
+    // Replaced, never changed, when an item is added; guarded by IDS for writers.
+    private static volatile String[] names = new String[0];
+    private static volatile int[] groups = new int[0];
+
+    private ItemCatalog() {
+    }
+
+    /**
+     * Finds or adds an item.
+     * @param name Exact name of the item.
+     * @return Id of the item.
+     */
+    public static int id(String name) {
+        Integer id = IDS.get(name);
+        if(id != null) {
+            return id;
+        }
+        synchronized(IDS) {
+            id = IDS.get(name);
+            if(id == null) {
+                id = names.length;
+                String folded = name.toLowerCase(Locale.ROOT);
+                Integer group = GROUPS.get(folded);
+                if(group == null) {
+                    group = id;
+                    GROUPS.put(folded, group);
+                }
+                // Publish the name before the id, so whoever sees the id finds the name.
+                int[] moreGroups = Arrays.copyOf(groups, id + 1);
+                moreGroups[id] = group;
+                groups = moreGroups;
+                String[] moreNames = Arrays.copyOf(names, id + 1);
+                moreNames[id] = name;
+                names = moreNames;
+                IDS.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param id Id of an item.
+     * @return Its name, as first seen.
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Finds the group of items a player means, ignoring case.
+     * @param name Name as typed.
+     * @return Group of the items with that name, or -1 if there are none.
+     */
+    public static int group(String name) {
+        Integer group = GROUPS.get(name.toLowerCase(Locale.ROOT));
+        return group == null ? -1 : group;
+    }
+
+    /**
+     * @param id Id of an item.
+     * @return Group of the items whose names differ from its name only in case.
+     */
+    public static int groupOf(int id) {
+        return groups[id];
+    }
+
+    /**
+     * @return Number of items in the catalog.
+     */
+    public static int size() {
+        return names.length;
+    }
+
+    /**
+     * Renders a run of items the way a list of their names prints, eg. "[Flower, Phone]".
+     * @param ids Item ids.
+     * @param count Number of ids to render.
+     * @return The names in brackets, separated by commas.
+     */
+    public static String list(int[] ids, int count) {
+        StringBuilder list = new StringBuilder("[");
+        for(int i = 0; i < count; i++) {
+            if(i > 0) {
+                list.append(", ");
+            }
+            list.append(names[ids[i]]);
+        }
+        return list.append(']').toString();
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Severity of a server log entry, least severe first.  OFF turns logging off.
+ */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR, OFF;
+
+    /**
+     * Reads a level from a system property.
+     * @param property Name of the system property.
+     * @param fallback Level used when the property is missing or not a level name.
+     * @return The configured level.
+     */
+    public static LogLevel fromProperty(String property, LogLevel fallback) {
+        String value = System.getProperty(property);
+        if(value != null) {
+            for(LogLevel level : LogLevel.values()) {
+                if(level.name().equalsIgnoreCase(value.trim())) {
+                    return level;
+                }
+            }
+        }
+        return fallback;
+    }
+}
@@ -1,87 +1,252 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.w3c.dom.Document;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
+ * The world graph.  Rooms are found by id in constant time: when the ids are
+ *  reasonably dense (the usual case for generated maps) through an array indexed
+ *  by id, otherwise through a hash table.  The graph does not change once loaded.
  *
  * @author Kevin
  */
-public class Map {   
-    private final LinkedList<Room> map;
-    
+public class Map {
+    // Room ids may leave at most this many empty slots per room before we stop using an array.
+    private static final int MAX_SLOTS_PER_ROOM = 4;
+
+    private final Room[] map;
+
+    // Id lookup.  Dense worlds use byId[id - firstId]; sparse ones fall back to the hash table.
+    private final int firstId;
+    private final Room[] byId;
+    private final HashMap<Integer, Room> sparse;
+
+    // When running from a precompiled world image, rooms are decoded on first use.
+    private final WorldImage image;
+    private final AtomicReferenceArray<Room> materializedById;
+    private final ConcurrentHashMap<Integer, Room> materialized;
+
+    /**
+     * Loads the map named by the game.map system property, or ./rooms.xml.  If the
+     *  game.world.image property names an image file, the world is served from that
+     *  image instead (compiling it from the map files first if it is missing or stale).
+     */
     public Map() {
-        map = new LinkedList<>();
-        try {
-            File mapFile = new File("./rooms.xml");
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document document = dBuilder.parse(mapFile);
-            
-            document.getDocumentElement().normalize();
-            NodeList xmlRooms = document.getElementsByTagName("room");
-            NodeList xmlExits;
-            
-            String title, description;
-            String message;
-            int id, link;
-            Element roomElement;
-            Element exitElement;
-            Direction exitId;
-            
-            Room newRoom;
-            Exit newExit;
-            
-            for(int i = 0; i < xmlRooms.getLength(); i++) {
-                roomElement = (Element) xmlRooms.item(i);
-                
-                id = Integer.parseInt(roomElement.getAttribute("id"));
-                title = roomElement.getElementsByTagName("title").item(0).getTextContent();
-                description = roomElement.getElementsByTagName("description").item(0).getTextContent();
-                
-//                System.out.println("Adding Room " + id + " with Title " + title + ": " + description);
-                newRoom = new Room(id, title, description);
-                
-                xmlExits = roomElement.getElementsByTagName("exit");
-                for(int j = 0; j < xmlExits.getLength(); j++) {
-                    exitElement = (Element) xmlExits.item(j);
-                    
-                    exitId = Direction.valueOf(exitElement.getAttribute("id"));
-                    link = Integer.parseInt(exitElement.getElementsByTagName("link").item(0).getTextContent());
-                    message = exitElement.getElementsByTagName("message").item(0).getTextContent();
-//                    System.out.println("... Adding Exit " + exitId + " to " + link + ": " + message);
-                    newRoom.addExit(exitId, link, message);
-                }                
-                
-                map.add(newRoom);
+        this(System.getProperty("game.map", "./rooms.xml"), System.getProperty("game.world.image"));
+    }
+
+    /**
+     * Loads the map from one or more files.
+     * @param mapFiles Comma separated map files; a directory stands for every .xml file in it.
+     */
+    public Map(String mapFiles) {
+        this(mapFiles, null);
+    }
+
+    /**
+     * Builds the map around rooms that have already been loaded.
+     * @param rooms Rooms of the world.
+     */
+    public Map(List<Room> rooms) {
+        this(null, rooms.toArray(new Room[rooms.size()]), null);
+    }
+
+    /**
+     * Serves the world from a precompiled image, falling back to loading the map
+     *  files directly if no image is given.
+     * @param mapFiles Comma separated map files; a directory stands for every .xml file in it.
+     * @param imageFile World image file, or null to load the map files directly.
+     */
+    public Map(String mapFiles, String imageFile) {
+        this(mapFiles, null, imageFile == null ? null : open(mapFiles, imageFile));
+    }
+
+    private Map(String mapFiles, Room[] rooms, WorldImage image) {
+        if(rooms == null && image == null) {
+            // No image was asked for, or it was rejected; load the map files directly.
+            rooms = load(mapFiles);
+        }
+        this.image = image;
+        this.map = rooms;
+
+        int count = image != null ? image.getRoomCount() : rooms.length;
+        long lowest = Long.MAX_VALUE;
+        long highest = Long.MIN_VALUE;
+        if(image != null && count > 0) {
+            lowest = image.idAt(0);
+            highest = image.idAt(count - 1);
+        }
+        else {
+            for(Room room : rooms) {
+                lowest = Math.min(lowest, room.getId());
+                highest = Math.max(highest, room.getId());
             }
-            
-        } catch (ParserConfigurationException | SAXException | IOException ex) {
+        }
+        boolean dense = count > 0 && highest - lowest < (long) count * MAX_SLOTS_PER_ROOM + 16;
+        this.firstId = dense ? (int) lowest : 0;
+        int slots = dense ? (int) (highest - lowest + 1) : 0;
+
+        if(image != null) {
+            this.byId = null;
+            this.sparse = null;
+            this.materializedById = dense ? new AtomicReferenceArray<Room>(slots) : null;
+            this.materialized = dense ? null : new ConcurrentHashMap<Integer, Room>();
+        }
+        else {
+            this.materializedById = null;
+            this.materialized = null;
+            this.byId = dense ? new Room[slots] : null;
+            this.sparse = dense ? null : new HashMap<Integer, Room>();
+            // Walk backwards so the first room with a given id wins, as it always has.
+            for(int i = rooms.length - 1; i >= 0; i--) {
+                if(dense) {
+                    this.byId[rooms[i].getId() - this.firstId] = rooms[i];
+                }
+                else {
+                    this.sparse.put(rooms[i].getId(), rooms[i]);
+                }
+            }
+        }
+    }
+
+    private static Room[] load(String mapFiles) {
+        try {
+            long start = System.nanoTime();
+            List<File> files = WorldLoader.resolve(mapFiles);
+            List<Room> rooms = WorldLoader.load(files, Runtime.getRuntime().availableProcessors());
+            System.err.println("[STARTUP] .. Loaded " + rooms.size() + " rooms from " + files.size() + " map file(s) in "
+                    + ((System.nanoTime() - start) / 1000000) + " ms");
+            return rooms.toArray(new Room[rooms.size()]);
+        } catch (IOException ex) {
             Logger.getLogger(Map.class.getName()).log(Level.SEVERE, null, ex);
+            return new Room[0];
+        }
+    }
+
+    private static WorldImage open(String mapFiles, String imageFile) {
+        try {
+            long start = System.nanoTime();
+            WorldImage opened = WorldImage.open(new File(imageFile), WorldLoader.resolve(mapFiles));
+            System.err.println("[STARTUP] .. Opened world image " + imageFile + " with " + opened.getRoomCount() + " rooms in "
+                    + ((System.nanoTime() - start) / 1000000) + " ms");
+            return opened;
+        } catch (IOException ex) {
+            Logger.getLogger(Map.class.getName()).log(Level.SEVERE, "World image rejected, loading the map files instead", ex);
+            return null;
         }
     }
-    
+
     public Room findRoom(int roomId) {
-        for(Room room : this.map) {
-            if(room.getId() == roomId) {
-                return room;
-            }
+        if(this.image != null) {
+            return this.materialize(roomId);
         }
-        return null;
+        if(this.byId != null) {
+            int slot = roomId - this.firstId;
+            return (slot >= 0 && slot < this.byId.length) ? this.byId[slot] : null;
+        }
+        return this.sparse.get(roomId);
     }
-    
+
     public Room randomRoom() {
         Random rand = new Random();
-        return map.get(rand.nextInt(map.size()));
+        if(this.image != null) {
+            return findRoom(this.image.idAt(rand.nextInt(this.image.getRoomCount())));
+        }
+        return map[rand.nextInt(map.length)];
+    }
+
+    /**
+     * @return Number of rooms in the world.
+     */
+    public int size() {
+        return this.image != null ? this.image.getRoomCount() : this.map.length;
+    }
+
+    /**
+     * @return The world image the rooms are read from, or null if the map files were
+     *  loaded directly.
+     */
+    public WorldImage getImage() {
+        return this.image;
+    }
+
+    /**
+     * @return Id of every room, in ascending order, each id once.
+     */
+    public int[] getRoomIds() {
+        if(this.image != null) {
+            int[] ids = new int[this.image.getRoomCount()];
+            for(int i = 0; i < ids.length; i++) {
+                ids[i] = this.image.idAt(i);
+            }
+            return ids;
+        }
+        int[] ids = new int[this.map.length];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = this.map[i].getId();
+        }
+        Arrays.sort(ids);
+        int distinct = 0;
+        for(int i = 0; i < ids.length; i++) {
+            if(i == 0 || ids[i] != ids[i - 1]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /**
+     * Looks a room up for a one-off read of its fixed parts (title, description and
+     *  exits).  Unlike findRoom, a room read from a world image is not kept, so
+     *  walking the whole world this way does not load it all into memory.
+     * @param roomId Id of the room.
+     * @return The room, or null if there is no such room.
+     */
+    public Room peekRoom(int roomId) {
+        if(this.image != null) {
+            Room room = this.materializedById != null ? this.findLoaded(roomId) : this.materialized.get(roomId);
+            return room != null ? room : this.image.readRoom(roomId);
+        }
+        return this.findRoom(roomId);
+    }
+
+    private Room findLoaded(int roomId) {
+        int slot = roomId - this.firstId;
+        return (slot >= 0 && slot < this.materializedById.length()) ? this.materializedById.get(slot) : null;
+    }
+
+    private Room materialize(int roomId) {
+        if(this.materializedById != null) {
+            int slot = roomId - this.firstId;
+            if(slot < 0 || slot >= this.materializedById.length()) {
+                return null;
+            }
+            Room room = this.materializedById.get(slot);
+            if(room == null) {
+                room = this.image.readRoom(roomId);
+                if(room != null && this.materializedById.compareAndSet(slot, null, room) == false) {
+                    room = this.materializedById.get(slot);
+                }
+            }
+            return room;
+        }
+        Room room = this.materialized.get(roomId);
+        if(room == null) {
+            room = this.image.readRoom(roomId);
+            if(room != null) {
+                Room raced = this.materialized.putIfAbsent(roomId, room);
+                if(raced != null) {
+                    room = raced;
+                }
+            }
+        }
+        return room;
     }
 }
@@ -0,0 +1,130 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live index of the players standing in each room, keyed by room id.
+ *  Room broadcasts and the "Players in the area" listing only visit the
+ *  occupants of a single room instead of every player on the server.  Each room's
+ *  occupants have their own lock, so comings and goings in different rooms never
+ *  wait on each other.
+ */
+public class OccupancyIndex {
+    private final ConcurrentHashMap<Integer, RoomOccupants> rooms;
+    private volatile Listener listener;
+
+    /**
+     * Told about every change, after the room's lock has been let go.
+     */
+    public interface Listener {
+        /**
+         * @param player Player who came in.
+         * @param roomId Id of the room.
+         * @param version Occupants version after the change.
+         */
+        void entered(Player player, int roomId, int version);
+
+        /**
+         * @param player Player who went out.
+         * @param roomId Id of the room.
+         * @param version Occupants version after the change.
+         */
+        void left(Player player, int roomId, int version);
+    }
+
+    public OccupancyIndex() {
+        this.rooms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param listener Listener for comings and goings, or null for none.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Places a player into the room they are currently standing in.
+     * @param player Player that has entered the world.
+     */
+    public void add(Player player) {
+        this.entered(player, player.getCurrentRoom());
+    }
+
+    /**
+     * Moves a player from one room's occupant list to another.  A player who is not
+     *  in the room they are leaving has already left the world (their move raced
+     *  with their QUIT), so they are not added anywhere.
+     * @param player Player that has changed rooms.
+     * @param fromRoom Id of the room the player left.
+     * @param toRoom Id of the room the player entered.
+     */
+    public void move(Player player, int fromRoom, int toRoom) {
+        if(fromRoom == toRoom) {
+            return;
+        }
+        if(this.depart(player, fromRoom)) {
+            this.entered(player, toRoom);
+        }
+    }
+
+    /**
+     * Takes a player out of a room without placing them anywhere yet, while they are
+     *  handed over to another partition.
+     * @param player Player leaving the room.
+     * @param fromRoom Id of the room.
+     * @return false if the player was not there (they have already left the world).
+     */
+    public boolean depart(Player player, int fromRoom) {
+        RoomOccupants previous = this.rooms.get(fromRoom);
+        int version = previous == null ? 0 : previous.remove(player);
+        if(version == 0) {
+            return false;
+        }
+        Listener listener = this.listener;
+        if(listener != null) {
+            listener.left(player, fromRoom, version);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a player from the room they are currently standing in.
+     * @param player Player that has left the world.
+     */
+    public void remove(Player player) {
+        this.depart(player, player.getCurrentRoom());
+    }
+
+    /**
+     * Returns the players in a room, in the order they arrived.  The occupants
+     *  may be iterated while players come and go.
+     * @param roomId Id of the room.
+     * @return Players in the room, empty if there are none.
+     */
+    public RoomOccupants getOccupants(int roomId) {
+        RoomOccupants occupants = this.rooms.get(roomId);
+        if(occupants == null) {
+            return RoomOccupants.EMPTY;
+        }
+        return occupants;
+    }
+
+    private void entered(Player player, int roomId) {
+        int version = this.occupantsOf(roomId).add(player);
+        Listener listener = this.listener;
+        if(version != 0 && listener != null) {
+            listener.entered(player, roomId, version);
+        }
+    }
+
+    private RoomOccupants occupantsOf(int roomId) {
+        RoomOccupants occupants = this.rooms.get(roomId);
+        if(occupants == null) {
+            RoomOccupants created = new RoomOccupants();
+            occupants = this.rooms.putIfAbsent(roomId, created);
+            if(occupants == null) {
+                occupants = created;
+            }
+        }
+        return occupants;
+    }
+}
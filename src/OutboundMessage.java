@@ -0,0 +1,68 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One asynchronous message on its way to one or more players.  A broadcast makes a
+ *  single OutboundMessage and queues the same object for every recipient, so the
+ *  text is encoded once per wire format, however many players it goes to, and the
+ *  encoded bytes are shared by all their connections.
+ *
+ * Each encoding is made the first time a connection asks for it and kept.  Two
+ *  connections asking at once may both encode it; either result is the same, and
+ *  one of them is kept.  The kept buffers are never written to: every connection
+ *  gets its own view of them (ByteBuffer.duplicate(), which copies no bytes).
+ */
+public final class OutboundMessage {
+    private final String text;
+    private volatile ByteBuffer line;
+    private volatile ByteBuffer frame;
+
+    /**
+     * @param text Text of the message, without a line ending.
+     */
+    public OutboundMessage(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return Text of the message.
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * @return The message as a line of UTF-8 text, for the plain event socket.
+     */
+    public ByteBuffer line() {
+        ByteBuffer line = this.line;
+        if(line == null) {
+            // As PrintWriter.println would write it.
+            line = StandardCharsets.UTF_8.encode(this.text + System.lineSeparator()).asReadOnlyBuffer();
+            this.line = line;
+        }
+        return line.duplicate();
+    }
+
+    /**
+     * @return The message as an EVENT frame of the single-socket protocol.
+     */
+    public ByteBuffer frame() {
+        ByteBuffer frame = this.frame;
+        if(frame == null) {
+            int end = this.text.length();
+            while(end > 0 && (this.text.charAt(end - 1) == '\n' || this.text.charAt(end - 1) == '\r')) {
+                end--;
+            }
+            frame = CommandProtocol.encodeResponse(CommandProtocol.EVENT_TAG, CommandProtocol.EVENT,
+                    this.text.substring(0, end)).asReadOnlyBuffer();
+            this.frame = frame;
+        }
+        return frame.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        return this.text;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded queue of asynchronous messages waiting to go out to one player.
+ *  Game threads only ever offer() to the queue; a shared pool of writer threads
+ *  drains it into the player's reply writer.  When the player stops reading, the
+ *  queue fills up and its SlowConsumerPolicy decides what happens next, so the
+ *  thread serving somebody else's command never waits on this client.
+ */
+public class OutboundQueue implements Runnable {
+    // Stop draining into a non-blocking transport once it is holding this many unsent bytes.
+    private static final long TRANSPORT_HIGH_WATER = 64 * 1024;
+
+    private final PrintWriter writer;
+    private final ChannelWriter transport;
+    private final Executor writers;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final Runnable onDisconnect;
+    private final ArrayDeque<OutboundMessage> pending;
+    private boolean scheduled;
+    private boolean waitingOnTransport;
+    private boolean closing;
+    private boolean closed;
+    private int skipped;
+    private boolean deltasLost;
+    private long dropped;
+
+    /**
+     * @param writer Writer the messages are finally delivered to.
+     * @param transport Non-blocking connection writer under the writer, or null if there
+     *  is none.  Messages are then queued on its connection already encoded.
+     * @param writers Threads that drain queues.
+     * @param capacity Maximum number of messages waiting to be written.
+     * @param policy What to do when the queue is full.
+     * @param onDisconnect Run once on a writer thread if the DISCONNECT policy severs the
+     *  player, may be null.
+     */
+    public OutboundQueue(PrintWriter writer, ChannelWriter transport, Executor writers,
+            int capacity, SlowConsumerPolicy policy, Runnable onDisconnect) {
+        this.writer = writer;
+        this.transport = transport;
+        this.writers = writers;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.onDisconnect = onDisconnect;
+        this.pending = new ArrayDeque<>();
+
+        if(transport != null) {
+            transport.getConnection().setDrainListener(new Runnable() {
+                @Override
+                public void run() {
+                    OutboundQueue.this.transportDrained();
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues a message for the player.  Never blocks.
+     * @param message Message to deliver.
+     * @return true if the message was queued, false if it was discarded.
+     */
+    public boolean offer(String message) {
+        return this.offer(new OutboundMessage(message));
+    }
+
+    /**
+     * Queues a message for the player.  Never blocks.  The same message may be queued
+     *  for many players.
+     * @param message Message to deliver.
+     * @return true if the message was queued, false if it was discarded.
+     */
+    public boolean offer(OutboundMessage message) {
+        boolean disconnect = false;
+        synchronized(this) {
+            if(this.closing || this.closed) {
+                return false;
+            }
+            if(this.pending.size() >= this.capacity) {
+                switch(this.policy) {
+                    case DROP:
+                        this.dropped++;
+                        this.deltasLost |= RoomDelta.isDelta(message.getText());
+                        return false;
+                    case COALESCE:
+                        this.deltasLost |= RoomDelta.isDelta(this.pending.poll().getText());
+                        this.skipped++;
+                        this.dropped++;
+                        break;
+                    case DISCONNECT:
+                        this.closed = true;
+                        this.dropped += this.pending.size() + 1;
+                        this.pending.clear();
+                        disconnect = true;
+                        break;
+                }
+            }
+            if(disconnect == false) {
+                this.pending.add(message);
+                this.schedule();
+                return true;
+            }
+        }
+        // Cut the client off without waiting for it to read what is already in flight.
+        if(this.transport != null) {
+            this.transport.getConnection().close();
+        }
+        else {
+            this.writer.close();
+        }
+        if(this.onDisconnect != null) {
+            // The caller may be in the middle of somebody else's command, even holding a
+            //  room's lock; removing the player is left to a writer thread.
+            this.writers.execute(this.onDisconnect);
+        }
+        return false;
+    }
+
+    /**
+     * Closes the queue once everything already queued has been written.
+     */
+    public void close() {
+        synchronized(this) {
+            if(this.closing || this.closed) {
+                return;
+            }
+            this.closing = true;
+            if(this.scheduled || (this.waitingOnTransport && this.pending.isEmpty() == false)) {
+                // The drain will close the writer when it is done.
+                return;
+            }
+            this.closed = true;
+        }
+        this.writer.close();
+    }
+
+    /**
+     * @return Number of messages currently waiting.
+     */
+    public synchronized int size() {
+        return this.pending.size();
+    }
+
+    /**
+     * @return Number of messages discarded by the slow consumer policy so far.
+     */
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+
+    /**
+     * Drains the queue.  Runs on a writer thread; only one drain per queue runs at a time.
+     */
+    @Override
+    public void run() {
+        OutboundMessage message;
+        int skippedNow;
+        boolean deltasLostNow;
+        while(true) {
+            synchronized(this) {
+                if(this.closed) {
+                    this.scheduled = false;
+                    return;
+                }
+                if(this.transport != null && this.transport.getConnection().getOutboundBytes() > TRANSPORT_HIGH_WATER) {
+                    // Let the socket catch up; transportDrained() picks the queue back up.
+                    this.scheduled = false;
+                    this.waitingOnTransport = true;
+                    return;
+                }
+                message = this.pending.poll();
+                if(message == null) {
+                    this.scheduled = false;
+                    if(this.closing) {
+                        this.closed = true;
+                        break;
+                    }
+                    return;
+                }
+                skippedNow = this.skipped;
+                this.skipped = 0;
+                deltasLostNow = this.deltasLost;
+                this.deltasLost = false;
+            }
+            if(skippedNow > 0) {
+                this.writer.println("[" + skippedNow + " messages were skipped because you fell behind.]");
+            }
+            if(deltasLostNow) {
+                // The client's copy of the room missed a change; it asks for a new one.
+                this.writer.println(RoomDelta.lost());
+            }
+            if(this.transport != null) {
+                try {
+                    this.transport.send(message);
+                } catch (IOException ex) {
+                    // The connection is gone; its close cleans up the player.
+                }
+            }
+            else {
+                this.writer.println(message.getText());
+            }
+        }
+        this.writer.close();
+    }
+
+    private synchronized void transportDrained() {
+        if(this.waitingOnTransport) {
+            this.waitingOnTransport = false;
+            if(this.pending.isEmpty() == false) {
+                this.schedule();
+            }
+        }
+    }
+
+    private void schedule() {
+        if(this.scheduled == false) {
+            this.scheduled = true;
+            this.writers.execute(this);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 
 import java.io.DataOutputStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 /**
@@ -8,18 +9,26 @@ import java.util.LinkedList;
  * @author Kevin
  */
 public class Player {
-    private LinkedList<String> currentInventory;
+    // Item ids (see ItemCatalog) of what the player carries, in the order picked up;
+    //  null until the first.
+    private int[] inventory;
+    private int inventoryCount;
     private String name;
-    private int currentRoom;
-    private Direction currentDirection;
+    // Read by other players' commands (broadcasts, room listings), so kept volatile.
+    private volatile int currentRoom;
+    private volatile Direction currentDirection;
     private PrintWriter replyWriter = null;
+    private volatile OutboundQueue replyQueue = null;
     private DataOutputStream outputWriter = null;
+    // Whether the client keeps its own copy of the room from room deltas, and whether
+    //  a BATCH of theirs is running (its commands answer with one fence at the end).
+    private volatile boolean roomDeltas;
+    private volatile boolean batching;
 
     public Player(String name) {
         this.currentRoom = 1;
         this.currentDirection = Direction.NORTH;
         this.name = name;
-        this.currentInventory = new LinkedList<>();
     }
     
     public void turnLeft() {
@@ -64,16 +73,44 @@ public class Player {
         this.name = name;
     }
 
-    public LinkedList<String> getCurrentInventory() {
-        return currentInventory;
+    /**
+     * @return A copy of the names of what the player carries, in the order picked up.
+     */
+    public synchronized LinkedList<String> getCurrentInventory() {
+        LinkedList<String> names = new LinkedList<>();
+        for(int i = 0; i < this.inventoryCount; i++) {
+            names.add(ItemCatalog.name(this.inventory[i]));
+        }
+        return names;
     }
 
-    public void setCurrentInventory(LinkedList<String> currentInventory) {
-        this.currentInventory = currentInventory;
+    public synchronized void setCurrentInventory(LinkedList<String> currentInventory) {
+        this.clearInventory();
+        for(String object : currentInventory) {
+            this.addObjectToInventory(object);
+        }
+    }
+    
+    public synchronized void addObjectToInventory(String object) {
+        this.addObjectToInventory(ItemCatalog.id(object));
+    }
+    
+    /**
+     * @param item Item id of the object picked up.
+     */
+    public synchronized void addObjectToInventory(int item) {
+        if(this.inventory == null) {
+            this.inventory = new int[4];
+        }
+        else if(this.inventoryCount == this.inventory.length) {
+            this.inventory = Arrays.copyOf(this.inventory, this.inventoryCount * 2);
+        }
+        this.inventory[this.inventoryCount++] = item;
     }
     
-    public void addObjectToInventory(String object) {
-        this.currentInventory.add(object);
+    public synchronized void clearInventory() {
+        this.inventory = null;
+        this.inventoryCount = 0;
     }
     
     public void setReplyWriter(PrintWriter writer) {
@@ -84,6 +121,72 @@ public class Player {
         return this.replyWriter;
     }
     
+    public void setReplyQueue(OutboundQueue queue) {
+        this.replyQueue = queue;
+    }
+    
+    public OutboundQueue getReplyQueue() {
+        return this.replyQueue;
+    }
+    
+    /**
+     * Queues an asynchronous text message for this player.  Never blocks; messages
+     *  sent before the player has registered their reply socket are discarded.
+     * @param message Message to deliver; it can never be taken for a room delta.
+     * @return true if the message was queued.
+     */
+    public boolean sendMessage(String message) {
+        OutboundQueue queue = this.replyQueue;
+        return queue != null && queue.offer(RoomDelta.plain(message));
+    }
+    
+    /**
+     * Queues an asynchronous message for this player, as sendMessage(String) does,
+     *  but exactly as given: text messages must have gone through RoomDelta.plain.
+     *  Broadcasts queue one message object for all recipients.
+     * @param message Message to deliver.
+     * @return true if the message was queued.
+     */
+    public boolean sendMessage(OutboundMessage message) {
+        OutboundQueue queue = this.replyQueue;
+        return queue != null && queue.offer(message);
+    }
+    
+    /**
+     * Closes the reply connection once the messages already queued have gone out.
+     */
+    public void closeReplies() {
+        OutboundQueue queue = this.replyQueue;
+        if(queue != null) {
+            queue.close();
+        }
+        else if(this.replyWriter != null) {
+            this.replyWriter.close();
+        }
+    }
+    
+    /**
+     * @return true if the client asked for room deltas (see RoomDelta).
+     */
+    public boolean wantsRoomDeltas() {
+        return this.roomDeltas;
+    }
+    
+    public void setRoomDeltas(boolean roomDeltas) {
+        this.roomDeltas = roomDeltas;
+    }
+    
+    /**
+     * @return true while a BATCH of this player's commands is running.
+     */
+    public boolean isBatching() {
+        return this.batching;
+    }
+    
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+    
     public void setOutputWriter(DataOutputStream writer) {
         this.outputWriter = writer;
     }
@@ -108,18 +211,19 @@ public class Player {
         return this.currentDirection;
     }
     
-    public String viewInventory() {
-        String result = "";
-        if(this.currentInventory.isEmpty() == true) {
+    public void setDirection(Direction direction) {
+        this.currentDirection = direction;
+    }
+    
+    public synchronized String viewInventory() {
+        if(this.inventoryCount == 0) {
             return "nothing.";
         }
-        else {
-            for(String obj : this.currentInventory) {
-                result += " " + obj;
-            }
-            result += ".";
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < this.inventoryCount; i++) {
+            result.append(' ').append(ItemCatalog.name(this.inventory[i]));
         }
-        return result;
+        return result.append('.').toString();
     }
 
     @Override
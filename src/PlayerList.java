@@ -1,41 +1,72 @@
 
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Thread-safe list of online players, hashed on the case-folded player name.
+ *  Lookups are constant time and iteration is weakly consistent, so broadcasts
+ *  can walk the list while other threads join and leave.
  *
  * @author Kevin
  */
 public class PlayerList implements Iterable<Player> {
-    private final LinkedList<Player> playerList;
-    
+    private final ConcurrentHashMap<String, Player> playerList;
+
     @Override
     public Iterator<Player> iterator() {
-        Iterator<Player> iter = this.playerList.iterator();
+        Iterator<Player> iter = this.playerList.values().iterator();
         return iter;
-    }    
-    
+    }
+
     public PlayerList() {
-        this.playerList = new LinkedList<>();
+        this.playerList = new ConcurrentHashMap<>();
     }
-    
-    public void addPlayer(Player player) {
-        this.playerList.add(player);
+
+    /**
+     * Adds a player unless someone with the same name (case-insensitive) is already online.
+     *  The check and the insert happen atomically.
+     * @param player Player to add.
+     * @return true if the player was added, false if the name is taken.
+     */
+    public boolean addPlayer(Player player) {
+        return this.playerList.putIfAbsent(key(player.getName()), player) == null;
     }
-    
+
     public Player findPlayer(String name) {
-        for(Player player : this.playerList) {
-            if(player.getName().equalsIgnoreCase(name)) {
-                return player;
-            }
+        if(name == null) {
+            return null;
         }
-        return null;
+        return this.playerList.get(key(name));
     }
-    
-    public void removePlayer(String name) {
-        Player player = findPlayer(name);
-        if(player != null) {
-            this.playerList.remove(player);
+
+    /**
+     * Removes the player with the given name (case-insensitive).
+     * @param name Name of the player to remove.
+     * @return Player that was removed, or null if no such player was online.
+     */
+    public Player removePlayer(String name) {
+        if(name == null) {
+            return null;
         }
+        return this.playerList.remove(key(name));
+    }
+
+    /**
+     * Removes the player only if they are still the one online under their name, so
+     *  a stale session cannot remove someone who has since joined with the same name.
+     * @param player Player to remove.
+     * @return true if the player was removed.
+     */
+    public boolean removePlayer(Player player) {
+        return this.playerList.remove(key(player.getName()), player);
+    }
+
+    public int size() {
+        return this.playerList.size();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 }
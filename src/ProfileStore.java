@@ -0,0 +1,590 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable player profiles (room, facing and inventory), keyed by player name.
+ *
+ * Profiles live in one append-only log file, profiles.log in the store directory.
+ *  Saving a profile only marks the player dirty; a writer thread ("profile-writer")
+ *  appends the current state of every dirty player in one write and forces the file
+ *  once for the whole batch (group commit), so commands never wait on the disk and
+ *  a player who changes many times between commits is written once.  A record is
+ *  [length][CRC32][name][room][facing][inventory]; the newest record for a name wins.
+ *
+ * Only an index of name to record position is kept in memory.  A profile is read
+ *  from the file when its player joins.  Opening the store scans the log to rebuild
+ *  the index and cuts off a torn or corrupt tail left by a crash.
+ *
+ * When the log grows to more than twice the size of the live records (and past
+ *  game.profiles.compact bytes, 16 MB by default), the writer thread copies the
+ *  live records into a new log and swaps it in.
+ *
+ * Run as java ProfileStore directory [profiles] to measure write cost, write
+ *  amplification and recovery time for that many profiles.
+ */
+public class ProfileStore {
+    private static final int MAGIC = 0x474D5046; // "GMPF"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_RECORD = 1 << 20;
+    private static final String LOG_NAME = "profiles.log";
+
+    private final File file;
+    private final long compactAbove;
+    private FileChannel channel;
+    private long end;
+
+    // Name (case-folded) to (position << 24 | record length) of its newest record.
+    private final ConcurrentHashMap<String, Long> index;
+    private long liveBytes;
+    // Swapping in a compacted log is exclusive; reading a record is not.
+    private final ReentrantReadWriteLock swap;
+
+    // Players waiting for the next commit, and the batch being committed.
+    private final Object lock;
+    private LinkedHashMap<String, Player> dirty;
+    private LinkedHashMap<String, Player> writing;
+    private boolean closed;
+    private final Thread writer;
+
+    private final AtomicLong saves;
+    private final AtomicLong commits;
+    private final AtomicLong recordsWritten;
+    private final AtomicLong recordBytes;
+    private final AtomicLong diskBytes;
+    private final AtomicLong compactions;
+    private final long recoveryNanos;
+
+    /**
+     * Opens the store in a directory, creating it if needed, and recovers the index.
+     * @param directory Directory holding the profile log.
+     * @throws IOException if the log cannot be opened or is not a profile log.
+     */
+    public ProfileStore(File directory) throws IOException {
+        this(directory, Long.getLong("game.profiles.compact", 16L * 1024 * 1024));
+    }
+
+    /**
+     * Opens the store in a directory, creating it if needed, and recovers the index.
+     * @param directory Directory holding the profile log.
+     * @param compactAbove Smallest log, in bytes, that is worth compacting.
+     * @throws IOException if the log cannot be opened or is not a profile log.
+     */
+    public ProfileStore(File directory, long compactAbove) throws IOException {
+        if(directory.isDirectory() == false && directory.mkdirs() == false) {
+            throw new IOException("Cannot create profile directory " + directory);
+        }
+        this.file = new File(directory, LOG_NAME);
+        this.compactAbove = compactAbove;
+        this.index = new ConcurrentHashMap<>();
+        this.swap = new ReentrantReadWriteLock();
+        this.lock = new Object();
+        this.dirty = new LinkedHashMap<>();
+        this.saves = new AtomicLong();
+        this.commits = new AtomicLong();
+        this.recordsWritten = new AtomicLong();
+        this.recordBytes = new AtomicLong();
+        this.diskBytes = new AtomicLong();
+        this.compactions = new AtomicLong();
+
+        long start = System.nanoTime();
+        this.channel = FileChannel.open(this.file.toPath(), java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+        this.recover();
+        this.recoveryNanos = System.nanoTime() - start;
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ProfileStore.this.writeLoop();
+            }
+        }, "profile-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ProfileStore.this.close();
+            }
+        }, "profile-flush"));
+    }
+
+    /**
+     * Marks a player's profile for saving with the next commit.  Never blocks on
+     *  the disk.
+     * @param player Player whose state changed.
+     */
+    public void save(Player player) {
+        this.saves.incrementAndGet();
+        synchronized(this.lock) {
+            if(this.closed) {
+                return;
+            }
+            this.dirty.put(key(player.getName()), player);
+            this.lock.notify();
+        }
+    }
+
+    /**
+     * Restores a player's stored profile onto a new Player.
+     * @param player Player who is joining, still in the starting room.
+     * @return true if a profile was found and restored.
+     * @throws IOException if the stored record cannot be read.
+     */
+    public boolean restore(Player player) throws IOException {
+        String key = key(player.getName());
+        Player unsaved;
+        synchronized(this.lock) {
+            unsaved = this.dirty.get(key);
+            if(unsaved == null && this.writing != null) {
+                unsaved = this.writing.get(key);
+            }
+        }
+        if(unsaved != null) {
+            // Back before their last changes reached the disk.
+            synchronized(unsaved) {
+                player.setCurrentRoom(unsaved.getCurrentRoom());
+                player.setDirection(unsaved.getDirection());
+                player.setCurrentInventory(new LinkedList<>(unsaved.getCurrentInventory()));
+            }
+            return true;
+        }
+
+        ByteBuffer record;
+        this.swap.readLock().lock();
+        try {
+            Long entry = this.index.get(key);
+            if(entry == null) {
+                return false;
+            }
+            record = ByteBuffer.allocate((int) (entry & 0xFFFFFF));
+            long position = entry >>> 24;
+            while(record.hasRemaining()) {
+                if(this.channel.read(record, position + record.position()) < 0) {
+                    throw new IOException("Profile log ends inside the record for " + player.getName());
+                }
+            }
+        } finally {
+            this.swap.readLock().unlock();
+        }
+        record.flip();
+        record.position(RECORD_HEADER);
+        readString(record);
+        player.setCurrentRoom(record.getInt());
+        player.setDirection(Direction.values()[record.get()]);
+        LinkedList<String> inventory = new LinkedList<>();
+        for(int items = record.getShort() & 0xFFFF; items > 0; items--) {
+            inventory.add(readString(record));
+        }
+        player.setCurrentInventory(inventory);
+        return true;
+    }
+
+    /**
+     * Writes out everything still waiting and closes the log.  Saves made after
+     *  this are ignored.
+     */
+    public void close() {
+        synchronized(this.lock) {
+            if(this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.lock.notify();
+        }
+        try {
+            this.writer.join(10000);
+            this.channel.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            GameLog.error("Could not close the profile log", ex);
+        }
+    }
+
+    /**
+     * @return Number of stored profiles.
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * @return Size of the log file in bytes.
+     */
+    public long getLogBytes() {
+        return this.end;
+    }
+
+    /**
+     * @return Bytes written to disk (appends and compaction copies) per byte of
+     *  profile changes asked for.  Below 1 when several changes to a player were
+     *  folded into one record.
+     */
+    public double getWriteAmplification() {
+        long records = this.recordsWritten.get();
+        if(records == 0 || this.saves.get() == 0) {
+            return 0;
+        }
+        double averageRecord = (double) this.recordBytes.get() / records;
+        return this.diskBytes.get() / (averageRecord * this.saves.get());
+    }
+
+    /**
+     * @return One line describing the store.
+     */
+    public String report() {
+        long commits = this.commits.get();
+        return String.format(Locale.ROOT, "Profiles: %d stored, %.1f MB log, %d saves in %d commits (%.1f records each), "
+                + "write amplification %.2f, %d compactions, recovered in %d ms",
+                this.size(), this.end / 1048576.0, this.saves.get(), commits,
+                commits == 0 ? 0.0 : (double) this.recordsWritten.get() / commits,
+                this.getWriteAmplification(), this.compactions.get(), this.recoveryNanos / 1000000);
+    }
+
+    private void writeLoop() {
+        while(true) {
+            LinkedHashMap<String, Player> batch;
+            synchronized(this.lock) {
+                while(this.dirty.isEmpty() && this.closed == false) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException ex) {
+                        // Only close() stops the writer.
+                    }
+                }
+                if(this.dirty.isEmpty()) {
+                    return;
+                }
+                batch = this.dirty;
+                this.writing = batch;
+                this.dirty = new LinkedHashMap<>();
+            }
+            try {
+                this.commit(batch);
+                if(this.end > this.compactAbove && this.end > 2 * this.liveBytes) {
+                    this.compact();
+                }
+            } catch (IOException ex) {
+                GameLog.error("Could not write " + batch.size() + " player profiles", ex);
+            }
+            synchronized(this.lock) {
+                this.writing = null;
+            }
+        }
+    }
+
+    private void commit(LinkedHashMap<String, Player> batch) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(Math.max(4096, batch.size() * 64));
+        String[] keys = new String[batch.size()];
+        long[] entries = new long[batch.size()];
+        int count = 0;
+        for(java.util.Map.Entry<String, Player> dirtyPlayer : batch.entrySet()) {
+            byte[] record;
+            try {
+                record = encode(dirtyPlayer.getValue());
+            } catch (IllegalArgumentException ex) {
+                // Their last good profile stays as it is.
+                GameLog.error("Could not save the profile of " + dirtyPlayer.getValue().getName(), ex);
+                continue;
+            }
+            if(out.remaining() < record.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + record.length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            keys[count] = dirtyPlayer.getKey();
+            entries[count++] = ((this.end + out.position()) << 24) | record.length;
+            out.put(record);
+        }
+        out.flip();
+        int length = out.remaining();
+        while(out.hasRemaining()) {
+            this.channel.write(out, this.end + out.position());
+        }
+        // One force for the whole batch.
+        this.channel.force(false);
+        this.end += length;
+        for(int i = 0; i < count; i++) {
+            Long previous = this.index.put(keys[i], entries[i]);
+            this.liveBytes += (entries[i] & 0xFFFFFF) - (previous == null ? 0 : previous & 0xFFFFFF);
+        }
+        this.commits.incrementAndGet();
+        this.recordsWritten.addAndGet(count);
+        this.recordBytes.addAndGet(length);
+        this.diskBytes.addAndGet(length);
+    }
+
+    /**
+     * Copies the live records into a new log, then swaps it in.
+     */
+    private void compact() throws IOException {
+        File compacted = new File(this.file.getPath() + ".compact");
+        java.util.HashMap<String, Long> moved = new java.util.HashMap<>();
+        long written = HEADER_SIZE;
+        try (RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+             FileChannel out = target.getChannel()) {
+            target.setLength(0);
+            ByteBuffer buffer = ByteBuffer.allocate(4 << 20);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            Scanner scanner = new Scanner(this.channel, this.end);
+            ByteBuffer record;
+            while((record = scanner.next()) != null) {
+                String key = key(scanner.name);
+                Long entry = this.index.get(key);
+                if(entry == null || entry >>> 24 != scanner.position) {
+                    continue;
+                }
+                if(buffer.remaining() < record.remaining()) {
+                    buffer.flip();
+                    while(buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                moved.put(key, (written << 24) | record.remaining());
+                written += record.remaining();
+                buffer.put(record);
+            }
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+
+        this.swap.writeLock().lock();
+        try {
+            Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.channel.close();
+            this.channel = FileChannel.open(this.file.toPath(), java.nio.file.StandardOpenOption.READ,
+                    java.nio.file.StandardOpenOption.WRITE);
+            this.index.putAll(moved);
+            this.end = written;
+            this.liveBytes = written - HEADER_SIZE;
+        } finally {
+            this.swap.writeLock().unlock();
+        }
+        this.diskBytes.addAndGet(written);
+        this.compactions.incrementAndGet();
+        GameLog.info("Compacted the profile log to " + (written >> 10) + " KB for " + moved.size() + " profiles");
+    }
+
+    /**
+     * Rebuilds the index from the log, cutting off a torn or corrupt tail.
+     */
+    private void recover() throws IOException {
+        long size = this.channel.size();
+        if(size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            this.channel.write(header, 0);
+            this.channel.force(true);
+            this.end = HEADER_SIZE;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        this.channel.read(header, 0);
+        if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException(this.file + " is not a version " + VERSION + " profile log");
+        }
+        Scanner scanner = new Scanner(this.channel, size);
+        ByteBuffer record;
+        while((record = scanner.next()) != null) {
+            Long previous = this.index.put(key(scanner.name), (scanner.position << 24) | record.remaining());
+            this.liveBytes += record.remaining() - (previous == null ? 0 : previous & 0xFFFFFF);
+        }
+        this.end = scanner.position;
+        if(this.end < size) {
+            GameLog.warn("Profile log " + this.file + " had " + (size - this.end) + " bytes of damaged tail, cut off");
+            this.channel.truncate(this.end);
+        }
+    }
+
+    /**
+     * Reads the records of a log in order through a large buffer.
+     */
+    private static final class Scanner {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer;
+        private long bufferStart;
+        private final CRC32 crc;
+        // Position and name of the record last returned; after the last record,
+        //  position is where the good part of the log ends.
+        long position;
+        String name;
+
+        Scanner(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            this.buffer = ByteBuffer.allocate(4 << 20);
+            this.buffer.limit(0);
+            this.bufferStart = HEADER_SIZE;
+            this.position = HEADER_SIZE;
+            this.crc = new CRC32();
+        }
+
+        /**
+         * @return The next record, header included, as a buffer positioned over it,
+         *  or null at the end of the log or at the first damaged record.
+         */
+        ByteBuffer next() throws IOException {
+            if(this.name != null) {
+                this.position += this.buffer.getInt((int) (this.position - this.bufferStart)) + RECORD_HEADER;
+            }
+            if(this.fill(RECORD_HEADER) == false) {
+                return null;
+            }
+            int offset = (int) (this.position - this.bufferStart);
+            int length = this.buffer.getInt(offset);
+            if(length <= 0 || length > MAX_RECORD || this.fill(RECORD_HEADER + length) == false) {
+                return null;
+            }
+            offset = (int) (this.position - this.bufferStart);
+            this.crc.reset();
+            this.crc.update(this.buffer.array(), offset + RECORD_HEADER, length);
+            if((int) this.crc.getValue() != this.buffer.getInt(offset + 4)) {
+                return null;
+            }
+            ByteBuffer record = this.buffer.duplicate();
+            record.limit(offset + RECORD_HEADER + length).position(offset + RECORD_HEADER);
+            this.name = readString(record);
+            record.position(offset);
+            return record;
+        }
+
+        // Makes sure bytes [position, position + needed) are in the buffer.
+        private boolean fill(int needed) throws IOException {
+            if(this.position + needed > this.size) {
+                return false;
+            }
+            if(this.position + needed <= this.bufferStart + this.buffer.limit()) {
+                return true;
+            }
+            // Move what is left of the buffer down and read more behind it.
+            this.buffer.position((int) (this.position - this.bufferStart));
+            this.buffer.compact();
+            this.bufferStart = this.position;
+            while(this.buffer.hasRemaining() && this.bufferStart + this.buffer.position() < this.size) {
+                if(this.channel.read(this.buffer, this.bufferStart + this.buffer.position()) < 0) {
+                    break;
+                }
+            }
+            this.buffer.flip();
+            return this.position + needed <= this.bufferStart + this.buffer.limit();
+        }
+    }
+
+    /**
+     * Lengths and the item count are written as unsigned shorts, and a record longer
+     *  than MAX_RECORD would be taken for a corrupt tail when the log is next opened,
+     *  so a profile that does not fit is refused rather than cut short.
+     * @param player Player to save.
+     * @return The record, header included.
+     * @throws IllegalArgumentException if the profile does not fit in a record.
+     */
+    private static byte[] encode(Player player) {
+        byte[] name = fit(player.getName().getBytes(StandardCharsets.UTF_8), "Name");
+        LinkedList<String> inventory;
+        synchronized(player) {
+            inventory = new LinkedList<>(player.getCurrentInventory());
+        }
+        if(inventory.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Inventory of " + inventory.size() + " items is too large to save");
+        }
+        byte[][] items = new byte[inventory.size()][];
+        int size = RECORD_HEADER + 2 + name.length + 4 + 1 + 2;
+        int i = 0;
+        for(String item : inventory) {
+            items[i] = fit(item.getBytes(StandardCharsets.UTF_8), "Item name");
+            size += 2 + items[i++].length;
+        }
+        if(size - RECORD_HEADER > MAX_RECORD) {
+            throw new IllegalArgumentException("Profile of " + (size - RECORD_HEADER) + " bytes is too large to save");
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.position(RECORD_HEADER);
+        record.putShort((short) name.length).put(name);
+        record.putInt(player.getCurrentRoom());
+        record.put((byte) player.getDirection().ordinal());
+        record.putShort((short) items.length);
+        for(byte[] item : items) {
+            record.putShort((short) item.length).put(item);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, size - RECORD_HEADER);
+        record.putInt(0, size - RECORD_HEADER).putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static byte[] fit(byte[] text, String what) {
+        if(text.length > 0xFFFF) {
+            throw new IllegalArgumentException(what + " of " + text.length + " bytes is too long to save");
+        }
+        return text;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length < 1) {
+            System.out.println("[SHUTDOWN] .. Run as java ProfileStore directory [profiles]");
+            System.exit(-1);
+        }
+        File directory = new File(args[0]);
+        int profiles = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        String[] objects = {"Flower", "Textbook", "Phone", "Newspaper"};
+
+        ProfileStore store = new ProfileStore(directory);
+        System.out.println("Opened " + store.size() + " profiles");
+        long start = System.nanoTime();
+        // Every player is saved three times (joined, moved, picked something up) in
+        //  quick succession, the way a short session would.
+        for(int i = 0; i < profiles; i++) {
+            Player player = new Player("Player" + i);
+            store.save(player);
+            player.setCurrentRoom(1 + i % 1000);
+            store.save(player);
+            player.addObjectToInventory(objects[i % objects.length]);
+            store.save(player);
+        }
+        store.close();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.ROOT, "Saved %d profiles (%d saves) in %d ms, %.2f us per save",
+                profiles, 3L * profiles, elapsed / 1000000, elapsed / 1000.0 / (3.0 * profiles)));
+        System.out.println(store.report());
+
+        start = System.nanoTime();
+        ProfileStore reopened = new ProfileStore(directory);
+        System.out.println("Recovered " + reopened.size() + " profiles in " + ((System.nanoTime() - start) / 1000000) + " ms");
+        Player check = new Player("player" + (profiles - 1));
+        reopened.restore(check);
+        System.out.println("Last profile: room " + check.getCurrentRoom() + ", facing " + check.getDirection()
+                + ", carrying" + check.viewInventory());
+        reopened.close();
+    }
+}
@@ -1,37 +1,149 @@
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
  *
  * @author Kevin
  */
 public class Room {
+    // Most objects a room holds at once.
+    private static final int MAX_OBJECTS = 5;
+    
     private final int id;
     private final String title;
     private final String description;
-    private final LinkedList<String> objects;
-    private final LinkedList<Exit> exits;
+    // Item ids (see ItemCatalog) of the objects on the ground, in the order dropped;
+    //  null until the first drop.
+    private int[] objects;
+    private int objectCount;
+    // Exits indexed by Direction.ordinal(), and the open directions pre-rendered in map order.
+    private final Exit[] exits;
+    private String exitNames;
+    
+    // Rendering caches.  The title, description and exits never change once the map is
+    //  loaded, so they are rendered once.  The objects line is re-rendered after the
+    //  objects change, and a whole view is kept per facing direction until either the
+    //  objects or the occupants move on to a new version.
+    //
+    // The objects, their version and the objects line are guarded by the room's own
+    //  lock (the room itself), so rooms never contend with each other.
+    private final String header;
+    private volatile String footer;
+    private volatile String objectsLine;
+    private volatile int objectsVersion;
+    private final View[] views;
     
     public Room(int id, String title, String description) {
-        this.objects = new LinkedList<>();
-        this.exits = new LinkedList<>();        
+        this.exits = new Exit[Direction.values().length];
+        this.exitNames = "";
+        this.views = new View[Direction.values().length];
         
         this.id = id;
         this.title = title;
         this.description = description;
+        this.header = ".-------------------------\n"
+                + "| " + title + "\n"
+                + "-------------------------\n"
+                + description + "\n"
+                + "...................\n";
+    }
+    
+    /**
+     * One rendered view of the room, and the state it was rendered from.
+     */
+    private static final class View {
+        final RoomOccupants occupants;
+        final int occupantsVersion;
+        final int objectsVersion;
+        final String text;
+        
+        View(RoomOccupants occupants, int occupantsVersion, int objectsVersion, String text) {
+            this.occupants = occupants;
+            this.occupantsVersion = occupantsVersion;
+            this.objectsVersion = objectsVersion;
+            this.text = text;
+        }
+    }
+    
+    /**
+     * Renders the room as a player facing some direction sees it.  Repeated looks at an
+     *  unchanged room return the same string without building it again.
+     * @param occupants Players in the room.
+     * @param player Player looking at the room.
+     * @return The LOOK text.
+     */
+    public String toString(RoomOccupants occupants, Player player) {
+        Direction facing = player.getDirection();
+        // Versions are read before the state they describe, so a view built while the
+        //  room changes is tagged as older than it is and simply rebuilt next time.
+        int occupantsVersion = occupants.getVersion();
+        int objectsVersion = this.objectsVersion;
+        View view = this.views[facing.ordinal()];
+        if(view != null && view.occupants == occupants
+                && view.occupantsVersion == occupantsVersion && view.objectsVersion == objectsVersion) {
+            return view.text;
+        }
+        
+        String objectsLine = this.objectsLine;
+        if(objectsLine == null) {
+            objectsLine = objectsLine(this.getObjects());
+            synchronized(this) {
+                // Keep it only if the objects did not change while we were rendering.
+                if(this.objectsVersion == objectsVersion) {
+                    this.objectsLine = objectsLine;
+                }
+            }
+        }
+        String text = render(this.header, objectsLine, occupants.getNames(), this.getFooter(), facing.name());
+        this.views[facing.ordinal()] = new View(occupants, occupantsVersion, objectsVersion, text);
+        return text;
     }
     
-    public String toString(PlayerList playerList, Player player) {
-        String result = ".-------------------------\n";
-        result += "| " + this.getTitle() + "\n";
-        result += "-------------------------\n";
-        result += this.getDescription() + "\n";
-        result += "...................\n";
-        result += "Objects in the area: " + this.getObjects() + "\n";
-        result += "Players in the area: " + this.getPlayers(playerList) + "\n";
-        result += "You see paths in these directions: " + this.getExits() + "\n";
-        result += "...................\n";
-        result += "You are facing: " + player.getCurrentDirection() + "\n";
-        return result;
+    /**
+     * Puts a LOOK together from its parts.  Clients keeping their own copy of the room
+     *  (see RoomModel) render it with this too, so both LOOKs read the same.
+     * @param header Title and description, as getHeader() returns them.
+     * @param objectsLine Objects line, as objectsLine() returns it.
+     * @param players Names of the players in the room, as RoomOccupants.getNames() returns them.
+     * @param footer Exits, as getFooter() returns them.
+     * @param facing Name of the direction the player faces.
+     * @return The LOOK text.
+     */
+    public static String render(String header, String objectsLine, String players, String footer, String facing) {
+        return new StringBuilder(header.length() + objectsLine.length() + players.length() + footer.length() + 64)
+                .append(header)
+                .append(objectsLine)
+                .append("Players in the area: ").append(players).append('\n')
+                .append(footer)
+                .append("You are facing: ").append(facing).append('\n')
+                .toString();
+    }
+    
+    /**
+     * @param objects Objects on the ground, as getObjects() returns them.
+     * @return The objects line of a LOOK.
+     */
+    public static String objectsLine(String objects) {
+        return "Objects in the area: " + objects + "\n";
+    }
+    
+    /**
+     * @return The part of a LOOK above the objects: title and description.
+     */
+    public String getHeader() {
+        return this.header;
+    }
+    
+    /**
+     * @return The part of a LOOK below the players: the exits.
+     */
+    public String getFooter() {
+        String footer = this.footer;
+        if(footer == null) {
+            footer = "You see paths in these directions: " + this.getExits() + "\n"
+                    + "...................\n";
+            this.footer = footer;
+        }
+        return footer;
     }
     
     public int getId() {
@@ -39,44 +151,39 @@ public class Room {
     }
     
     public String getExits() {
-        String result = "";
-        for(Exit exit : this.exits) {
-            if(exit.getRoom() != 0) {
-                result += exit.getDirection().name() + " ";
-            }
-        }
-        return result;
+        return this.exitNames;
     }
     
+    /**
+     * Adds an exit while the map is being loaded.  Only the first exit given for a
+     *  direction counts.
+     * @param direction Direction of the exit.
+     * @param room Id of the room it leads to, 0 if it leads nowhere.
+     * @param message Message shown to a player taking the exit.
+     */
     public void addExit(Direction direction, int room, String message) {
-        exits.add(new Exit(direction, room, message));
+        if(this.exits[direction.ordinal()] == null) {
+            this.exits[direction.ordinal()] = new Exit(direction, room, message);
+            if(room != 0) {
+                this.exitNames += direction.name() + " ";
+                this.footer = null;
+            }
+        }
     }
     
     public boolean canExit(Direction direction) {
-        for(Exit exit : this.exits) {
-            if(exit.getDirection() == direction) {
-                return exit.getRoom() != 0;
-            }
-        }
-        return false;
+        Exit exit = this.exits[direction.ordinal()];
+        return exit != null && exit.getRoom() != 0;
     }
     
     public String exitMessage(Direction direction) {
-        for(Exit exit : this.exits) {
-            if(exit.getDirection() == direction) {
-                return exit.getMessage();
-            }
-        }
-        return null;
+        Exit exit = this.exits[direction.ordinal()];
+        return exit == null ? null : exit.getMessage();
     }
     
     public int getLink(Direction direction) {
-        for(Exit exit : this.exits) {
-            if(exit.getDirection() == direction) {
-                return exit.getRoom();
-            }
-        }
-        return 0; 
+        Exit exit = this.exits[direction.ordinal()];
+        return exit == null ? 0 : exit.getRoom();
     }
     
     public String getDescription() {
@@ -88,43 +195,100 @@ public class Room {
     }
     
     public String getObjects() {
-        if(this.objects.isEmpty()) {
-            return "None.";
-        }
-        else {
-            return this.objects.toString();
+        synchronized(this) {
+            if(this.objectCount == 0) {
+                return "None.";
+            }
+            else {
+                return ItemCatalog.list(this.objects, this.objectCount);
+            }
         }
     }
     
-    public void addObject(String obj) {
-        if(this.objects.size() < 5) {
-            this.objects.add(obj);
+    /**
+     * @return Item ids of the objects on the ground, in the order dropped.
+     */
+    public int[] getObjectIds() {
+        synchronized(this) {
+            return this.objectCount == 0 ? new int[0] : Arrays.copyOf(this.objects, this.objectCount);
         }
     }
     
-    public String removeObject(String target) {
-        for(String obj : this.objects) {
-            if(obj.equalsIgnoreCase(target)) {
-                this.objects.remove(obj);
-                return obj;
-            }
-        }
-        return null;
+    /**
+     * @return Number that changes every time an object is dropped or taken.  Read it
+     *  under the room's lock to match it with the objects.
+     */
+    public int getObjectsVersion() {
+        return this.objectsVersion;
+    }
+    
+    /**
+     * Drops an object in the room, unless the room already holds five.
+     * @param obj Object to drop.
+     * @return true if the object was dropped, false if the room was full.
+     */
+    public boolean addObject(String obj) {
+        return this.addObject(ItemCatalog.id(obj));
     }
     
-    public String getPlayers(PlayerList players) {
-        String localPlayers = "";
-        for(Player player : players) {
-System.err.println("Checking to see if " + player.getName() + " in room " + player.getCurrentRoom() + " is in this room (" + this.id + ")");
-            if(player.getCurrentRoom() == this.id) {
-                localPlayers += player.getName() + " ";
+    /**
+     * Drops an object in the room, unless the room already holds five.
+     * @param item Item id of the object to drop.
+     * @return true if the object was dropped, false if the room was full.
+     */
+    public boolean addObject(int item) {
+        synchronized(this) {
+            if(this.objectCount < MAX_OBJECTS) {
+                if(this.objects == null) {
+                    this.objects = new int[MAX_OBJECTS];
+                }
+                this.objects[this.objectCount++] = item;
+                this.objectsChanged();
+                return true;
             }
+            return false;
         }
-        if(localPlayers.equals("")) {
-            return "None.";
+    }
+    
+    /**
+     * Takes an object out of the room if it is there.  Checking and taking happen
+     *  under the room's lock, so when two players reach for the last one only one
+     *  of them gets it.
+     * @param target Case-insensitive name of the object.
+     * @return The object taken, or null if there was none.
+     */
+    public String removeObject(String target) {
+        int item = this.takeObject(target);
+        return item < 0 ? null : ItemCatalog.name(item);
+    }
+    
+    /**
+     * Takes an object out of the room if it is there, as removeObject does.
+     * @param target Case-insensitive name of the object.
+     * @return Item id of the object taken, or -1 if there was none.
+     */
+    public int takeObject(String target) {
+        int group = ItemCatalog.group(target);
+        if(group < 0) {
+            return -1;
         }
-        else {
-            return localPlayers;
+        synchronized(this) {
+            for(int i = 0; i < this.objectCount; i++) {
+                int item = this.objects[i];
+                if(ItemCatalog.groupOf(item) == group) {
+                    System.arraycopy(this.objects, i + 1, this.objects, i, this.objectCount - i - 1);
+                    this.objectCount--;
+                    this.objectsChanged();
+                    return item;
+                }
+            }
+            return -1;
         }
     }
+    
+    // Called with the room's lock held.
+    private void objectsChanged() {
+        this.objectsLine = null;
+        this.objectsVersion++;
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * Wire format of room deltas: structured changes to the room a player stands in,
+ *  sent on the event socket to clients that asked for them, so the client can keep
+ *  its own copy of the room (see RoomModel) and answer LOOK without asking the server.
+ *
+ * The server offers deltas by answering the name line with "ACK\tROOM-DELTAS"
+ *  instead of "ACK"; a client that wants them sends "ROOM-DELTAS" on a line of its
+ *  own.  Older clients ignore the offer and older servers never make it.
+ *
+ * Every delta is one line starting with MARK, followed by its type and tab separated
+ *  fields.  Text messages never hold MARK (see plain), so no line of one can pass
+ *  for a delta:
+ *  <pre>
+ *  R flags room occupantsVersion objectsVersion facing header footer objectCount object... player...
+ *  E room occupantsVersion name      a player came into the room
+ *  L room occupantsVersion name      a player left the room
+ *  D room objectsVersion item        an object was dropped
+ *  T room objectsVersion item        an object was taken
+ *  F facing                          the player's own command changed nothing else
+ *  X                                 deltas were lost, the copy may be wrong
+ *  </pre>
+ * R is the whole room as the player sees it.  Room changes carry the room's version
+ *  after the change; a client applies a change whose version is one past its own,
+ *  ignores one it has already seen, and knows it missed something otherwise.
+ *
+ * LEFT, RIGHT, MOVE, GOTO and LOOK answer their player with exactly one F or R
+ *  marked FENCE, and a BATCH with one at the end, so a client counting the commands
+ *  it sent knows when its copy has caught up with them.
+ */
+public final class RoomDelta {
+    /** Offered after the ACK, and sent back by clients that want deltas. */
+    public static final String CAPABILITY = "ROOM-DELTAS";
+    /** First character of every delta line. */
+    public static final char MARK = '\u0001';
+
+    public static final char ROOM = 'R';
+    public static final char ENTERED = 'E';
+    public static final char LEFT = 'L';
+    public static final char DROPPED = 'D';
+    public static final char TAKEN = 'T';
+    public static final char FACING = 'F';
+    public static final char LOST = 'X';
+
+    /** R flag: show the room to the player, as the LOOK after a walk. */
+    public static final int SHOW = 1;
+    /** R flag: answers one of the player's commands. */
+    public static final int FENCE = 2;
+
+    private RoomDelta() {
+    }
+
+    /**
+     * Describes a room as one player sees it.  The room's objects and occupants are
+     *  each read under their own lock together with their version, so the copy made
+     *  from it matches the versions exactly.
+     * @param flags SHOW and/or FENCE.
+     * @param room Room the player stands in.
+     * @param occupants Players in the room.
+     * @param player Player the room is shown to.
+     * @return The R delta.
+     */
+    public static String room(int flags, Room room, RoomOccupants occupants, Player player) {
+        StringBuilder delta = new StringBuilder(512).append(MARK).append(ROOM)
+                .append('\t').append(flags)
+                .append('\t').append(room.getId());
+        int[] objects;
+        int objectsVersion;
+        synchronized(room) {
+            objects = room.getObjectIds();
+            objectsVersion = room.getObjectsVersion();
+        }
+        StringBuilder players = new StringBuilder();
+        synchronized(occupants) {
+            delta.append('\t').append(occupants.getVersion());
+            for(Player occupant : occupants) {
+                players.append('\t');
+                escape(occupant.getName(), players);
+            }
+        }
+        delta.append('\t').append(objectsVersion)
+                .append('\t').append(player.getDirection().name())
+                .append('\t');
+        escape(room.getHeader(), delta);
+        delta.append('\t');
+        escape(room.getFooter(), delta);
+        delta.append('\t').append(objects.length);
+        for(int item : objects) {
+            delta.append('\t');
+            escape(ItemCatalog.name(item), delta);
+        }
+        return delta.append(players).toString();
+    }
+
+    /**
+     * Describes one change to a room.
+     * @param type ENTERED, LEFT, DROPPED or TAKEN.
+     * @param roomId Id of the room.
+     * @param version Version of the occupants (ENTERED, LEFT) or of the objects
+     *  (DROPPED, TAKEN) after the change.
+     * @param value Name of the player or of the object.
+     * @return The delta.
+     */
+    public static String change(char type, int roomId, int version, String value) {
+        StringBuilder delta = new StringBuilder(value.length() + 24).append(MARK).append(type)
+                .append('\t').append(roomId)
+                .append('\t').append(version)
+                .append('\t');
+        escape(value, delta);
+        return delta.toString();
+    }
+
+    /**
+     * @param facing Direction the player faces.
+     * @return The F delta.
+     */
+    public static String facing(Direction facing) {
+        return MARK + "" + FACING + '\t' + facing.name();
+    }
+
+    /**
+     * @return The X delta.
+     */
+    public static String lost() {
+        return MARK + "" + LOST;
+    }
+
+    /**
+     * Makes text safe to send as a plain message: any MARK in it, which could start
+     *  a line a client would take for a delta, is replaced.
+     * @param text Text of a message, which may hold what players typed.
+     * @return The text without MARK.
+     */
+    public static String plain(String text) {
+        return text.indexOf(MARK) < 0 ? text : text.replace(MARK, '\uFFFD');
+    }
+
+    /**
+     * @param text Text of a message.
+     * @return true if it is a delta.
+     */
+    public static boolean isDelta(String text) {
+        return text.length() > 0 && text.charAt(0) == MARK;
+    }
+
+    /**
+     * Escapes the characters a field cannot hold: tabs, line breaks and backslashes.
+     * @param value Field value.
+     * @param out Where the escaped value is appended.
+     */
+    static void escape(String value, StringBuilder out) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Reverses escape().
+     * @param field Escaped field.
+     * @return The original value.
+     */
+    static String unescape(String field) {
+        if(field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder value = new StringBuilder(field.length());
+        for(int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if(c == '\\' && i + 1 < field.length()) {
+                c = field.charAt(++i);
+                switch(c) {
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                }
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+
+/**
+ * The client's own copy of the room its player stands in, kept up to date from the
+ *  room deltas on the event socket (see RoomDelta), so LOOK is answered without
+ *  asking the server.
+ *
+ * The copy is only used while it is known to be current: a whole room has arrived,
+ *  no change since has been missed, and every command sent that answers with a fence
+ *  has had its fence back.  Otherwise LOOK goes to the server as before, and the
+ *  server sends a new copy along with its answer.
+ */
+public class RoomModel {
+    private boolean enabled;
+    private boolean current;
+    // Commands sent whose fence has not come back yet.
+    private int fences;
+    private int roomId;
+    private int occupantsVersion;
+    private int objectsVersion;
+    private String facing;
+    private String header;
+    private String footer;
+    private final ArrayList<String> objects;
+    private final ArrayList<String> players;
+
+    public RoomModel() {
+        this.objects = new ArrayList<>();
+        this.players = new ArrayList<>();
+    }
+
+    /**
+     * @return true once the server has sent a whole room.
+     */
+    public synchronized boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Notes a LEFT, RIGHT, MOVE, GOTO, LOOK or BATCH about to be sent; the copy is not
+     *  used again until its fence has come back.
+     */
+    public synchronized void expectFence() {
+        if(this.enabled) {
+            this.fences++;
+        }
+    }
+
+    /**
+     * Stops using the copy until the server sends a new one, eg. after a command
+     *  failed without telling whether it ran.
+     */
+    public synchronized void lost() {
+        this.current = false;
+        this.fences = 0;
+    }
+
+    /**
+     * @return The LOOK text, or null if the copy may be out of date and LOOK has to
+     *  be asked of the server.
+     */
+    public synchronized String look() {
+        if(this.enabled && this.current && this.fences == 0) {
+            return this.render();
+        }
+        return null;
+    }
+
+    /**
+     * Applies one delta from the event socket.  A delta that cannot be read leaves the
+     *  copy out of date until the server sends a new one.
+     * @param line The delta, as received.
+     * @return Text to show the player, or null if there is none.
+     */
+    public synchronized String apply(String line) {
+        if(line.length() < 2 || RoomDelta.isDelta(line) == false) {
+            return null;
+        }
+        try {
+            return this.applyFields(line.charAt(1), line.length() > 3 ? line.substring(3).split("\t", -1) : new String[0]);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            this.lost();
+            return null;
+        }
+    }
+
+    private String applyFields(char type, String[] fields) {
+        switch(type) {
+            case RoomDelta.ROOM:
+                return this.room(fields);
+            case RoomDelta.FACING:
+                this.fenced();
+                this.facing = fields[0];
+                return null;
+            case RoomDelta.ENTERED:
+            case RoomDelta.LEFT:
+            case RoomDelta.DROPPED:
+            case RoomDelta.TAKEN:
+                this.change(type, Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        RoomDelta.unescape(fields[2]));
+                return null;
+            case RoomDelta.LOST:
+                this.lost();
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private String room(String[] fields) {
+        int flags = Integer.parseInt(fields[0]);
+        if((flags & RoomDelta.FENCE) != 0) {
+            this.fenced();
+        }
+        this.roomId = Integer.parseInt(fields[1]);
+        this.occupantsVersion = Integer.parseInt(fields[2]);
+        this.objectsVersion = Integer.parseInt(fields[3]);
+        this.facing = fields[4];
+        this.header = RoomDelta.unescape(fields[5]);
+        this.footer = RoomDelta.unescape(fields[6]);
+        int count = Integer.parseInt(fields[7]);
+        this.objects.clear();
+        for(int i = 0; i < count; i++) {
+            this.objects.add(RoomDelta.unescape(fields[8 + i]));
+        }
+        this.players.clear();
+        for(int i = 8 + count; i < fields.length; i++) {
+            this.players.add(RoomDelta.unescape(fields[i]));
+        }
+        this.enabled = true;
+        this.current = true;
+        return (flags & RoomDelta.SHOW) != 0 ? this.render() : null;
+    }
+
+    private void change(char type, int room, int version, String value) {
+        if(this.current == false || room != this.roomId) {
+            // A change to a room we have already left.
+            return;
+        }
+        boolean occupants = type == RoomDelta.ENTERED || type == RoomDelta.LEFT;
+        int known = occupants ? this.occupantsVersion : this.objectsVersion;
+        if(version <= known) {
+            // Already in the copy.
+            return;
+        }
+        if(version != known + 1) {
+            // Missed a change; wait for a new copy.
+            this.current = false;
+            return;
+        }
+        switch(type) {
+            case RoomDelta.ENTERED:
+                this.players.add(value);
+                break;
+            case RoomDelta.LEFT:
+                this.players.remove(value);
+                break;
+            case RoomDelta.DROPPED:
+                this.objects.add(value);
+                break;
+            case RoomDelta.TAKEN:
+                this.objects.remove(value);
+                break;
+        }
+        if(occupants) {
+            this.occupantsVersion = version;
+        }
+        else {
+            this.objectsVersion = version;
+        }
+    }
+
+    private void fenced() {
+        if(this.fences > 0) {
+            this.fences--;
+        }
+    }
+
+    // Renders the copy exactly as Room.toString renders the room.
+    private String render() {
+        String objectList = this.objects.isEmpty() ? "None." : "[" + String.join(", ", this.objects) + "]";
+        StringBuilder names = new StringBuilder();
+        for(String player : this.players) {
+            names.append(player).append(' ');
+        }
+        return Room.render(this.header, Room.objectsLine(objectList), names.length() == 0 ? "None." : names.toString(),
+                this.footer, this.facing);
+    }
+}
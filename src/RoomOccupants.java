@@ -0,0 +1,105 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The players standing in one room, in the order they arrived.  Keeps the
+ *  "Players in the area" text rendered, and a version number that changes whenever
+ *  someone comes or goes so cached room views know when to re-render.
+ *
+ * Players are kept by arrival number in a concurrent skip list, so coming and going
+ *  costs O(log n) and copies nothing however crowded the room (every player joins
+ *  in the same room), and readers iterate without a lock or a snapshot.
+ */
+public class RoomOccupants implements Iterable<Player> {
+    /** Occupants of a room nobody has ever entered. */
+    public static final RoomOccupants EMPTY = new RoomOccupants();
+
+    private final ConcurrentSkipListMap<Long, Player> players;
+    // Guarded by this: the arrival number of every player here, and the last one given.
+    private final HashMap<Player, Long> arrivals;
+    private long arrived;
+    private volatile int size;
+    private volatile int version;
+    private volatile String names;
+
+    public RoomOccupants() {
+        this.players = new ConcurrentSkipListMap<>();
+        this.arrivals = new HashMap<>();
+    }
+
+    /**
+     * Players may come and go while the iteration runs; it sees each player present
+     *  throughout, and may or may not see the others.  Iterate while holding the
+     *  occupants' lock for an exact list.
+     */
+    @Override
+    public Iterator<Player> iterator() {
+        return this.players.values().iterator();
+    }
+
+    /**
+     * @param player Player coming in.
+     * @return The new version, or 0 if the player was already here.
+     */
+    synchronized int add(Player player) {
+        if(this.arrivals.containsKey(player)) {
+            return 0;
+        }
+        Long arrival = ++this.arrived;
+        this.arrivals.put(player, arrival);
+        this.players.put(arrival, player);
+        this.size++;
+        this.names = null;
+        return ++this.version;
+    }
+
+    /**
+     * @param player Player going out.
+     * @return The new version, or 0 if the player was not here.
+     */
+    synchronized int remove(Player player) {
+        Long arrival = this.arrivals.remove(player);
+        if(arrival == null) {
+            return 0;
+        }
+        this.players.remove(arrival);
+        this.size--;
+        this.names = null;
+        return ++this.version;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return Number that changes every time the occupants change.  Read it while
+     *  holding the occupants' lock to match it with the players iterated.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return Names of the players in the room, space separated, or "None." if it is empty.
+     */
+    public String getNames() {
+        String rendered = this.names;
+        if(rendered == null) {
+            int seen = this.version;
+            StringBuilder localPlayers = new StringBuilder();
+            for(Player player : this.players.values()) {
+                localPlayers.append(player.getName()).append(' ');
+            }
+            rendered = localPlayers.length() == 0 ? "None." : localPlayers.toString();
+            // Only keep it if nobody came or went while we were rendering.
+            synchronized(this) {
+                if(this.version == seen) {
+                    this.names = rendered;
+                }
+            }
+        }
+        return rendered;
+    }
+}
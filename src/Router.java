@@ -0,0 +1,714 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shortest-path routing over the exits of the map, for GOTO.
+ *
+ * Routes are answered from next-hop tables.  The table for a destination holds, for
+ *  every room, the direction of the first step on a shortest path to that
+ *  destination (one byte per room), so following a route costs one array read per
+ *  step and no graph search.  A table is filled by one breadth-first search
+ *  backwards from its destination over the reversed exits.
+ *
+ * A table for every destination takes rooms x rooms bytes.  When that fits in the
+ *  budget (game.routes.memory, 64 MB by default, so up to about 8000 rooms) every
+ *  table is built when the router is created.  Larger worlds keep as many tables as
+ *  fit, evicted least recently used first.  A lookup whose table is not built never
+ *  searches the whole world on the thread asking: it is answered by a breadth-first
+ *  search from both ends at once, which stops where the two meet and so only covers
+ *  the neighbourhood of the route, and the table is built on the router's own thread
+ *  for the lookups that follow.  report() counts both.
+ *
+ * A world image (see WorldImage) carries its router, written when the image is
+ *  compiled: the room graph, the title index and, when they fit in the budget, every
+ *  table.  A router over an image reads them straight from the mapping, so it costs
+ *  nothing at startup and only the tables used are ever paged in.
+ *
+ * Nothing is rebuilt incrementally, because there is nothing to rebuild: the map
+ *  does not change once loaded (a changed map file gets a new world image and a new
+ *  router at the next start), so tables never go stale.  Should rooms ever be edited
+ *  at runtime, every table would have to go, since any of them may route through
+ *  the room edited.
+ *
+ * Run as java Router rooms.xml [more.xml ...] to see what routing a map costs.
+ */
+public class Router {
+    private static final int DIRECTIONS = Direction.values().length;
+
+    // Layout of the routing section of a world image: a header of five ints (rooms,
+    //  exits, titles, offset of the tables or 0, offset of the title entries), then ids,
+    //  links, enteredStart, enteredFrom, the title offsets sorted by title, enteredBy,
+    //  the title entries (length, UTF-8, room number) and last the tables, if any.
+    private static final int IMAGE_HEADER = 20;
+
+    // Rooms are numbered by their position in ids, which is sorted.
+    private final IntBuffer ids;
+    // links[room * DIRECTIONS + direction] is the room that exit leads to, or -1.
+    private final IntBuffer links;
+    // Reversed exits: the rooms entering room r are enteredFrom[enteredStart[r] .. enteredStart[r + 1]).
+    private final IntBuffer enteredStart;
+    private final IntBuffer enteredFrom;
+    private final ByteBuffer enteredBy;
+    // Room numbers by lower case title; the lowest id wins when titles repeat.  A router
+    //  over a world image searches the image's sorted title index instead.
+    private final HashMap<String, Integer> titles;
+    private final ByteBuffer image;
+    private final IntBuffer titleIndex;
+    private final int roomCount;
+
+    // Every table, one after the other, when they all fit: built up front, or mapped from the image.
+    private final ByteBuffer allTables;
+    private final boolean mapped;
+    private final LinkedHashMap<Integer, ByteBuffer> tables;
+    private final int maxTables;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong searchNanos;
+
+    // Builds missing tables in the background, one at a time.  Its thread only runs
+    //  while there are tables to build.
+    private final ThreadPoolExecutor builder;
+    private final Set<Integer> building;
+    private final AtomicLong built;
+    private final AtomicLong buildNanos;
+    // Scratch space for searches between two rooms, kept for reuse.
+    private final ConcurrentLinkedQueue<Scratch> scratch;
+
+    /**
+     * Scratch space for one search between two rooms: what each end has reached, how
+     *  far away and from where.  Rooms count as reached only if marked with the
+     *  current search's number, so nothing has to be cleared between searches.
+     */
+    private static final class Scratch {
+        final int[] forwardSeen;
+        final int[] forwardDistance;
+        final int[] forwardFrom;
+        final int[] forwardQueue;
+        final int[] backwardSeen;
+        final int[] backwardDistance;
+        final int[] backwardTo;
+        final int[] backwardQueue;
+        int search;
+
+        Scratch(int rooms) {
+            this.forwardSeen = new int[rooms];
+            this.forwardDistance = new int[rooms];
+            this.forwardFrom = new int[rooms];
+            this.forwardQueue = new int[rooms];
+            this.backwardSeen = new int[rooms];
+            this.backwardDistance = new int[rooms];
+            this.backwardTo = new int[rooms];
+            this.backwardQueue = new int[rooms];
+        }
+    }
+
+    /**
+     * Builds a router over the map with the table budget named by the
+     *  game.routes.memory system property.
+     * @param map World to route through.
+     */
+    public Router(Map map) {
+        this(map, budget());
+    }
+
+    /**
+     * Builds a router over the map, or opens the one stored in its world image.
+     * @param map World to route through.
+     * @param budget Bytes the next-hop tables may take.
+     */
+    public Router(Map map, long budget) {
+        ByteBuffer section = map.getImage() != null ? map.getImage().getRoutes() : null;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.searchNanos = new AtomicLong();
+        this.builder = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "route-tables");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.building = ConcurrentHashMap.newKeySet();
+        this.built = new AtomicLong();
+        this.buildNanos = new AtomicLong();
+        this.scratch = new ConcurrentLinkedQueue<>();
+        if(section != null) {
+            int rooms = section.getInt(0);
+            int exits = section.getInt(4);
+            int titleCount = section.getInt(8);
+            int tablesAt = section.getInt(12);
+            int position = IMAGE_HEADER;
+            this.roomCount = rooms;
+            this.ids = ints(section, position, rooms);
+            position += 4 * rooms;
+            this.links = ints(section, position, rooms * DIRECTIONS);
+            position += 4 * rooms * DIRECTIONS;
+            this.enteredStart = ints(section, position, rooms + 1);
+            position += 4 * (rooms + 1);
+            this.enteredFrom = ints(section, position, exits);
+            position += 4 * exits;
+            this.titleIndex = ints(section, position, titleCount);
+            position += 4 * titleCount;
+            this.enteredBy = bytes(section, position, exits);
+            this.titles = null;
+            this.image = section;
+            this.mapped = tablesAt != 0;
+            this.allTables = this.mapped ? bytes(section, tablesAt, rooms * rooms) : null;
+            this.tables = this.mapped ? null : new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true);
+            this.maxTables = this.mapped ? rooms : (int) Math.max(1, rooms == 0 ? 0 : budget / rooms);
+            return;
+        }
+
+        int[] roomIds = map.getRoomIds();
+        int rooms = roomIds.length;
+        this.roomCount = rooms;
+        this.ids = IntBuffer.wrap(roomIds);
+        int[] roomLinks = new int[rooms * DIRECTIONS];
+        this.links = IntBuffer.wrap(roomLinks);
+        this.titles = new HashMap<>();
+        this.image = null;
+        this.titleIndex = null;
+        int[] entered = new int[rooms + 1];
+        for(int i = rooms - 1; i >= 0; i--) {
+            Room room = map.peekRoom(roomIds[i]);
+            this.titles.put(room.getTitle().toLowerCase(Locale.ROOT), i);
+            for(Direction direction : Direction.values()) {
+                int link = room.canExit(direction) ? this.indexOf(room.getLink(direction)) : -1;
+                roomLinks[i * DIRECTIONS + direction.ordinal()] = link;
+                if(link >= 0) {
+                    entered[link + 1]++;
+                }
+            }
+        }
+
+        for(int i = 0; i < rooms; i++) {
+            entered[i + 1] += entered[i];
+        }
+        this.enteredStart = IntBuffer.wrap(entered);
+        int[] from = new int[entered[rooms]];
+        byte[] by = new byte[entered[rooms]];
+        int[] filled = Arrays.copyOf(entered, rooms);
+        for(int i = 0; i < roomLinks.length; i++) {
+            int link = roomLinks[i];
+            if(link >= 0) {
+                from[filled[link]] = i / DIRECTIONS;
+                by[filled[link]++] = (byte) (i % DIRECTIONS);
+            }
+        }
+        this.enteredFrom = IntBuffer.wrap(from);
+        this.enteredBy = ByteBuffer.wrap(by);
+
+        this.mapped = false;
+        long fit = rooms == 0 ? 0 : budget / rooms;
+        if(fit >= rooms && (long) rooms * rooms <= Integer.MAX_VALUE) {
+            byte[] all = new byte[rooms * rooms];
+            int[] queue = new int[rooms];
+            for(int i = 0; i < rooms; i++) {
+                System.arraycopy(this.search(i, queue), 0, all, i * rooms, rooms);
+            }
+            this.allTables = ByteBuffer.wrap(all);
+            this.tables = null;
+            this.maxTables = rooms;
+        }
+        else {
+            this.allTables = null;
+            this.maxTables = (int) Math.max(1, fit);
+            this.tables = new LinkedHashMap<>(16, 0.75f, true);
+        }
+    }
+
+    /**
+     * @return Bytes the next-hop tables may take, from the game.routes.memory system property.
+     */
+    public static long budget() {
+        return Long.getLong("game.routes.memory", 64L * 1024 * 1024);
+    }
+
+    /**
+     * Writes the router as the routing section of a world image.  The tables go in
+     *  too if every one of them was built.
+     * @param out Stream positioned where the section starts.
+     * @throws IOException if the section cannot be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        int rooms = this.roomCount;
+        int exits = this.enteredFrom.limit();
+        if(this.titles == null) {
+            throw new IllegalStateException("A router opened from a world image is already written");
+        }
+        TreeMap<String, Integer> sorted = new TreeMap<>(this.titles);
+        int entriesAt = IMAGE_HEADER + 4 * (rooms + rooms * DIRECTIONS + rooms + 1 + exits + sorted.size()) + exits;
+        int[] offsets = new int[sorted.size()];
+        byte[][] names = new byte[sorted.size()][];
+        int position = entriesAt;
+        int i = 0;
+        for(Entry<String, Integer> entry : sorted.entrySet()) {
+            names[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            offsets[i++] = position;
+            position += 4 + names[i - 1].length + 4;
+        }
+        long tablesAt = this.allTables != null ? position : 0;
+        if(this.allTables != null && tablesAt + (long) rooms * rooms > Integer.MAX_VALUE) {
+            throw new IOException("The routing tables would exceed 2 GB; lower game.routes.memory");
+        }
+
+        out.writeInt(rooms);
+        out.writeInt(exits);
+        out.writeInt(sorted.size());
+        out.writeInt((int) tablesAt);
+        out.writeInt(entriesAt);
+        writeInts(out, this.ids);
+        writeInts(out, this.links);
+        writeInts(out, this.enteredStart);
+        writeInts(out, this.enteredFrom);
+        for(int offset : offsets) {
+            out.writeInt(offset);
+        }
+        out.write(this.enteredBy.array(), 0, exits);
+        i = 0;
+        for(Integer room : sorted.values()) {
+            out.writeInt(names[i].length);
+            out.write(names[i++]);
+            out.writeInt(room);
+        }
+        if(this.allTables != null) {
+            out.write(this.allTables.array(), 0, rooms * rooms);
+        }
+    }
+
+    /**
+     * Finds the room a player means by a GOTO argument: a room id or a room title,
+     *  ignoring case.
+     * @param destination Room id or title.
+     * @return Id of the room, or -1 if there is no such room.
+     */
+    public int resolve(String destination) {
+        String trimmed = destination.trim();
+        try {
+            int id = Integer.parseInt(trimmed);
+            if(this.indexOf(id) >= 0) {
+                return id;
+            }
+        } catch (NumberFormatException ex) {
+            // Not an id; try it as a title.
+        }
+        String title = trimmed.toLowerCase(Locale.ROOT);
+        int room = this.titles != null ? this.titles.getOrDefault(title, -1) : this.findTitle(title);
+        return room < 0 ? -1 : this.ids.get(room);
+    }
+
+    // Binary search of the image's title index.
+    private int findTitle(String title) {
+        int low = 0;
+        int high = this.titleIndex.limit() - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = this.titleIndex.get(middle);
+            int length = this.image.getInt(entry);
+            byte[] name = new byte[length];
+            ByteBuffer read = this.image.duplicate();
+            read.position(entry + 4);
+            read.get(name);
+            int order = new String(name, StandardCharsets.UTF_8).compareTo(title);
+            if(order < 0) {
+                low = middle + 1;
+            }
+            else if(order > 0) {
+                high = middle - 1;
+            }
+            else {
+                return this.image.getInt(entry + 4 + length);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Works out a shortest route between two rooms.
+     * @param from Id of the room to start in.
+     * @param to Id of the room to reach.
+     * @return Directions to walk in, in order (empty if from is to), or null if to
+     *  cannot be reached from from.
+     */
+    public Direction[] route(int from, int to) {
+        int start = this.indexOf(from);
+        int goal = this.indexOf(to);
+        if(start < 0 || goal < 0) {
+            return null;
+        }
+        ByteBuffer table = this.table(goal);
+        if(table == null) {
+            return this.searchBetween(start, goal);
+        }
+        ArrayList<Direction> steps = new ArrayList<>();
+        int room = start;
+        while(room != goal) {
+            byte next = table.get(room);
+            if(next == 0) {
+                return null;
+            }
+            Direction direction = Direction.values()[next - 1];
+            steps.add(direction);
+            room = this.links.get(room * DIRECTIONS + direction.ordinal());
+        }
+        return steps.toArray(new Direction[steps.size()]);
+    }
+
+    /**
+     * @return Number of rooms routed over.
+     */
+    public int getRoomCount() {
+        return this.roomCount;
+    }
+
+    /**
+     * @return Number of destinations whose next-hop table is built.
+     */
+    public int getTablesBuilt() {
+        if(this.allTables != null) {
+            return this.roomCount;
+        }
+        synchronized(this.tables) {
+            return this.tables.size();
+        }
+    }
+
+    /**
+     * @return Most next-hop tables kept at once.
+     */
+    public int getMaxTables() {
+        return this.maxTables;
+    }
+
+    /**
+     * @return Bytes taken by the room graph the router keeps (ids, exits and reversed
+     *  exits), on the heap or mapped from the world image.
+     */
+    public long getGraphBytes() {
+        return 4L * this.ids.limit() + 4L * this.links.limit() + 4L * this.enteredStart.limit()
+                + 5L * this.enteredFrom.limit();
+    }
+
+    /**
+     * @return Bytes taken by the next-hop tables built so far, on the heap or mapped
+     *  from the world image.
+     */
+    public long getTableBytes() {
+        return (long) this.getTablesBuilt() * this.roomCount;
+    }
+
+    /**
+     * @return Number of lookups answered by a search between the two rooms, because
+     *  their table was not built.
+     */
+    public long getSearches() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return Number of tables built in the background after a lookup missed them.
+     */
+    public long getTablesBuiltLater() {
+        return this.built.get();
+    }
+
+    /**
+     * @return Fraction of route lookups whose table was already built, 0 to 1.
+     */
+    public double getHitRate() {
+        long found = this.hits.get();
+        long total = found + this.misses.get();
+        return total == 0 ? 1.0 : (double) found / total;
+    }
+
+    /**
+     * @return One line describing the routing tables and what they cost.
+     */
+    public String report() {
+        long searches = this.misses.get();
+        long built = this.built.get();
+        return String.format(Locale.ROOT, "Routes: %d of %d destination tables built (%s), %.1f MB tables + %.1f MB graph%s, hit rate %.1f%%, "
+                + "%d misses searched between the rooms (%.3f ms each), %d tables built in the background (%.2f ms each)",
+                this.getTablesBuilt(), this.roomCount, this.mapped ? "all, mapped" : this.allTables != null ? "all" : "at most " + this.maxTables,
+                this.getTableBytes() / 1048576.0, this.getGraphBytes() / 1048576.0, this.image != null ? " (mapped)" : "",
+                this.getHitRate() * 100, searches, searches == 0 ? 0.0 : this.searchNanos.get() / 1e6 / searches,
+                built, built == 0 ? 0.0 : this.buildNanos.get() / 1e6 / built);
+    }
+
+    /**
+     * @param goal Destination room number.
+     * @return The destination's table, or null if it is not built yet, in which case
+     *  it is queued to be built in the background.
+     */
+    private ByteBuffer table(final int goal) {
+        if(this.allTables != null) {
+            this.hits.incrementAndGet();
+            return bytes(this.allTables, goal * this.roomCount, this.roomCount);
+        }
+        ByteBuffer table;
+        synchronized(this.tables) {
+            table = this.tables.get(goal);
+        }
+        if(table != null) {
+            this.hits.incrementAndGet();
+            return table;
+        }
+        this.misses.incrementAndGet();
+        if(this.building.add(goal)) {
+            this.builder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    ByteBuffer table = ByteBuffer.wrap(Router.this.search(goal, new int[Router.this.roomCount]));
+                    Router.this.buildNanos.addAndGet(System.nanoTime() - start);
+                    Router.this.built.incrementAndGet();
+                    synchronized(Router.this.tables) {
+                        Router.this.tables.put(goal, table);
+                        if(Router.this.tables.size() > Router.this.maxTables) {
+                            Router.this.tables.remove(Router.this.tables.keySet().iterator().next());
+                        }
+                    }
+                    Router.this.building.remove(goal);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Works out a shortest route between two rooms without a table: breadth-first
+     *  searches forwards from the start and backwards from the goal, a whole level at
+     *  a time from whichever end has the fewer rooms waiting, until they meet.  The
+     *  shortest of the meetings found in that level is the shortest route.
+     * @param start Room number to start in.
+     * @param goal Room number to reach.
+     * @return Directions to walk in, or null if the goal cannot be reached.
+     */
+    private Direction[] searchBetween(int start, int goal) {
+        if(start == goal) {
+            return new Direction[0];
+        }
+        long began = System.nanoTime();
+        Scratch scratch = this.scratch.poll();
+        if(scratch == null) {
+            scratch = new Scratch(this.roomCount);
+        }
+        try {
+            if(scratch.search == Integer.MAX_VALUE) {
+                Arrays.fill(scratch.forwardSeen, 0);
+                Arrays.fill(scratch.backwardSeen, 0);
+                scratch.search = 0;
+            }
+            int search = ++scratch.search;
+            int[] forwardSeen = scratch.forwardSeen;
+            int[] forwardDistance = scratch.forwardDistance;
+            int[] forwardFrom = scratch.forwardFrom;
+            int[] forwardQueue = scratch.forwardQueue;
+            int[] backwardSeen = scratch.backwardSeen;
+            int[] backwardDistance = scratch.backwardDistance;
+            int[] backwardTo = scratch.backwardTo;
+            int[] backwardQueue = scratch.backwardQueue;
+
+            forwardSeen[start] = search;
+            forwardDistance[start] = 0;
+            forwardQueue[0] = start;
+            int forwardHead = 0;
+            int forwardTail = 1;
+            backwardSeen[goal] = search;
+            backwardDistance[goal] = 0;
+            backwardQueue[0] = goal;
+            int backwardHead = 0;
+            int backwardTail = 1;
+
+            // The best meeting so far: a step from meetFrom, reached from the start, to
+            //  meetTo, reached from the goal.
+            int best = Integer.MAX_VALUE;
+            int meetFrom = -1;
+            int meetTo = -1;
+            while(best == Integer.MAX_VALUE && forwardHead < forwardTail && backwardHead < backwardTail) {
+                if(forwardTail - forwardHead <= backwardTail - backwardHead) {
+                    int levelEnd = forwardTail;
+                    while(forwardHead < levelEnd) {
+                        int room = forwardQueue[forwardHead++];
+                        for(int direction = 0; direction < DIRECTIONS; direction++) {
+                            int next = this.links.get(room * DIRECTIONS + direction);
+                            if(next < 0) {
+                                continue;
+                            }
+                            if(backwardSeen[next] == search && forwardDistance[room] + 1 + backwardDistance[next] < best) {
+                                best = forwardDistance[room] + 1 + backwardDistance[next];
+                                meetFrom = room;
+                                meetTo = next;
+                            }
+                            if(forwardSeen[next] != search) {
+                                forwardSeen[next] = search;
+                                forwardDistance[next] = forwardDistance[room] + 1;
+                                forwardFrom[next] = room;
+                                forwardQueue[forwardTail++] = next;
+                            }
+                        }
+                    }
+                }
+                else {
+                    int levelEnd = backwardTail;
+                    while(backwardHead < levelEnd) {
+                        int room = backwardQueue[backwardHead++];
+                        for(int i = this.enteredStart.get(room); i < this.enteredStart.get(room + 1); i++) {
+                            int previous = this.enteredFrom.get(i);
+                            if(forwardSeen[previous] == search && forwardDistance[previous] + 1 + backwardDistance[room] < best) {
+                                best = forwardDistance[previous] + 1 + backwardDistance[room];
+                                meetFrom = previous;
+                                meetTo = room;
+                            }
+                            if(backwardSeen[previous] != search) {
+                                backwardSeen[previous] = search;
+                                backwardDistance[previous] = backwardDistance[room] + 1;
+                                backwardTo[previous] = room;
+                                backwardQueue[backwardTail++] = previous;
+                            }
+                        }
+                    }
+                }
+            }
+            if(best == Integer.MAX_VALUE) {
+                return null;
+            }
+
+            Direction[] steps = new Direction[best];
+            int step = forwardDistance[meetFrom];
+            steps[step] = this.direction(meetFrom, meetTo);
+            for(int room = meetFrom, i = step - 1; room != start; room = forwardFrom[room], i--) {
+                steps[i] = this.direction(forwardFrom[room], room);
+            }
+            for(int room = meetTo, i = step + 1; room != goal; room = backwardTo[room], i++) {
+                steps[i] = this.direction(room, backwardTo[room]);
+            }
+            return steps;
+        } finally {
+            this.scratch.add(scratch);
+            this.searchNanos.addAndGet(System.nanoTime() - began);
+        }
+    }
+
+    // The direction of an exit from one room to another.
+    private Direction direction(int from, int to) {
+        for(int direction = 0; direction < DIRECTIONS; direction++) {
+            if(this.links.get(from * DIRECTIONS + direction) == to) {
+                return Direction.values()[direction];
+            }
+        }
+        throw new IllegalStateException("No exit from room " + this.ids.get(from) + " to room " + this.ids.get(to));
+    }
+
+    /**
+     * Breadth-first search backwards from a destination.
+     * @param goal Destination room number.
+     * @param queue Scratch space of one int per room.
+     * @return Next-hop table: for every room, the ordinal + 1 of the direction to
+     *  leave it by, or 0 if the room is the destination or cannot reach it.
+     */
+    private byte[] search(int goal, int[] queue) {
+        byte[] table = new byte[this.roomCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goal;
+        while(head < tail) {
+            int room = queue[head++];
+            for(int i = this.enteredStart.get(room); i < this.enteredStart.get(room + 1); i++) {
+                int previous = this.enteredFrom.get(i);
+                if(table[previous] == 0 && previous != goal) {
+                    table[previous] = (byte) (this.enteredBy.get(i) + 1);
+                    queue[tail++] = previous;
+                }
+            }
+        }
+        return table;
+    }
+
+    private int indexOf(int id) {
+        int low = 0;
+        int high = this.roomCount - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = this.ids.get(middle);
+            if(found < id) {
+                low = middle + 1;
+            }
+            else if(found > id) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static IntBuffer ints(ByteBuffer section, int offset, int count) {
+        return bytes(section, offset, 4 * count).asIntBuffer();
+    }
+
+    private static ByteBuffer bytes(ByteBuffer section, int offset, int count) {
+        ByteBuffer slice = section.duplicate();
+        slice.position(offset);
+        slice.limit(offset + count);
+        return slice.slice();
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        for(int i = 0; i < values.limit(); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.out.println("[SHUTDOWN] .. Run as java Router rooms.xml [more.xml ...]");
+            System.exit(-1);
+        }
+        Map map = new Map(String.join(",", args));
+        long start = System.nanoTime();
+        Router router = new Router(map);
+        System.out.println("Built router over " + router.getRoomCount() + " rooms in "
+                + ((System.nanoTime() - start) / 1000000) + " ms");
+
+        if(router.getRoomCount() == 0) {
+            System.exit(1);
+        }
+        Random rand = new Random(1);
+        int lookups = 10000;
+        long steps = 0;
+        start = System.nanoTime();
+        for(int i = 0; i < lookups; i++) {
+            Direction[] route = router.route(router.ids.get(rand.nextInt(router.roomCount)),
+                    router.ids.get(rand.nextInt(router.roomCount)));
+            steps += route == null ? 0 : route.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.ROOT, "%d random routes in %d ms, %.1f steps on average",
+                lookups, elapsed / 1000000, (double) steps / lookups));
+        System.out.println(router.report());
+        System.out.println(String.format(Locale.ROOT, "Every table would take %.1f MB; one table takes %.1f KB",
+                (double) router.getRoomCount() * router.getRoomCount() / 1048576.0, router.getRoomCount() / 1024.0));
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking socket server driven by a small, fixed set of selector threads.
+ *  - The thread running this object accepts connections and deals them out to the selectors.
+ *  - Each selector thread owns the reads and writes of every connection assigned to it.
+ *  - Subclasses decide what to do with the bytes that arrive on a connection.
+ */
+public abstract class SelectorServer implements Runnable {
+    private final int port;
+    private final SelectorLoop[] loops;
+    private final AtomicInteger connectionCount;
+    private final LongAdder bytesWritten;
+    private ServerSocketChannel listener;
+    private int nextLoop;
+
+    /**
+     * @param port Port to listen on.
+     * @param selectorThreads Number of selector threads sharing the connections.
+     */
+    public SelectorServer(int port, int selectorThreads) {
+        this.port = port;
+        this.loops = new SelectorLoop[Math.max(1, selectorThreads)];
+        this.connectionCount = new AtomicInteger();
+        this.bytesWritten = new LongAdder();
+    }
+
+    /**
+     * Called on a selector thread after new bytes were appended to the connection's input buffer.
+     *  The buffer is in write mode; implementations consume what they can and leave the rest.
+     * @param connection Connection that received data.
+     */
+    protected abstract void onRead(ChannelConnection connection);
+
+    /**
+     * Called once when a connection has been closed, from whichever thread closed it.
+     * @param connection Connection that was closed.
+     */
+    protected void onClose(ChannelConnection connection) {
+    }
+
+    /**
+     * @return A line about the server for the statistics report, or null if it has
+     *  nothing to add.
+     */
+    public String report() {
+        return null;
+    }
+
+    /**
+     * Returns the number of currently open connections.
+     * @return Open connection count.
+     */
+    public int getConnectionCount() {
+        return this.connectionCount.get();
+    }
+
+    /**
+     * Returns the number of bytes written to clients since startup.
+     * @return Bytes written over every connection.
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    void wrote(long bytes) {
+        this.bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void run() {
+        try {
+            for(int i = 0; i < this.loops.length; i++) {
+                this.loops[i] = new SelectorLoop(Selector.open());
+                Thread loopThread = new Thread(this.loops[i], getClass().getSimpleName() + "-selector-" + i);
+                loopThread.setDaemon(true);
+                loopThread.start();
+            }
+
+            this.listener = ServerSocketChannel.open();
+            this.listener.bind(new InetSocketAddress(this.port), 1024);
+            System.err.println("[STARTUP] .. New socket opened on port " + this.port + " (" + this.loops.length + " selector threads)");
+            while(true) {
+                try {
+                    SocketChannel channel = this.listener.accept();
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    ChannelConnection connection = new ChannelConnection(this, channel);
+                    this.connectionCount.incrementAndGet();
+                    this.loops[this.nextLoop].register(connection);
+                    this.nextLoop = (this.nextLoop + 1) % this.loops.length;
+                } catch (IOException ex) {
+                    Logger.getLogger(SelectorServer.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(SelectorServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Bookkeeping for a connection that has just been closed.
+     * @param connection Connection that was closed.
+     */
+    void closed(ChannelConnection connection) {
+        this.connectionCount.decrementAndGet();
+        onClose(connection);
+    }
+
+    /**
+     * One selector and the thread that spins it.  Other threads hand work to the loop
+     *  through its queues and wake the selector up.
+     */
+    class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<ChannelConnection> pendingRegistrations;
+        private final ConcurrentLinkedQueue<ChannelConnection> pendingWrites;
+
+        SelectorLoop(Selector selector) {
+            this.selector = selector;
+            this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+            this.pendingWrites = new ConcurrentLinkedQueue<>();
+        }
+
+        void register(ChannelConnection connection) {
+            this.pendingRegistrations.add(connection);
+            this.selector.wakeup();
+        }
+
+        void requestWrite(ChannelConnection connection) {
+            this.pendingWrites.add(connection);
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            ChannelConnection connection;
+            try {
+                while(true) {
+                    this.selector.select();
+
+                    while((connection = this.pendingRegistrations.poll()) != null) {
+                        try {
+                            connection.attach(this, connection.getChannel().register(this.selector, SelectionKey.OP_READ, connection));
+                        } catch (IOException ex) {
+                            connection.close();
+                        }
+                    }
+                    while((connection = this.pendingWrites.poll()) != null) {
+                        connection.enableWrite();
+                    }
+
+                    Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                    while(keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        connection = (ChannelConnection) key.attachment();
+                        try {
+                            if(key.isReadable()) {
+                                if(connection.read() < 0) {
+                                    connection.close();
+                                    continue;
+                                }
+                                SelectorServer.this.onRead(connection);
+                            }
+                            if(key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException | CancelledKeyException ex) {
+                            connection.close();
+                        } catch (RuntimeException ex) {
+                            // A misbehaving connection must not take the whole selector down with it.
+                            GameLog.error("Closing a connection that failed on its selector thread", ex);
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                Logger.getLogger(SelectorServer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
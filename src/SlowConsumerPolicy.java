@@ -0,0 +1,30 @@
+/**
+ * What a player's outbound queue does when it is full because the client has
+ *  stopped reading its reply socket.
+ */
+public enum SlowConsumerPolicy {
+    /** Throw away the new message. */
+    DROP,
+    /** Throw away the oldest queued message and tell the player how many were skipped. */
+    COALESCE,
+    /** Sever the reply connection and remove the player from the game. */
+    DISCONNECT;
+
+    /**
+     * Reads the policy named by a system property, case-insensitive.
+     * @param property System property to read.
+     * @param fallback Policy to use if the property is missing or unknown.
+     * @return The configured policy.
+     */
+    public static SlowConsumerPolicy fromProperty(String property, SlowConsumerPolicy fallback) {
+        String value = System.getProperty(property);
+        if(value != null) {
+            for(SlowConsumerPolicy policy : SlowConsumerPolicy.values()) {
+                if(policy.name().equalsIgnoreCase(value.trim())) {
+                    return policy;
+                }
+            }
+        }
+        return fallback;
+    }
+}
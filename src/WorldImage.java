@@ -0,0 +1,329 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precompiled, memory-mapped image of the world.
+ *
+ * Compiling reads the XML map once and writes every room to a compact binary file:
+ *  [header][room records][index of (room id, record offset) sorted by id][sources][routes]
+ *  A record is the room id, title and description followed by the exit table
+ *  (direction, link, message).  Strings are stored as UTF-8 with an int length.
+ *
+ * Opening maps the file and reads nothing else up front; rooms are decoded only
+ *  when they are looked up, so startup cost is proportional to what gets touched.
+ *  The sources section lists the XML files the image was built from, each with its
+ *  size and modification time.  An image whose list no longer matches the files on
+ *  disk (one changed, was added, removed, renamed or put back to an older copy) is
+ *  rebuilt, or rejected if it cannot be rebuilt.  The routes section is the GOTO
+ *  router, built at compile time so that opening the image never walks the world
+ *  (see Router).
+ *
+ * Run as java WorldImage output.world rooms.xml [more.xml ...] to compile by hand.
+ */
+public class WorldImage {
+    private static final int MAGIC = 0x474D5744; // "GMWD"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+    private static final int INDEX_ENTRY = 8;
+
+    private final ByteBuffer buffer;
+    private final int roomCount;
+    private final int indexOffset;
+    private final int sourcesOffset;
+    private final int routesOffset;
+
+    private WorldImage(MappedByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a world image");
+        }
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("World image version " + buffer.getInt(4) + " is not supported");
+        }
+        this.buffer = buffer;
+        this.roomCount = buffer.getInt(8);
+        this.indexOffset = buffer.getInt(12);
+        this.sourcesOffset = buffer.getInt(16);
+        this.routesOffset = buffer.getInt(20);
+    }
+
+    /**
+     * Opens a world image, compiling it first if it is missing, unreadable or was
+     *  built from other versions of its source files.
+     * @param image Image file.
+     * @param sources XML map files the image is built from.
+     * @return The opened image.
+     * @throws IOException if the image is stale or unreadable and cannot be rebuilt.
+     */
+    public static WorldImage open(File image, List<File> sources) throws IOException {
+        byte[] fingerprint = fingerprint(sources);
+        if(image.exists()) {
+            try {
+                WorldImage opened = map(image);
+                if(opened.builtFrom(fingerprint)) {
+                    return opened;
+                }
+                System.err.println("[STARTUP] .. World image " + image + " does not match its map files, rebuilding");
+            } catch (IOException ex) {
+                System.err.println("[STARTUP] .. World image " + image + " is unusable (" + ex.getMessage() + "), rebuilding");
+            }
+        }
+        if(anyExists(sources) == false) {
+            throw new IOException("World image " + image + " cannot be built, its map files are missing");
+        }
+        compile(sources, image);
+        return map(image);
+    }
+
+    /**
+     * Compiles XML map files into a world image.  The image is written next to its
+     *  final location and moved into place, so a reader never sees half a file.
+     * @param sources XML map files.
+     * @param image Image file to write.
+     * @throws IOException if the map cannot be read or the image cannot be written.
+     */
+    public static void compile(List<File> sources, File image) throws IOException {
+        byte[] fingerprint = fingerprint(sources);
+        List<Room> rooms = WorldLoader.load(sources, Runtime.getRuntime().availableProcessors());
+        Router router = new Router(new Map(rooms), Router.budget());
+
+        File temporary = new File(image.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            long[] index = new long[rooms.size()];
+            long position = HEADER_SIZE;
+            channel.position(position);
+
+            for(int i = 0; i < rooms.size(); i++) {
+                Room room = rooms.get(i);
+                byte[] record = encode(room);
+                if(position + record.length > Integer.MAX_VALUE) {
+                    throw new IOException("World image would exceed 2 GB; split the world or raise the format version");
+                }
+                // Sorting the packed (id, offset) pairs sorts the index by id.
+                index[i] = ((long) room.getId() << 32) | position;
+                if(out.remaining() < record.length) {
+                    out.flip();
+                    channel.write(out);
+                    out.clear();
+                }
+                if(record.length > out.capacity()) {
+                    channel.write(ByteBuffer.wrap(record));
+                }
+                else {
+                    out.put(record);
+                }
+                position += record.length;
+            }
+
+            Arrays.sort(index);
+            for(long entry : index) {
+                if(out.remaining() < INDEX_ENTRY) {
+                    out.flip();
+                    channel.write(out);
+                    out.clear();
+                }
+                out.putInt((int) (entry >> 32)).putInt((int) entry);
+            }
+            long sourcesOffset = position + (long) index.length * INDEX_ENTRY;
+            if(sourcesOffset + 4 + fingerprint.length > Integer.MAX_VALUE) {
+                throw new IOException("World image would exceed 2 GB; split the world or raise the format version");
+            }
+            out.flip();
+            channel.write(out);
+            ByteBuffer sourceList = ByteBuffer.allocate(4 + fingerprint.length);
+            sourceList.putInt(fingerprint.length).put(fingerprint);
+            sourceList.flip();
+            channel.write(sourceList);
+
+            long routesOffset = channel.position();
+            DataOutputStream routes = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            router.write(routes);
+            routes.flush();
+            if(channel.position() > Integer.MAX_VALUE) {
+                throw new IOException("World image would exceed 2 GB; lower game.routes.memory or split the world");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rooms.size()).putInt((int) position).putInt((int) sourcesOffset)
+                    .putInt((int) routesOffset);
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("[STARTUP] .. Compiled " + rooms.size() + " rooms into world image " + image);
+    }
+
+    /**
+     * @return Number of rooms in the image.
+     */
+    public int getRoomCount() {
+        return this.roomCount;
+    }
+
+    /**
+     * @return The routing section written by Router.write, starting at position 0.
+     */
+    public ByteBuffer getRoutes() {
+        ByteBuffer routes = this.buffer.duplicate();
+        routes.position(this.routesOffset);
+        return routes.slice();
+    }
+
+    /**
+     * Returns the id of the room at a position in the id-sorted index.
+     * @param index Position, 0 to getRoomCount() - 1.
+     * @return Room id.
+     */
+    public int idAt(int index) {
+        return this.buffer.getInt(this.indexOffset + index * INDEX_ENTRY);
+    }
+
+    /**
+     * Decodes one room from the image.
+     * @param roomId Id of the room.
+     * @return A new Room with its exits, or null if there is no such room.
+     */
+    public Room readRoom(int roomId) {
+        // Binary search the sorted index.
+        int low = 0;
+        int high = this.roomCount - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = this.idAt(middle);
+            if(id < roomId) {
+                low = middle + 1;
+            }
+            else if(id > roomId) {
+                high = middle - 1;
+            }
+            else {
+                return this.decode(this.buffer.getInt(this.indexOffset + middle * INDEX_ENTRY + 4));
+            }
+        }
+        return null;
+    }
+
+    private Room decode(int offset) {
+        ByteBuffer record = this.buffer.duplicate();
+        record.position(offset);
+        int id = record.getInt();
+        String title = readString(record);
+        String description = readString(record);
+        Room room = new Room(id, title, description);
+        int exits = record.get();
+        for(int i = 0; i < exits; i++) {
+            Direction direction = Direction.values()[record.get()];
+            int link = record.getInt();
+            room.addExit(direction, link, readString(record));
+        }
+        return room;
+    }
+
+    private static byte[] encode(Room room) {
+        byte[] title = room.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] description = room.getDescription().getBytes(StandardCharsets.UTF_8);
+        byte[][] messages = new byte[Direction.values().length][];
+        int size = 4 + 4 + title.length + 4 + description.length + 1;
+        int exits = 0;
+        for(Direction direction : Direction.values()) {
+            String message = room.exitMessage(direction);
+            if(message != null) {
+                messages[direction.ordinal()] = message.getBytes(StandardCharsets.UTF_8);
+                size += 1 + 4 + 4 + messages[direction.ordinal()].length;
+                exits++;
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(room.getId());
+        record.putInt(title.length).put(title);
+        record.putInt(description.length).put(description);
+        record.put((byte) exits);
+        for(Direction direction : Direction.values()) {
+            byte[] message = messages[direction.ordinal()];
+            if(message != null) {
+                record.put((byte) direction.ordinal()).putInt(room.getLink(direction));
+                record.putInt(message.length).put(message);
+            }
+        }
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static WorldImage map(File image) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(image, "r");
+             FileChannel channel = file.getChannel()) {
+            return new WorldImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private boolean builtFrom(byte[] fingerprint) {
+        if(this.sourcesOffset + 4L + fingerprint.length > this.buffer.capacity()
+                || this.buffer.getInt(this.sourcesOffset) != fingerprint.length) {
+            return false;
+        }
+        ByteBuffer recorded = this.buffer.duplicate();
+        recorded.position(this.sourcesOffset + 4);
+        recorded.limit(this.sourcesOffset + 4 + fingerprint.length);
+        return recorded.equals(ByteBuffer.wrap(fingerprint));
+    }
+
+    /**
+     * Describes the source files as the image records them: the canonical path,
+     *  size and modification time of each, in order.
+     * @param sources XML map files.
+     * @return Encoded list.
+     */
+    private static byte[] fingerprint(List<File> sources) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(sources.size());
+        for(File source : sources) {
+            out.writeUTF(source.getCanonicalPath());
+            out.writeLong(source.exists() ? source.length() : -1);
+            out.writeLong(source.lastModified());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean anyExists(List<File> sources) {
+        for(File source : sources) {
+            if(source.exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.out.println("[SHUTDOWN] .. Run as java WorldImage output.world rooms.xml [more.xml ...]");
+            System.exit(-1);
+        }
+        long start = System.nanoTime();
+        compile(WorldLoader.resolve(String.join(",", Arrays.asList(args).subList(1, args.length))), new File(args[0]));
+        System.out.println("Compiled in " + ((System.nanoTime() - start) / 1000000) + " ms");
+    }
+}
@@ -0,0 +1,1014 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Journal of everything that changes the world: players joining, leaving, turning
+ *  and walking, and objects dropped and picked up.  Each change is appended as a
+ *  small binary record, so a restarted server can put the world back the way it was
+ *  and a captured journal can be run again to reproduce what happened.
+ *
+ * The journal is a series of numbered segments in one directory.  Now and then
+ *  (game.journal.snapshot seconds, 300 by default) a new segment is started and
+ *  the state of the world at that point is written out beside it as a snapshot, on
+ *  the journal's own thread.  Recovery loads the newest complete snapshot and
+ *  replays the segments from there on, stopping each at a torn or corrupt record.
+ *  The last game.journal.keep snapshots (2) and their segments are kept; older ones
+ *  are deleted.
+ *
+ * Records go through a buffer that the journal thread writes out and forces to
+ *  disk every game.journal.flush milliseconds (100), so a crash of the server or
+ *  of the machine loses at most the records of the last interval.  The disk is
+ *  forced outside the journal's lock: commands never wait on it.
+ *
+ * The journal keeps its own copy of the state it records (the objects in every
+ *  room holding some, and every player it knows).  The journal thread keeps a second
+ *  copy as of the last cut, and brings it up to date for a snapshot by reading back
+ *  the segment just closed, so a cut holds up commands only for as long as it takes
+ *  to start the next segment.  Players still online when the server went down are
+ *  kept until they come back, and are put back where they were.
+ *
+ * Turned on by setting game.journal to a directory.  Run as
+ *  java WorldJournal directory [map.xml ...] to replay a journal at full speed.
+ */
+public class WorldJournal {
+    private static final int MAGIC = 0x474D574A; // "GMWJ"
+    // 2: record lengths and list sizes are ints; 1 wrote them as shorts.
+    private static final int VERSION = 2;
+    // Longest record written or read; a longer length is taken for corruption.
+    private static final int MAX_RECORD = 1 << 24;
+
+    // Record types.
+    static final byte JOIN = 1;
+    static final byte LEAVE = 2;
+    static final byte TURN = 3;
+    static final byte WALK = 4;
+    static final byte TAKE = 5;
+    static final byte DROP = 6;
+
+    /**
+     * What the journal knows of one player.
+     */
+    static final class PlayerState {
+        final String name;
+        int room;
+        Direction direction;
+        final ArrayList<String> items;
+        boolean online;
+
+        PlayerState(String name, int room, Direction direction, ArrayList<String> items, boolean online) {
+            this.name = name;
+            this.room = room;
+            this.direction = direction;
+            this.items = items;
+            this.online = online;
+        }
+
+        PlayerState copy() {
+            return new PlayerState(this.name, this.room, this.direction, new ArrayList<>(this.items), this.online);
+        }
+    }
+
+    /**
+     * One journal record.  Fields a type does not use are left empty.
+     */
+    static final class Event {
+        byte type;
+        String name;
+        int room;
+        Direction direction;
+        String object;
+        ArrayList<String> items;
+    }
+
+    /**
+     * The state of the world at one point in the journal.
+     */
+    static final class State {
+        // Objects by room id, for rooms holding any.
+        final TreeMap<Integer, ArrayList<String>> rooms = new TreeMap<>();
+        // Players by case-folded name.
+        final HashMap<String, PlayerState> players = new HashMap<>();
+
+        void apply(Event event) {
+            PlayerState player = event.name == null ? null : this.players.get(key(event.name));
+            switch(event.type) {
+                case JOIN:
+                    this.players.put(key(event.name), new PlayerState(event.name, event.room, event.direction,
+                            new ArrayList<>(event.items), true));
+                    break;
+                case LEAVE:
+                    this.players.remove(key(event.name));
+                    break;
+                case TURN:
+                    if(player != null) {
+                        player.direction = event.direction;
+                    }
+                    break;
+                case WALK:
+                    if(player != null) {
+                        player.room = event.room;
+                        player.direction = event.direction;
+                    }
+                    break;
+                case TAKE:
+                    ArrayList<String> objects = this.rooms.get(event.room);
+                    if(objects != null && objects.remove(event.object) && objects.isEmpty()) {
+                        this.rooms.remove(event.room);
+                    }
+                    if(player != null) {
+                        player.items.add(event.object);
+                    }
+                    break;
+                case DROP:
+                    objects = this.rooms.get(event.room);
+                    if(objects == null) {
+                        objects = new ArrayList<>();
+                        this.rooms.put(event.room, objects);
+                    }
+                    objects.add(event.object);
+                    break;
+            }
+        }
+
+        State copy() {
+            State copy = new State();
+            for(java.util.Map.Entry<Integer, ArrayList<String>> room : this.rooms.entrySet()) {
+                copy.rooms.put(room.getKey(), new ArrayList<>(room.getValue()));
+            }
+            for(java.util.Map.Entry<String, PlayerState> player : this.players.entrySet()) {
+                copy.players.put(player.getKey(), player.getValue().copy());
+            }
+            return copy;
+        }
+    }
+
+    private final File directory;
+    private final long flushMillis;
+    private final long snapshotMillis;
+    private final int keep;
+
+    // Guarded by this.
+    private final State state;
+    private long segment;
+    private DataOutputStream out;
+    private FileOutputStream file;
+    private final ByteArrayOutputStream scratch;
+    private final DataOutputStream record;
+    private final CRC32 crc;
+    private long events;
+    private long bytes;
+    private long lastSnapshotAt;
+    private boolean closed;
+
+    // The state as of the last cut.  Owned by the journal thread, and guarded by itself.
+    //  Once a closed segment could not be read back it no longer matches the journal,
+    //  and no more snapshots are written from it; recovery then starts further back.
+    private final State written;
+    private boolean diverged;
+
+    private final Thread writer;
+    private volatile long recoveredEvents;
+    private volatile long recoveryNanos;
+    private volatile long snapshots;
+    private volatile long lastSnapshotNanos;
+    private volatile long lastSnapshotBytes;
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and recovers the state
+     *  it holds.  Call restoreRooms to put the recovered objects back into the world.
+     * @param directory Directory holding the snapshots and segments.
+     * @throws IOException if the journal cannot be read or a new segment started.
+     */
+    public WorldJournal(File directory) throws IOException {
+        if(directory.isDirectory() == false && directory.mkdirs() == false) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.flushMillis = Long.getLong("game.journal.flush", 100);
+        this.snapshotMillis = 1000L * Long.getLong("game.journal.snapshot", 300);
+        this.keep = Math.max(1, Integer.getInteger("game.journal.keep", 2));
+        this.scratch = new ByteArrayOutputStream(256);
+        this.record = new DataOutputStream(this.scratch);
+        this.crc = new CRC32();
+
+        long start = System.nanoTime();
+        long[] recovered = new long[2];
+        this.state = recover(directory, true, recovered);
+        this.recoveredEvents = recovered[1];
+        this.recoveryNanos = System.nanoTime() - start;
+        // Nobody is online after a restart; those who were wait to be resumed.
+        for(PlayerState player : this.state.players.values()) {
+            player.online = false;
+        }
+        this.written = this.state.copy();
+
+        long last = recovered[0];
+        for(long seq : sequences(directory, "journal-")) {
+            last = Math.max(last, seq);
+        }
+        this.segment = last + 1;
+        this.out = this.openSegment(this.segment);
+        this.lastSnapshotAt = System.nanoTime();
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorldJournal.this.writeLoop();
+            }
+        }, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorldJournal.this.close();
+            }
+        }, "journal-flush"));
+    }
+
+    /**
+     * Puts the objects the journal recovered back into the rooms of a freshly loaded
+     *  world.  Rooms no longer on the map are forgotten.
+     * @param map World to restore.
+     * @return Number of objects put back.
+     */
+    public synchronized int restoreRooms(Map map) {
+        int restored = 0;
+        java.util.Iterator<java.util.Map.Entry<Integer, ArrayList<String>>> rooms = this.state.rooms.entrySet().iterator();
+        while(rooms.hasNext()) {
+            java.util.Map.Entry<Integer, ArrayList<String>> entry = rooms.next();
+            Room room = map.findRoom(entry.getKey());
+            if(room == null) {
+                rooms.remove();
+                continue;
+            }
+            for(String object : entry.getValue()) {
+                room.addObject(object);
+                restored++;
+            }
+        }
+        synchronized(this.written) {
+            this.written.rooms.keySet().retainAll(this.state.rooms.keySet());
+        }
+        return restored;
+    }
+
+    /**
+     * Puts a joining player back where they were if they were still online when the
+     *  server went down.
+     * @param player Player joining, not yet in the game.
+     * @return true if the player was resumed.
+     */
+    public synchronized boolean resume(Player player) {
+        PlayerState state = this.state.players.get(key(player.getName()));
+        if(state == null || state.online) {
+            return false;
+        }
+        player.setCurrentRoom(state.room);
+        player.setDirection(state.direction);
+        player.setCurrentInventory(new java.util.LinkedList<>(state.items));
+        return true;
+    }
+
+    /**
+     * Records a player joining, with where they start and what they carry.
+     * @param player Player who joined.
+     */
+    public void join(Player player) {
+        Event event = new Event();
+        event.type = JOIN;
+        event.name = player.getName();
+        synchronized(player) {
+            event.room = player.getCurrentRoom();
+            event.direction = player.getDirection();
+            event.items = new ArrayList<>(player.getCurrentInventory());
+        }
+        this.append(event);
+    }
+
+    /**
+     * Records a player leaving.
+     * @param player Player who left.
+     */
+    public void leave(Player player) {
+        Event event = new Event();
+        event.type = LEAVE;
+        event.name = player.getName();
+        this.append(event);
+    }
+
+    /**
+     * Records a player turning to face a new direction.
+     * @param player Player who turned.
+     */
+    public void turn(Player player) {
+        Event event = new Event();
+        event.type = TURN;
+        event.name = player.getName();
+        event.direction = player.getDirection();
+        this.append(event);
+    }
+
+    /**
+     * Records a player arriving in a room.
+     * @param player Player who walked, already in the room reached.
+     */
+    public void walk(Player player) {
+        Event event = new Event();
+        event.type = WALK;
+        event.name = player.getName();
+        event.room = player.getCurrentRoom();
+        event.direction = player.getDirection();
+        this.append(event);
+    }
+
+    /**
+     * Records a player picking an object up.
+     * @param player Player who took it.
+     * @param room Id of the room it was taken from.
+     * @param object The object.
+     */
+    public void take(Player player, int room, String object) {
+        Event event = new Event();
+        event.type = TAKE;
+        event.name = player.getName();
+        event.room = room;
+        event.object = object;
+        this.append(event);
+    }
+
+    /**
+     * Records an object being dropped in a room.
+     * @param room Id of the room.
+     * @param object The object.
+     */
+    public void drop(int room, String object) {
+        Event event = new Event();
+        event.type = DROP;
+        event.room = room;
+        event.object = object;
+        this.append(event);
+    }
+
+    /**
+     * @return Number of records appended since the server started.
+     */
+    public synchronized long getEvents() {
+        return this.events;
+    }
+
+    /**
+     * @return One line describing the journal.
+     */
+    public synchronized String report() {
+        return String.format(Locale.ROOT, "Journal: segment %d, %d events (%.1f bytes each), %d snapshots (last %.1f KB in %d ms), "
+                + "recovered %d events in %d ms",
+                this.segment, this.events, this.events == 0 ? 0.0 : (double) this.bytes / this.events,
+                this.snapshots, this.lastSnapshotBytes / 1024.0, this.lastSnapshotNanos / 1000000,
+                this.recoveredEvents, this.recoveryNanos / 1000000);
+    }
+
+    /**
+     * Writes out what is buffered and a final snapshot, and closes the journal.
+     *  Changes recorded after this are ignored.
+     */
+    public void close() {
+        synchronized(this) {
+            if(this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.writer.join(10000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void append(Event event) {
+        if(this.closed) {
+            return;
+        }
+        try {
+            encode(event, this.scratch, this.record);
+            if(this.scratch.size() > MAX_RECORD) {
+                throw new IOException("Record of " + this.scratch.size() + " bytes is too large for the journal");
+            }
+            this.crc.reset();
+            this.crc.update(this.scratch.toByteArray());
+            this.out.writeInt(this.scratch.size());
+            this.scratch.writeTo(this.out);
+            this.out.writeInt((int) this.crc.getValue());
+            this.state.apply(event);
+            this.events++;
+            this.bytes += this.scratch.size() + 8;
+        } catch (IOException ex) {
+            GameLog.error("Could not append to the world journal", ex);
+        }
+    }
+
+    private void writeLoop() {
+        while(true) {
+            DataOutputStream finished = null;
+            FileOutputStream forced = null;
+            long sequence = 0;
+            boolean last;
+            synchronized(this) {
+                try {
+                    if(this.closed == false) {
+                        this.wait(this.flushMillis);
+                    }
+                } catch (InterruptedException ex) {
+                    // Only close() stops the writer.
+                }
+                last = this.closed;
+                try {
+                    this.out.flush();
+                    forced = this.file;
+                    if(last || System.nanoTime() - this.lastSnapshotAt >= this.snapshotMillis * 1000000) {
+                        // Cut: everything up to here is in the snapshot, everything after
+                        //  goes into the next segment.
+                        finished = this.out;
+                        this.segment++;
+                        sequence = this.segment;
+                        this.lastSnapshotAt = System.nanoTime();
+                        if(last == false) {
+                            this.out = this.openSegment(this.segment);
+                        }
+                    }
+                } catch (IOException ex) {
+                    GameLog.error("Could not write the world journal", ex);
+                }
+            }
+            if(forced != null) {
+                try {
+                    forced.getFD().sync();
+                } catch (IOException ex) {
+                    GameLog.error("Could not force the world journal to disk", ex);
+                }
+            }
+            if(finished != null) {
+                try {
+                    finished.close();
+                    synchronized(this.written) {
+                        if(this.diverged == false) {
+                            this.catchUp(sequence - 1);
+                            this.writeSnapshot(sequence, this.written);
+                        }
+                    }
+                } catch (IOException ex) {
+                    GameLog.error("Could not write world snapshot " + sequence, ex);
+                }
+            }
+            if(last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Brings the state as of the last cut up to date by applying the segment closed
+     *  at this cut.
+     * @param sequence Sequence of the closed segment.
+     */
+    private void catchUp(long sequence) throws IOException {
+        DataInputStream in = openForReading(this.directory, sequence);
+        if(in == null) {
+            this.diverged = true;
+            throw new IOException("Cannot read back journal segment " + sequence);
+        }
+        try {
+            CRC32 crc = new CRC32();
+            Event event;
+            while((event = read(in, crc)) != null) {
+                this.written.apply(event);
+            }
+        } catch (IOException ex) {
+            this.diverged = true;
+            throw ex;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeSnapshot(long sequence, State snapshot) throws IOException {
+        long start = System.nanoTime();
+        File temporary = new File(this.directory, "snapshot-" + sequence + ".tmp");
+        FileOutputStream file = new FileOutputStream(temporary);
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+        try (DataOutputStream data = new DataOutputStream(checked)) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(sequence);
+            data.writeInt(snapshot.rooms.size());
+            for(java.util.Map.Entry<Integer, ArrayList<String>> room : snapshot.rooms.entrySet()) {
+                data.writeInt(room.getKey());
+                writeStrings(data, room.getValue());
+            }
+            data.writeInt(snapshot.players.size());
+            for(PlayerState player : snapshot.players.values()) {
+                data.writeUTF(player.name);
+                data.writeBoolean(player.online);
+                data.writeInt(player.room);
+                data.writeByte(player.direction.ordinal());
+                writeStrings(data, player.items);
+            }
+            data.writeInt((int) checked.getChecksum().getValue());
+            data.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary.toPath(), new File(this.directory, "snapshot-" + sequence + ".bin").toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.lastSnapshotBytes = new File(this.directory, "snapshot-" + sequence + ".bin").length();
+        this.lastSnapshotNanos = System.nanoTime() - start;
+        this.snapshots++;
+
+        // Keep the newest snapshots and the segments that follow them.
+        List<Long> kept = sequences(this.directory, "snapshot-");
+        long oldest = kept.get(Math.max(0, kept.size() - this.keep));
+        for(long old : kept) {
+            if(old < oldest) {
+                new File(this.directory, "snapshot-" + old + ".bin").delete();
+            }
+        }
+        for(long old : sequences(this.directory, "journal-")) {
+            if(old < oldest) {
+                new File(this.directory, "journal-" + old + ".log").delete();
+            }
+        }
+    }
+
+    /**
+     * Starts a segment and makes it the one forced to disk at each interval.
+     */
+    private DataOutputStream openSegment(long sequence) throws IOException {
+        this.file = new FileOutputStream(new File(this.directory, "journal-" + sequence + ".log"));
+        DataOutputStream segment = new DataOutputStream(new BufferedOutputStream(this.file, 1 << 16));
+        segment.writeInt(MAGIC);
+        segment.writeInt(VERSION);
+        segment.writeLong(sequence);
+        return segment;
+    }
+
+    /**
+     * Encodes the type and fields of a record into scratch.  On disk they are framed
+     *  as [length][type and fields][CRC32 of type and fields].
+     */
+    private static void encode(Event event, ByteArrayOutputStream scratch, DataOutputStream record) throws IOException {
+        scratch.reset();
+        record.writeByte(event.type);
+        switch(event.type) {
+            case JOIN:
+                record.writeUTF(event.name);
+                record.writeInt(event.room);
+                record.writeByte(event.direction.ordinal());
+                writeStrings(record, event.items);
+                break;
+            case LEAVE:
+                record.writeUTF(event.name);
+                break;
+            case TURN:
+                record.writeUTF(event.name);
+                record.writeByte(event.direction.ordinal());
+                break;
+            case WALK:
+                record.writeUTF(event.name);
+                record.writeInt(event.room);
+                record.writeByte(event.direction.ordinal());
+                break;
+            case TAKE:
+                record.writeUTF(event.name);
+                record.writeInt(event.room);
+                record.writeUTF(event.object);
+                break;
+            case DROP:
+                record.writeInt(event.room);
+                record.writeUTF(event.object);
+                break;
+        }
+        record.flush();
+    }
+
+    /**
+     * Reads the next record of a segment.
+     * @return The record, or null at the end of the segment or at a torn or corrupt record.
+     */
+    static Event read(DataInputStream in, CRC32 crc) throws IOException {
+        byte[] bytes;
+        try {
+            int length = in.readInt();
+            if(length <= 0 || length > MAX_RECORD) {
+                return null;
+            }
+            bytes = new byte[length];
+            in.readFully(bytes);
+            crc.reset();
+            crc.update(bytes, 0, length);
+            if(in.readInt() != (int) crc.getValue()) {
+                return null;
+            }
+        } catch (EOFException ex) {
+            return null;
+        }
+        DataInputStream fields = new DataInputStream(new java.io.ByteArrayInputStream(bytes));
+        Event event = new Event();
+        event.type = fields.readByte();
+        switch(event.type) {
+            case JOIN:
+                event.name = fields.readUTF();
+                event.room = fields.readInt();
+                event.direction = Direction.values()[fields.readByte()];
+                event.items = readStrings(fields);
+                break;
+            case LEAVE:
+                event.name = fields.readUTF();
+                break;
+            case TURN:
+                event.name = fields.readUTF();
+                event.direction = Direction.values()[fields.readByte()];
+                break;
+            case WALK:
+                event.name = fields.readUTF();
+                event.room = fields.readInt();
+                event.direction = Direction.values()[fields.readByte()];
+                break;
+            case TAKE:
+                event.name = fields.readUTF();
+                event.room = fields.readInt();
+                event.object = fields.readUTF();
+                break;
+            case DROP:
+                event.room = fields.readInt();
+                event.object = fields.readUTF();
+                break;
+            default:
+                return null;
+        }
+        return event;
+    }
+
+    /**
+     * Reads the snapshot with a sequence number.
+     * @return The state it holds, or null if it is missing, incomplete or corrupt.
+     */
+    static State readSnapshot(File directory, long sequence) {
+        File file = new File(directory, "snapshot-" + sequence + ".bin");
+        CheckedInputStream checked;
+        try {
+            checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32());
+        } catch (IOException ex) {
+            return null;
+        }
+        try (DataInputStream data = new DataInputStream(checked)) {
+            if(data.readInt() != MAGIC || data.readInt() != VERSION || data.readLong() != sequence) {
+                return null;
+            }
+            State state = new State();
+            for(int rooms = data.readInt(); rooms > 0; rooms--) {
+                state.rooms.put(data.readInt(), readStrings(data));
+            }
+            for(int players = data.readInt(); players > 0; players--) {
+                String name = data.readUTF();
+                boolean online = data.readBoolean();
+                int room = data.readInt();
+                Direction direction = Direction.values()[data.readByte()];
+                state.players.put(key(name), new PlayerState(name, room, direction, readStrings(data), online));
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            return data.readInt() == expected ? state : null;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens a segment for reading, past its header.
+     * @return The segment, or null if it is missing or not a segment.
+     */
+    static DataInputStream openForReading(File directory, long sequence) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(new File(directory, "journal-" + sequence + ".log")), 1 << 16));
+            if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != sequence) {
+                in.close();
+                return null;
+            }
+            return in;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Rebuilds the state a journal directory holds.
+     * @param directory Journal directory.
+     * @param newest Start from the newest good snapshot (recovery) or the oldest (replay).
+     * @param found Set to the sequence of the snapshot started from and the number of
+     *  records replayed on top of it.
+     * @return The state.
+     */
+    static State recover(File directory, boolean newest, long[] found) throws IOException {
+        List<Long> snapshots = sequences(directory, "snapshot-");
+        State state = null;
+        long start = 0;
+        for(int i = 0; i < snapshots.size() && state == null; i++) {
+            start = snapshots.get(newest ? snapshots.size() - 1 - i : i);
+            state = readSnapshot(directory, start);
+        }
+        if(state == null) {
+            state = new State();
+            List<Long> segments = sequences(directory, "journal-");
+            start = segments.isEmpty() ? 0 : segments.get(0);
+        }
+        long replayed = 0;
+        CRC32 crc = new CRC32();
+        for(long seq : sequences(directory, "journal-")) {
+            if(seq < start) {
+                continue;
+            }
+            DataInputStream in = openForReading(directory, seq);
+            if(in == null) {
+                continue;
+            }
+            try {
+                Event event;
+                while((event = read(in, crc)) != null) {
+                    state.apply(event);
+                    replayed++;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        found[0] = start;
+        found[1] = replayed;
+        return state;
+    }
+
+    /**
+     * @return Sequence numbers of the files named prefix + number + extension, ascending.
+     */
+    static List<Long> sequences(File directory, String prefix) {
+        ArrayList<Long> found = new ArrayList<>();
+        String[] names = directory.list();
+        if(names != null) {
+            for(String name : names) {
+                int dot = name.lastIndexOf('.');
+                if(name.startsWith(prefix) && dot > prefix.length()
+                        && (name.endsWith(".log") || name.endsWith(".bin"))) {
+                    try {
+                        found.add(Long.parseLong(name.substring(prefix.length(), dot)));
+                    } catch (NumberFormatException ex) {
+                        // Not one of ours.
+                    }
+                }
+            }
+        }
+        java.util.Collections.sort(found);
+        return found;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for(String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static ArrayList<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if(count < 0) {
+            throw new IOException("Corrupt list of " + count + " strings");
+        }
+        ArrayList<String> strings = new ArrayList<>(Math.min(count, 1024));
+        for(int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Replays a journal against a fresh game core at full speed: loads the oldest
+     *  snapshot in the directory, brings its players back, then runs every recorded
+     *  change after it as the command that made it.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.out.println("[SHUTDOWN] .. Run as java WorldJournal directory [map.xml ...]");
+            System.exit(-1);
+        }
+        File directory = new File(args[0]);
+        if(args.length > 1) {
+            System.setProperty("game.map", String.join(",", java.util.Arrays.copyOfRange(args, 1, args.length)));
+        }
+        // The replay must not journal itself or touch stored profiles, and only the
+        //  recorded drops may put objects in the world.
+        System.clearProperty("game.journal");
+        System.clearProperty("game.profiles");
+        System.setProperty("game.spawner", "false");
+
+        List<Long> snapshots = sequences(directory, "snapshot-");
+        State start = null;
+        long first = 0;
+        for(int i = 0; i < snapshots.size() && start == null; i++) {
+            first = snapshots.get(i);
+            start = readSnapshot(directory, first);
+        }
+        if(start == null) {
+            List<Long> segments = sequences(directory, "journal-");
+            if(segments.isEmpty()) {
+                System.out.println("No journal in " + directory);
+                System.exit(1);
+            }
+            start = new State();
+            first = segments.get(0);
+        }
+
+        GameCore core = new GameCore();
+        Replay replay = new Replay(core);
+        for(java.util.Map.Entry<Integer, ArrayList<String>> room : start.rooms.entrySet()) {
+            for(String object : room.getValue()) {
+                Event event = new Event();
+                event.type = DROP;
+                event.room = room.getKey();
+                event.object = object;
+                replay.run(event);
+            }
+        }
+        for(PlayerState player : start.players.values()) {
+            if(player.online) {
+                Event event = new Event();
+                event.type = JOIN;
+                event.name = player.name;
+                event.room = player.room;
+                event.direction = player.direction;
+                event.items = player.items;
+                replay.run(event);
+            }
+        }
+        System.out.println("Starting from snapshot " + first + ": " + start.rooms.size() + " rooms with objects, "
+                + replay.online() + " players online");
+
+        long events = 0;
+        long elapsed = 0;
+        CRC32 crc = new CRC32();
+        for(long seq : sequences(directory, "journal-")) {
+            if(seq < first) {
+                continue;
+            }
+            DataInputStream in = openForReading(directory, seq);
+            if(in == null) {
+                continue;
+            }
+            ArrayList<Event> segment = new ArrayList<>();
+            try {
+                Event event;
+                while((event = read(in, crc)) != null) {
+                    segment.add(event);
+                }
+            } finally {
+                in.close();
+            }
+            // Read first, so the time below is the game's alone.
+            long begin = System.nanoTime();
+            for(Event event : segment) {
+                replay.run(event);
+            }
+            elapsed += System.nanoTime() - begin;
+            events += segment.size();
+        }
+        System.out.println(String.format(Locale.ROOT, "Replayed %d events in %d ms, %.0f events/s, %d did not turn out as recorded",
+                events, elapsed / 1000000, events / Math.max(1e-9, elapsed / 1e9), replay.mismatches));
+        System.out.println(core.getMetrics().report());
+        System.exit(0);
+    }
+
+    /**
+     * Runs recorded changes as the commands that made them.
+     */
+    private static final class Replay {
+        private final GameCore core;
+        long mismatches;
+
+        Replay(GameCore core) {
+            this.core = core;
+        }
+
+        int online() {
+            return this.core.getMetrics().getPlayersOnline();
+        }
+
+        void run(Event event) {
+            Player player = event.name == null ? null : this.core.findPlayer(event.name);
+            switch(event.type) {
+                case JOIN:
+                    player = this.core.joinGame(event.name);
+                    if(player == null) {
+                        this.mismatches++;
+                        return;
+                    }
+                    if(player.getCurrentRoom() != event.room) {
+                        this.core.goTo(event.name, Integer.toString(event.room));
+                    }
+                    this.face(player, event.direction);
+                    for(String item : event.items) {
+                        player.addObjectToInventory(item);
+                    }
+                    break;
+                case LEAVE:
+                    if(this.core.leave(event.name) == null) {
+                        this.mismatches++;
+                    }
+                    break;
+                case TURN:
+                    if(player == null) {
+                        this.mismatches++;
+                        return;
+                    }
+                    this.face(player, event.direction);
+                    break;
+                case WALK:
+                    if(player == null) {
+                        this.mismatches++;
+                        return;
+                    }
+                    // A walk straight ahead is replayed as MOVE, anything else as GOTO.
+                    int steps = this.straightAhead(player, event.room);
+                    if(steps > 0) {
+                        this.core.move(event.name, steps);
+                    }
+                    else {
+                        this.core.goTo(event.name, Integer.toString(event.room));
+                    }
+                    if(player.getCurrentRoom() != event.room) {
+                        this.mismatches++;
+                    }
+                    player.setDirection(event.direction);
+                    break;
+                case TAKE:
+                    if(player == null || this.core.pickup(event.name, event.object).startsWith("You bend") == false) {
+                        this.mismatches++;
+                    }
+                    break;
+                case DROP:
+                    Room room = this.core.getMap().findRoom(event.room);
+                    if(room == null || this.core.drop(room, ItemCatalog.id(event.object)) == false) {
+                        this.mismatches++;
+                    }
+                    break;
+            }
+        }
+
+        private void face(Player player, Direction direction) {
+            for(int turns = 0; turns < 3 && player.getDirection() != direction; turns++) {
+                Direction before = player.getDirection();
+                player.turnRight();
+                boolean right = player.getDirection() == direction;
+                player.setDirection(before);
+                if(right) {
+                    this.core.right(player.getName());
+                }
+                else {
+                    this.core.left(player.getName());
+                }
+            }
+        }
+
+        // Steps straight ahead to the room, or 0 if it is not straight ahead.
+        private int straightAhead(Player player, int target) {
+            Room room = this.core.getMap().findRoom(player.getCurrentRoom());
+            Direction direction = player.getDirection();
+            for(int steps = 1; steps <= 1000 && room.canExit(direction); steps++) {
+                room = this.core.getMap().findRoom(room.getLink(direction));
+                if(room.getId() == target) {
+                    return steps;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the rooms of the world from one or more XML files in the rooms.xml format.
+ *  Files are read with a streaming (StAX) parser, so memory use does not grow with
+ *  the size of a document tree, and several files are parsed in parallel.
+ *
+ * Also runnable as a tool that reports load time and peak heap use, and that can
+ *  check the streaming loader against the original DOM based one:
+ *  java WorldLoader [--verify] rooms.xml [more.xml ...]
+ */
+public class WorldLoader {
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    /**
+     * Resolves a map setting into the files it names.  The setting is a comma separated
+     *  list of paths; a directory stands for every .xml file inside it, in name order.
+     * @param setting Map files or directories.
+     * @return Files to load.
+     */
+    public static List<File> resolve(String setting) {
+        ArrayList<File> files = new ArrayList<>();
+        for(String path : setting.split(",")) {
+            File file = new File(path.trim());
+            if(file.isDirectory()) {
+                File[] parts = file.listFiles();
+                if(parts != null) {
+                    Arrays.sort(parts);
+                    for(File part : parts) {
+                        if(part.getName().endsWith(".xml")) {
+                            files.add(part);
+                        }
+                    }
+                }
+            }
+            else {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Loads the rooms from every file, parsing up to threads files at once.
+     * @param files Map files.
+     * @param threads Maximum number of files parsed in parallel.
+     * @return Rooms of all files, in file order and then document order.
+     * @throws IOException if a file cannot be read or is not a valid map.
+     */
+    public static List<Room> load(List<File> files, int threads) throws IOException {
+        if(files.size() == 1 || threads <= 1) {
+            ArrayList<Room> rooms = new ArrayList<>();
+            for(File file : files) {
+                rooms.addAll(parse(file));
+            }
+            return rooms;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            ArrayList<Future<List<Room>>> parts = new ArrayList<>();
+            for(final File file : files) {
+                parts.add(pool.submit(new Callable<List<Room>>() {
+                    @Override
+                    public List<Room> call() throws IOException {
+                        return parse(file);
+                    }
+                }));
+            }
+            ArrayList<Room> rooms = new ArrayList<>();
+            for(Future<List<Room>> part : parts) {
+                rooms.addAll(part.get());
+            }
+            return rooms;
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the map", ex);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Streams the rooms out of a single map file.
+     * @param file Map file.
+     * @return Rooms in document order.
+     * @throws IOException if the file cannot be read or is not a valid map.
+     */
+    public static List<Room> parse(File file) throws IOException {
+        ArrayList<Room> rooms = new ArrayList<>();
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+            try {
+                Room room = null;
+                String title = null;
+                int id = 0;
+                Direction exitId = null;
+                int link = 0;
+                String message = null;
+
+                while(reader.hasNext()) {
+                    int event = reader.next();
+                    if(event == XMLStreamConstants.START_ELEMENT) {
+                        switch(reader.getLocalName()) {
+                            case "room":
+                                id = Integer.parseInt(reader.getAttributeValue(null, "id").trim());
+                                break;
+                            case "title":
+                                title = reader.getElementText();
+                                break;
+                            case "description":
+                                // Title always comes before the description in the map format.
+                                room = new Room(id, title, reader.getElementText());
+                                break;
+                            case "exit":
+                                exitId = Direction.valueOf(reader.getAttributeValue(null, "id").trim());
+                                break;
+                            case "link":
+                                link = Integer.parseInt(reader.getElementText().trim());
+                                break;
+                            case "message":
+                                message = reader.getElementText();
+                                break;
+                        }
+                    }
+                    else if(event == XMLStreamConstants.END_ELEMENT) {
+                        switch(reader.getLocalName()) {
+                            case "exit":
+                                room.addExit(exitId, link, message);
+                                break;
+                            case "room":
+                                rooms.add(room);
+                                room = null;
+                                break;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | RuntimeException ex) {
+            throw new IOException("Could not load map file " + file + ": " + ex.getMessage(), ex);
+        }
+        return rooms;
+    }
+
+    /**
+     * The original map loader: builds a DOM of the whole file first.  Kept to
+     *  check the streaming loader against.
+     * @param file Map file.
+     * @return Rooms in document order.
+     * @throws IOException if the file cannot be read or is not a valid map.
+     */
+    public static List<Room> parseDom(File file) throws IOException {
+        ArrayList<Room> rooms = new ArrayList<>();
+        try {
+            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            Document document = dBuilder.parse(file);
+
+            document.getDocumentElement().normalize();
+            NodeList xmlRooms = document.getElementsByTagName("room");
+            for(int i = 0; i < xmlRooms.getLength(); i++) {
+                Element roomElement = (Element) xmlRooms.item(i);
+
+                int id = Integer.parseInt(roomElement.getAttribute("id"));
+                String title = roomElement.getElementsByTagName("title").item(0).getTextContent();
+                String description = roomElement.getElementsByTagName("description").item(0).getTextContent();
+                Room newRoom = new Room(id, title, description);
+
+                NodeList xmlExits = roomElement.getElementsByTagName("exit");
+                for(int j = 0; j < xmlExits.getLength(); j++) {
+                    Element exitElement = (Element) xmlExits.item(j);
+
+                    Direction exitId = Direction.valueOf(exitElement.getAttribute("id"));
+                    int link = Integer.parseInt(exitElement.getElementsByTagName("link").item(0).getTextContent());
+                    String message = exitElement.getElementsByTagName("message").item(0).getTextContent();
+                    newRoom.addExit(exitId, link, message);
+                }
+                rooms.add(newRoom);
+            }
+        } catch (ParserConfigurationException | SAXException ex) {
+            throw new IOException("Could not load map file " + file + ": " + ex.getMessage(), ex);
+        }
+        return rooms;
+    }
+
+    /**
+     * Compares two loaded worlds room by room.
+     * @param expected Rooms from the reference loader.
+     * @param actual Rooms from the loader under test.
+     * @return Description of the first difference, or null if they match.
+     */
+    public static String compare(List<Room> expected, List<Room> actual) {
+        if(expected.size() != actual.size()) {
+            return "Room count differs: " + expected.size() + " vs " + actual.size();
+        }
+        for(int i = 0; i < expected.size(); i++) {
+            Room a = expected.get(i);
+            Room b = actual.get(i);
+            if(a.getId() != b.getId()
+                    || a.getTitle().equals(b.getTitle()) == false
+                    || a.getDescription().equals(b.getDescription()) == false
+                    || a.getExits().equals(b.getExits()) == false) {
+                return "Room " + a.getId() + " differs";
+            }
+            for(Direction direction : Direction.values()) {
+                if(a.getLink(direction) != b.getLink(direction)
+                        || Objects.equals(a.exitMessage(direction), b.exitMessage(direction)) == false) {
+                    return "Exit " + direction.name() + " of room " + a.getId() + " differs";
+                }
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean verify = args.length > 0 && args[0].equals("--verify");
+        List<String> paths = Arrays.asList(args).subList(verify ? 1 : 0, args.length);
+        if(paths.isEmpty()) {
+            System.out.println("[SHUTDOWN] .. Run as java WorldLoader [--verify] rooms.xml [more.xml ...]");
+            System.exit(-1);
+        }
+        List<File> files = resolve(String.join(",", paths));
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        List<Room> rooms = load(files, threads);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Streaming loader:  " + rooms.size() + " rooms from " + files.size() + " file(s) in "
+                + (elapsed / 1000000) + " ms, peak heap " + (peakHeap() >> 20) + " MB");
+
+        if(verify) {
+            rooms = null;
+            System.gc();
+            resetPeakHeap();
+            start = System.nanoTime();
+            ArrayList<Room> reference = new ArrayList<>();
+            for(File file : files) {
+                reference.addAll(parseDom(file));
+            }
+            elapsed = System.nanoTime() - start;
+            System.out.println("DOM loader:        " + reference.size() + " rooms in "
+                    + (elapsed / 1000000) + " ms, peak heap " + (peakHeap() >> 20) + " MB");
+
+            String difference = compare(reference, load(files, threads));
+            System.out.println(difference == null ? "Verified: both loaders produced the same world." : "MISMATCH: " + difference);
+            if(difference != null) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
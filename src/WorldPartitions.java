@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The world split by room into partitions, each served by one thread of its own.
+ *  Work on a room (a player's command, joining and leaving, a spawn) is queued to
+ *  the partition that owns the room and runs there in order, so the commands of a
+ *  room never contend with each other and its work stays in one core's cache.  A
+ *  player walking into another partition is handed over with a message to the new
+ *  partition.
+ *
+ * This is partitioned dispatch on top of the locks the game uses without it, not a
+ *  replacement for them.  Rooms, players and the lists of who is in each room keep
+ *  their monitors: a walk across partitions tells rooms owned by others that the
+ *  player passed through, a hand-off changes the player on two partitions in turn,
+ *  and room views and statistics are read from any thread.  Within a partition
+ *  those locks are taken without contention.
+ *
+ * Rooms are split into runs of consecutive ids of about the same size.  Generated
+ *  and hand-made maps tend to number neighbouring rooms closely, so most walks stay
+ *  inside one partition.
+ *
+ * Turned on by setting game.partitions to the number of partitions (eg. the number
+ *  of cores); 0, the default, leaves every command on the thread that received it.
+ */
+public class WorldPartitions {
+    // lowestIds[p] is the lowest room id owned by partition p.
+    private final int[] lowestIds;
+    private final ThreadPoolExecutor[] executors;
+    private final Thread[] threads;
+    private final LongAdder handOffs;
+
+    /**
+     * @param map World to partition.
+     * @param partitions Number of partitions, at least 1.
+     */
+    public WorldPartitions(Map map, int partitions) {
+        int[] ids = map.getRoomIds();
+        int count = Math.max(1, Math.min(partitions, Math.max(1, ids.length)));
+        this.lowestIds = new int[count];
+        for(int p = 0; p < count; p++) {
+            this.lowestIds[p] = ids.length == 0 ? Integer.MIN_VALUE : ids[(int) ((long) ids.length * p / count)];
+        }
+        this.lowestIds[0] = Integer.MIN_VALUE;
+
+        this.threads = new Thread[count];
+        this.executors = new ThreadPoolExecutor[count];
+        for(int p = 0; p < count; p++) {
+            final int partition = p;
+            this.executors[p] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task, "partition-" + partition);
+                            thread.setDaemon(true);
+                            WorldPartitions.this.threads[partition] = thread;
+                            return thread;
+                        }
+                    });
+            this.executors[p].prestartCoreThread();
+        }
+        this.handOffs = new LongAdder();
+    }
+
+    /**
+     * @param roomId Id of a room.
+     * @return Number of the partition that owns the room.
+     */
+    public int partitionOf(int roomId) {
+        int found = Arrays.binarySearch(this.lowestIds, roomId);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * @param roomId Id of a room.
+     * @return true if the calling thread is the one that owns the room.
+     */
+    public boolean owns(int roomId) {
+        return Thread.currentThread() == this.threads[this.partitionOf(roomId)];
+    }
+
+    /**
+     * Queues work on the partition that owns a room, without waiting for it.
+     * @param roomId Id of the room the work is about.
+     * @param task Work to run.
+     */
+    public void execute(int roomId, final Runnable task) {
+        // A task that throws must not take the partition's thread down with it.
+        this.executors[this.partitionOf(roomId)].execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    GameLog.error("Partition task failed", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands work over to the partition that owns a room, counting it as a hand-off.
+     * @param roomId Id of the room the work continues in.
+     * @param task Work to run.
+     */
+    public void handOff(int roomId, Runnable task) {
+        this.handOffs.increment();
+        this.execute(roomId, task);
+    }
+
+    /**
+     * Runs work on the partition that owns a room and waits for its result.  Runs it
+     *  straight away if the caller already is that partition.
+     * @param roomId Id of the room the work is about.
+     * @param task Work to run.
+     * @return What the work returned.
+     * @throws RuntimeException whatever the work threw.
+     */
+    public <T> T call(int roomId, Callable<T> task) {
+        if(this.owns(roomId)) {
+            try {
+                return task.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return this.await(roomId, this.submit(roomId, task));
+    }
+
+    /**
+     * Queues work on the partition that owns a room; await() waits for its result.
+     *  Unlike call(), the work is always queued, even from the owning partition.
+     * @param roomId Id of the room the work is about.
+     * @param task Work to run.
+     * @return The queued work.
+     */
+    public <T> FutureTask<T> submit(int roomId, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        this.execute(roomId, future);
+        return future;
+    }
+
+    /**
+     * Waits for work queued with submit().  Must not be called from a partition thread.
+     * @param roomId Id of the room the work was queued for.
+     * @param future The queued work.
+     * @return What the work returned.
+     * @throws RuntimeException whatever the work threw.
+     */
+    public <T> T await(int roomId, FutureTask<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if(ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for partition " + this.partitionOf(roomId), ex);
+        }
+    }
+
+    /**
+     * @return Number of partitions.
+     */
+    public int size() {
+        return this.executors.length;
+    }
+
+    /**
+     * @return Number of times a player walked from one partition into another.
+     */
+    public long getHandOffs() {
+        return this.handOffs.sum();
+    }
+
+    /**
+     * @return One line with the partitions, their queues and the hand-offs between them.
+     */
+    public String report() {
+        StringBuilder queued = new StringBuilder();
+        for(ThreadPoolExecutor executor : this.executors) {
+            queued.append(' ').append(executor.getQueue().size());
+        }
+        return String.format(Locale.ROOT, "Partitions: %d, %d hand-offs, queued%s",
+                this.executors.length, this.getHandOffs(), queued);
+    }
+
+    /**
+     * Stops the partition threads once the work already queued has run.
+     */
+    public void shutdown() {
+        for(ThreadPoolExecutor executor : this.executors) {
+            executor.shutdown();
+        }
+    }
+}
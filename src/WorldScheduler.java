@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Central clock for timed world events: object spawns, respawns, timeouts and
+ *  periodic effects.
+ *
+ * A hashed timing wheel: time is cut into ticks, and a ring of buckets holds the
+ *  events due in each tick (events further away than one turn of the ring wait a
+ *  number of rounds in their bucket).  Scheduling and cancelling are O(1) from any
+ *  thread, so millions of pending events cost only their memory.  A single thread
+ *  turns the wheel, paced against its start time so it never drifts; an event runs
+ *  within about one tick of its deadline.
+ *
+ * Events run on the wheel thread and must be short, such as dropping an object and
+ *  queueing a broadcast.  Anything slow should be handed to another executor.
+ *
+ * Configured with game.scheduler.tick (milliseconds per tick, 10) and
+ *  game.scheduler.wheel (buckets, 4096).
+ */
+public class WorldScheduler {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final int MAX_CHANGES_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Event> added;
+    private final ConcurrentLinkedQueue<Event> cancelled;
+    // Repeating events that ran in the bucket being expired, placed again once it is done.
+    private final ArrayList<Event> rearmed;
+    private final AtomicLong backlog;
+    private final Histogram lateness;
+    private final Thread thread;
+    private final long startTime;
+    private volatile boolean running;
+    private long tick;
+
+    /**
+     * A scheduled event.  Keep it to cancel the event.
+     */
+    public static final class Event {
+        private static final AtomicIntegerFieldUpdater<Event> STATE = AtomicIntegerFieldUpdater.newUpdater(Event.class, "state");
+
+        private final WorldScheduler scheduler;
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private volatile int state;
+
+        // Owned by the wheel thread.
+        private long rounds;
+        private Bucket bucket;
+        private Event next;
+        private Event previous;
+
+        Event(WorldScheduler scheduler, Runnable task, long deadline, long period) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Cancels the event.  A repeating event stops repeating.
+         * @return true if the event was still pending and now will not run.
+         */
+        public boolean cancel() {
+            if(STATE.compareAndSet(this, PENDING, CANCELLED) == false) {
+                return false;
+            }
+            this.scheduler.backlog.decrementAndGet();
+            this.scheduler.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.state == CANCELLED;
+        }
+    }
+
+    /**
+     * Events due in one slot of the wheel, as a doubly linked list.
+     */
+    private static final class Bucket {
+        Event head;
+        Event tail;
+
+        void add(Event event) {
+            event.bucket = this;
+            event.previous = this.tail;
+            event.next = null;
+            if(this.tail == null) {
+                this.head = event;
+            }
+            else {
+                this.tail.next = event;
+            }
+            this.tail = event;
+        }
+
+        void remove(Event event) {
+            if(event.previous == null) {
+                this.head = event.next;
+            }
+            else {
+                event.previous.next = event.next;
+            }
+            if(event.next == null) {
+                this.tail = event.previous;
+            }
+            else {
+                event.next.previous = event.previous;
+            }
+            event.bucket = null;
+            event.next = null;
+            event.previous = null;
+        }
+    }
+
+    /**
+     * Creates and starts a scheduler with the configured tick and wheel size.
+     */
+    public WorldScheduler() {
+        this(Integer.getInteger("game.scheduler.tick", 10), Integer.getInteger("game.scheduler.wheel", 4096));
+    }
+
+    /**
+     * Creates and starts a scheduler.
+     * @param tickMillis Length of a tick in milliseconds; events run within about one tick of their deadline.
+     * @param buckets Number of buckets in the wheel, rounded up to a power of two.
+     */
+    public WorldScheduler(int tickMillis, int buckets) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, buckets) - 1) << 1;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.rearmed = new ArrayList<>();
+        this.backlog = new AtomicLong();
+        this.lateness = new Histogram();
+        this.running = true;
+        this.startTime = System.nanoTime();
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorldScheduler.this.turn();
+            }
+        }, "world-scheduler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task once after a delay.
+     * @param task Task to run on the scheduler thread.
+     * @param delay Delay before it runs.
+     * @param unit Unit of the delay.
+     * @return The scheduled event.
+     */
+    public Event schedule(Runnable task, long delay, TimeUnit unit) {
+        return this.add(new Event(this, task, this.deadline(delay, unit), 0));
+    }
+
+    /**
+     * Runs a task every period, starting after an initial delay, until cancelled.
+     * @param task Task to run on the scheduler thread.
+     * @param delay Delay before it first runs.
+     * @param period Time between runs.
+     * @param unit Unit of the delay and period.
+     * @return The scheduled event.
+     */
+    public Event scheduleRepeating(Runnable task, long delay, long period, TimeUnit unit) {
+        if(period <= 0) {
+            throw new IllegalArgumentException("The period must be positive.");
+        }
+        return this.add(new Event(this, task, this.deadline(delay, unit), unit.toNanos(period)));
+    }
+
+    /**
+     * @return Number of events waiting to run.
+     */
+    public long getBacklog() {
+        return this.backlog.get();
+    }
+
+    /**
+     * @return How late events ran compared to their deadline, in nanoseconds.
+     */
+    public Histogram getLateness() {
+        return this.lateness;
+    }
+
+    /**
+     * Stops the scheduler.  Pending events never run.
+     */
+    public void shutdown() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return System.nanoTime() - this.startTime + unit.toNanos(Math.max(0, delay));
+    }
+
+    private Event add(Event event) {
+        this.backlog.incrementAndGet();
+        this.added.add(event);
+        return event;
+    }
+
+    private void turn() {
+        while(this.running) {
+            // Wait for the end of the current tick, measured from the start so errors do not add up.
+            long tickEnd = this.tickNanos * (this.tick + 1);
+            long now;
+            while((now = System.nanoTime() - this.startTime) < tickEnd) {
+                LockSupport.parkNanos(tickEnd - now);
+                if(this.running == false) {
+                    return;
+                }
+            }
+
+            // Take in at most a bounded number of changes per tick, so a burst of them
+            //  cannot hold up the events that are due.  The rest wait for the next tick.
+            Event event;
+            int budget = MAX_CHANGES_PER_TICK;
+            while(budget-- > 0 && (event = this.cancelled.poll()) != null) {
+                if(event.bucket != null) {
+                    event.bucket.remove(event);
+                }
+            }
+            budget = MAX_CHANGES_PER_TICK;
+            while(budget-- > 0 && (event = this.added.poll()) != null) {
+                if(event.state == PENDING) {
+                    this.place(event, this.tick);
+                }
+            }
+            this.expire(this.wheel[(int) (this.tick & this.mask)], now);
+            this.tick++;
+        }
+    }
+
+    /**
+     * Puts an event into the bucket of the tick it is due in.
+     * @param event Event to place.
+     * @param firstTick Earliest tick still to be processed; overdue events go there.
+     */
+    private void place(Event event, long firstTick) {
+        long slot = Math.max(event.deadline / this.tickNanos, firstTick);
+        event.rounds = (slot - firstTick) / this.wheel.length;
+        this.wheel[(int) (slot & this.mask)].add(event);
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Event event = bucket.head;
+        while(event != null) {
+            Event next = event.next;
+            if(event.rounds > 0) {
+                event.rounds--;
+            }
+            else {
+                bucket.remove(event);
+                this.run(event, now);
+            }
+            event = next;
+        }
+        // Placed only now: put back into this bucket during the walk above, an event
+        //  whose period is a whole number of turns would be seen again in the same pass.
+        for(int i = 0; i < this.rearmed.size(); i++) {
+            this.place(this.rearmed.get(i), this.tick + 1);
+        }
+        this.rearmed.clear();
+    }
+
+    private void run(Event event, long now) {
+        if(event.period == 0 && Event.STATE.compareAndSet(event, PENDING, EXPIRED) == false) {
+            return;
+        }
+        if(event.period != 0 && event.state != PENDING) {
+            return;
+        }
+        this.lateness.record(now - event.deadline);
+        try {
+            event.task.run();
+        } catch (RuntimeException ex) {
+            GameLog.error("A scheduled world event failed", ex);
+        }
+        if(event.period == 0) {
+            this.backlog.decrementAndGet();
+        }
+        else if(event.state == PENDING) {
+            event.deadline += event.period;
+            // The current bucket is being processed, so the next run is due no sooner than the next tick.
+            this.rearmed.add(event);
+        }
+    }
+}